@@ -171,6 +171,44 @@ public abstract class AbstractCompileMojo extends AbstractDependencyMojo {
   protected boolean decorateLinkerOptions;
   
   
+  /**
+   * Record content hashes of sources and headers so that files whose
+   * timestamp changed without a change in content, for example after
+   * switching branches or restoring the object directory on a fresh
+   * checkout, are not recompiled. Content hashes of the objects are recorded
+   * as well, so objects recompiled with the same content are not relinked.
+   */
+  @Parameter(property = "nar.contentHash", defaultValue = "false")
+  protected boolean contentHash;
+
+  /**
+   * Store the dependency and history tables of the object and output
+   * directories in a compact binary format, which is faster to read than XML
+   * for large modules. Switching it off again converts the tables back to XML
+   * on the next build.
+   */
+  @Parameter(property = "nar.binaryStore", defaultValue = "false")
+  protected boolean binaryStore;
+
+  /**
+   * Command line of a persistent compiler worker. When set, compiler command
+   * lines are sent to long-lived worker processes instead of starting the
+   * compiler for every source file, which pays off for toolchains with a slow
+   * start-up. The worker is not part of the plugin, it has to be written for
+   * the toolchain. The example on the site, examples/nar-compile-worker.sh,
+   * shows the protocol only and gains nothing over the normal path.
+   */
+  @Parameter(property = "nar.compilerWorker")
+  protected String compilerWorker;
+
+  /**
+   * If true, an existing static library is updated with the objects that
+   * changed since it was last archived, and the objects no longer part of it
+   * are removed, instead of archiving all objects again. Requires GNU ar.
+   */
+  @Parameter(property = "nar.incrementalArchive", defaultValue = "false")
+  protected boolean incrementalArchive;
+
   /** 
    * Whether to automatically gather syslibs from dependencies
    */
@@ -181,10 +219,11 @@ public abstract class AbstractCompileMojo extends AbstractDependencyMojo {
 
   private Project antProject;
   
-  protected final List<String[]> compileCommands = new ArrayList<>();
-  protected final List<String[]> linkCommands = new ArrayList<>();
-  protected final List<String[]> testCompileCommands = new ArrayList<>();
-  protected final List<String[]> testLinkCommands = new ArrayList<>();
+  // added to by concurrent compile threads and libraries
+  protected final List<String[]> compileCommands = Collections.synchronizedList(new ArrayList<String[]>());
+  protected final List<String[]> linkCommands = Collections.synchronizedList(new ArrayList<String[]>());
+  protected final List<String[]> testCompileCommands = Collections.synchronizedList(new ArrayList<String[]>());
+  protected final List<String[]> testLinkCommands = Collections.synchronizedList(new ArrayList<String[]>());
 
   protected final boolean failOnError(final AOL aol) throws MojoExecutionException {
     return getNarInfo().getProperty(aol, "failOnError", this.failOnError);
@@ -20,26 +20,23 @@
 package com.github.maven_nar;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ListIterator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 import java.util.Map;
-import java.util.jar.JarFile;
-import java.util.zip.ZipInputStream;
-import org.apache.commons.io.IOUtils;
 
 import org.apache.maven.model.Dependency;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
-import org.apache.maven.artifact.resolver.ArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -127,6 +124,66 @@ public abstract class AbstractDependencyMojo extends AbstractNarMojo {
   @Parameter(property = "includeGroupIds", defaultValue = "")
   protected String includeGroupIds;
 
+  /**
+   * Also download and unpack the separate debug nars of the dependencies, if
+   * they were packaged with any, so their binaries can be debugged.
+   */
+  @Parameter(property = "nar.debugInfo", defaultValue = "false")
+  protected boolean debugInfo;
+
+  /**
+   * Number of attached nars resolved concurrently. Failures are reported in
+   * the order of the dependencies.
+   */
+  @Parameter(property = "nar.downloadThreads", defaultValue = "5")
+  protected int downloadThreads = NarManager.DEFAULT_DOWNLOAD_THREADS;
+
+  /**
+   * Unpack the nars of the dependencies once into a store shared by the
+   * builds on the machine, keyed by the checksum of the nar and the settings
+   * used to process it, and only give each module a view of them in its
+   * unpack directory. The include and library directories of the module keep
+   * their paths. Entries are never removed from the store, it grows until it
+   * is deleted while no build is running. Needs the NarLayout21 layout.
+   */
+  @Parameter(property = "nar.unpackStore", defaultValue = "false")
+  protected boolean unpackStore;
+
+  /**
+   * Directory of the shared unpack store, by default nar-store next to the
+   * local repository.
+   */
+  @Parameter(property = "nar.unpackStoreDirectory")
+  protected File unpackStoreDirectory;
+
+  /**
+   * How modules see the nars of the shared unpack store: "symlink" for a
+   * symbolic link to the unpacked nar or "hardlink" for a tree of hard links
+   * to its files.
+   */
+  @Parameter(property = "nar.unpackStoreView", defaultValue = "symlink")
+  protected String unpackStoreView;
+
+  /**
+   * Unpack only the entries of the nars the goal needs, leaving the others
+   * packed until a goal needing them unpacks the dependencies again. With
+   * NarLayout21 each library type is a nar of its own, which is only
+   * unpacked if a dependency is bound as that type, so the library types
+   * left packed only matter for nars holding several.
+   */
+  @Parameter(property = "nar.lazyUnpack", defaultValue = "false")
+  protected boolean lazyUnpack;
+
+  /**
+   * Library types (executable, shared, jni, static) whose attached nars are
+   * resolved for each dependency of a project not of nar packaging, in
+   * addition to the binding of the dependency. Not setting means shared and
+   * jni, the types needed to load the dependencies from Java, goals needing
+   * other types resolve them when they run.
+   */
+  @Parameter(property = "nar.bindings")
+  protected List<String> bindings;
+
   /**
    * The computed dependency tree root node of the Maven project.
    */
@@ -527,17 +584,21 @@ public abstract class AbstractDependencyMojo extends AbstractNarMojo {
     }
     getLog().debug("}");
 
-    for (final AttachedNarArtifact attachedNarArtifact : dependencies) {
-      try {
-        getLog().debug("Resolving " + attachedNarArtifact);
-        this.artifactResolver.resolve(attachedNarArtifact, this.remoteArtifactRepositories, getLocalRepository());
-      } catch (final ArtifactNotFoundException e) {
+    final Map<Artifact, Exception> failures = NarManager.resolveAll(dependencies, this.remoteArtifactRepositories,
+        this.artifactResolver, getLocalRepository(), this.downloadThreads, getLog());
+    for (final Map.Entry<Artifact, Exception> failure : failures.entrySet()) {
+      final Artifact attachedNarArtifact = failure.getKey();
+      if (failure.getValue() instanceof ArtifactNotFoundException) {
+        if (isDebugNar(attachedNarArtifact)) {
+          // only binaries with debug information have one
+          getLog().debug("No debug nar " + attachedNarArtifact.getId());
+          continue;
+        }
         final String message = "nar not found " + attachedNarArtifact.getId();
-        throw new MojoExecutionException(message, e);
-      } catch (final ArtifactResolutionException e) {
-        final String message = "nar cannot resolve " + attachedNarArtifact.getId();
-        throw new MojoExecutionException(message, e);
+        throw new MojoExecutionException(message, failure.getValue());
       }
+      final String message = "nar cannot resolve " + attachedNarArtifact.getId();
+      throw new MojoExecutionException(message, failure.getValue());
     }
   }
 
@@ -556,16 +617,53 @@ public abstract class AbstractDependencyMojo extends AbstractNarMojo {
               getAOL(), binding));
         }
       } else {
-        artifactList.addAll(getAttachedNarArtifacts(dependency, getAOL(), Library.EXECUTABLE));
-        artifactList.addAll(getAttachedNarArtifacts(dependency, getAOL(), Library.SHARED));
-        artifactList.addAll(getAttachedNarArtifacts(dependency, getAOL(), Library.JNI));
-        artifactList.addAll(getAttachedNarArtifacts(dependency, getAOL(), Library.STATIC));
+        // only the types the dependency is used as, the others are resolved
+        // by the goals asking for them
+        final Set<String> types = new LinkedHashSet<>();
+        types.addAll(Arrays.asList(getBindings(libraries, dependency)));
+        types.addAll(getRequiredBindings());
+        for (final String type : types) {
+          artifactList.addAll(getAttachedNarArtifacts(dependency, getAOL(), type));
+        }
       }
       artifactList.addAll(getAttachedNarArtifacts(dependency, null, NarConstants.NAR_NO_ARCH));
     }
+    if (this.debugInfo) {
+      // debug nars are unpacked on top of their binaries, so come last
+      final List<AttachedNarArtifact> debugList = new ArrayList<>();
+      for (final AttachedNarArtifact artifact : artifactList) {
+        final String classifier = artifact.getClassifier();
+        if (classifier.equals(NarConstants.NAR_NO_ARCH) || classifier.endsWith("-" + Library.STATIC)) {
+          continue;
+        }
+        try {
+          debugList.add(new AttachedNarArtifact(artifact.getGroupId(), artifact.getArtifactId(),
+              artifact.getBaseVersion(), artifact.getScope(), artifact.getType(),
+              classifier + DebugInfo.CLASSIFIER_SUFFIX, artifact.isOptional(), artifact.getFile()));
+        } catch (final InvalidVersionSpecificationException e) {
+          throw new MojoExecutionException("Error while reading nar file for dependency " + artifact, e);
+        }
+      }
+      artifactList.addAll(debugList);
+    }
     return artifactList;
   }
 
+  /**
+   * Returns the library types whose attached nars are resolved for every
+   * dependency of a project not of nar packaging, whatever its binding.
+   */
+  protected List<String> getRequiredBindings() {
+    if (this.bindings == null) {
+      return Arrays.asList(Library.SHARED, Library.JNI);
+    }
+    return this.bindings;
+  }
+
+  private boolean isDebugNar(final Artifact artifact) {
+    return artifact.getClassifier().endsWith(DebugInfo.CLASSIFIER_SUFFIX);
+  }
+
   protected final ArchiverManager getArchiverManager() {
     return this.archiverManager;
   }
@@ -761,39 +859,101 @@ public abstract class AbstractDependencyMojo extends AbstractNarMojo {
       return null;
     }
 
-    ZipInputStream zipStream = null;
+    final NarInfo info = new NarInfo(dependency.getGroupId(), dependency.getArtifactId(),
+        dependency.getBaseVersion(), getLog());
+    final Properties properties;
     try {
-      zipStream = new ZipInputStream(new FileInputStream(file));
-      if (zipStream.getNextEntry() == null) {
-        getLog().debug("Skipping unreadable artifact: " + file);
-        return null;
+      properties = getNarInfoCache().getProperties(file, info.getNarInfoFileName());
+    } catch (final IOException e) {
+      throw new MojoExecutionException("Error while reading " + file, e);
+    }
+    if (properties == null) {
+      getLog().debug("Dependency nar file is unreadable or does not contain this artifact: " + file);
+      return null;
+    }
+    info.read(properties);
+    return info;
+  }
+
+  /**
+   * Returns the cache of the nar properties of the dependencies, shared by
+   * the goals of the build.
+   */
+  protected final NarInfoCache getNarInfoCache() {
+    return NarInfoCache.get(this.repoSession);
+  }
+
+  protected final NarManager getNarManager() throws MojoFailureException, MojoExecutionException {
+    final NarManager narManager = new NarManager(getLog(), getLocalRepository(), getMavenProject(), getArchitecture(),
+        getOS(), getLinker());
+    narManager.setNarInfoCache(getNarInfoCache());
+    return narManager;
+  }
+
+  /**
+   * Returns the patterns of the nar entries the goal does not need, which
+   * lazyUnpack leaves packed, or null if it needs all of them.
+   *
+   * @param dependencies
+   *          the attached nars being unpacked, as selected by the binding of
+   *          each dependency
+   */
+  protected String[] getUnpackExcludes(final List<AttachedNarArtifact> dependencies) {
+    return null;
+  }
+
+  /**
+   * Returns the patterns of the nar entries not needed to compile, link and
+   * run native code against the dependencies: their debug packages, their
+   * executables unless a dependency is bound as executable, and the library
+   * directories of the types no dependency is bound as. A project not of nar
+   * packaging compiles no native code, so the headers and static libraries
+   * are not needed either.
+   */
+  protected final String[] getNativeUnpackExcludes(final List<AttachedNarArtifact> dependencies) {
+    final Set<String> types = new HashSet<>();
+    for (final AttachedNarArtifact dependency : dependencies) {
+      String classifier = dependency.getClassifier();
+      if (classifier.endsWith(DebugInfo.CLASSIFIER_SUFFIX)) {
+        classifier = classifier.substring(0, classifier.length() - DebugInfo.CLASSIFIER_SUFFIX.length());
       }
-    } catch (IOException e) {
-      throw new MojoExecutionException("Error while testing for zip file " + file, e);
-    } finally {
-      IOUtils.closeQuietly(zipStream);
+      types.add(classifier.substring(classifier.lastIndexOf('-') + 1));
     }
+    final boolean compiles = "NAR".equalsIgnoreCase(getMavenProject().getPackaging());
 
-    JarFile jar = null;
-    try {
-      jar = new JarFile(file);
-      final NarInfo info = new NarInfo(dependency.getGroupId(), dependency.getArtifactId(),
-          dependency.getBaseVersion(), getLog());
-      if (!info.exists(jar)) {
-        getLog().debug("Dependency nar file does not contain this artifact: " + file);
-        return null;
+    final List<String> excludes = new ArrayList<>();
+    excludes.add("**/*.dwp");
+    if (!types.contains(Library.EXECUTABLE)) {
+      excludes.add("bin/**");
+    }
+    for (final String type : Arrays.asList(Library.STATIC, Library.SHARED, Library.JNI, Library.PLUGIN)) {
+      if (!types.contains(type) || type.equals(Library.STATIC) && !compiles) {
+        excludes.add("lib/*/" + type + "/**");
       }
-      info.read(jar);
-      return info;
-    } catch (final IOException e) {
-      throw new MojoExecutionException("Error while reading " + file, e);
-    } finally {
-      IOUtils.closeQuietly(jar);
     }
+    if (!compiles) {
+      excludes.add("include/**");
+    }
+    return excludes.toArray(new String[excludes.size()]);
   }
 
-  protected final NarManager getNarManager() throws MojoFailureException, MojoExecutionException {
-    return new NarManager(getLog(), getLocalRepository(), getMavenProject(), getArchitecture(), getOS(), getLinker());
+  private NarUnpackStore getUnpackStore() throws MojoExecutionException {
+    if (!this.unpackStore) {
+      return null;
+    }
+    final boolean hardLinks;
+    if ("hardlink".equals(this.unpackStoreView)) {
+      hardLinks = true;
+    } else if ("symlink".equals(this.unpackStoreView)) {
+      hardLinks = false;
+    } else {
+      throw new MojoExecutionException("NAR: unpackStoreView must be symlink or hardlink, not " + this.unpackStoreView);
+    }
+    File directory = this.unpackStoreDirectory;
+    if (directory == null) {
+      directory = new File(new File(getLocalRepository().getBasedir()).getParentFile(), "nar-store");
+    }
+    return new NarUnpackStore(directory, hardLinks, getLog());
   }
 
   protected final List/* <ArtifactRepository> */getRemoteRepositories() {
@@ -806,24 +966,31 @@ public abstract class AbstractDependencyMojo extends AbstractNarMojo {
 
     getLog().info(String.format("Unpacking %1$d dependencies to %2$s", dependencies.size(), unpackDir));
 
-    for (final Object element : dependencies) {
-      final AttachedNarArtifact dependency = (AttachedNarArtifact) element;
-      final File file = getNarManager().getNarFile(dependency); // dependency.getNarFile();
+    final NarManager narManager = getNarManager();
+    final List<File> files = new ArrayList<>();
+    for (final AttachedNarArtifact dependency : dependencies) {
+      final File file = narManager.getNarFile(dependency); // dependency.getNarFile();
+      if (isDebugNar(dependency) && !file.exists()) {
+        continue;
+      }
       getLog().debug(String.format("Unpack %1$s (%2$s) to %3$s", dependency, file, unpackDir));
-
-      // TODO: each dependency may have it's own (earlier) version of layout -
-      // if it is unknown then we should report an error to update the nar
-      // package
-      // NarLayout layout = AbstractNarLayout.getLayout( "NarLayout21"/* TODO:
-      // dependency.getLayout() */, getLog() );
-      // we should then target the layout to match the layout for this nar which
-      // is the workspace we are in.
-      final NarLayout layout = getLayout();
-      // TODO: the dependency may be specified against a different linker
-      // (version)?
-      // AOL aol = dependency.getClassifier(); Trim
-      layout.unpackNar(unpackDir, this.archiverManager, file, getOS(), getLinker().getName(), getAOL(), isSkipRanlib());
+      files.add(file);
     }
+
+    // TODO: each dependency may have it's own (earlier) version of layout -
+    // if it is unknown then we should report an error to update the nar
+    // package
+    // NarLayout layout = AbstractNarLayout.getLayout( "NarLayout21"/* TODO:
+    // dependency.getLayout() */, getLog() );
+    // we should then target the layout to match the layout for this nar which
+    // is the workspace we are in.
+    final NarLayout layout = getLayout();
+    // TODO: the dependency may be specified against a different linker
+    // (version)?
+    // AOL aol = dependency.getClassifier(); Trim
+    NarManager.unpackAll(files, layout, unpackDir, this.archiverManager, getOS(), getLinker().getName(), getAOL(),
+        isSkipRanlib(), getUnpackStore(), this.lazyUnpack ? getUnpackExcludes(dependencies) : null,
+        Runtime.getRuntime().availableProcessors(), getLog());
   }
 
   //
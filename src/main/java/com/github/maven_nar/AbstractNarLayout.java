@@ -23,6 +23,14 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -34,6 +42,12 @@ import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.fileselectors.IncludeExcludeFileSelector;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import com.github.maven_nar.cpptasks.CUtil;
+import com.github.maven_nar.cpptasks.ContentHash;
 
 /**
  * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
@@ -68,17 +82,46 @@ public abstract class AbstractNarLayout implements NarLayout, NarConstants {
     }
   }
 
+  private static final Pattern SHA1 = Pattern.compile("^\\s*([0-9a-fA-F]{40})\\b");
+
   private final Log log;
 
   protected AbstractNarLayout(final Log log) {
     this.log = log;
   }
 
+  /**
+   * Archives a directory into a nar and attaches it.
+   *
+   * @param incremental
+   *          keep the nar of a previous build if the manifest of its inputs
+   *          is unchanged
+   */
   protected final void attachNar(final ArchiverManager archiverManager, final MavenProjectHelper projectHelper,
-      final MavenProject project, final String classifier, final File dir, final String include)
-      throws MojoExecutionException {
+      final MavenProject project, final String classifier, final File dir, final String include,
+      final boolean incremental) throws MojoExecutionException {
     final File narFile = new File(project.getBuild().getDirectory(), project.getBuild().getFinalName() + "-"
         + classifier + "." + NarConstants.NAR_EXTENSION);
+    final File manifestFile = new File(narFile.getPath() + ".manifest");
+
+    String manifest = null;
+    if (incremental) {
+      final String previous = readPackageManifest(manifestFile);
+      try {
+        manifest = getPackageManifest(dir, include, previous);
+      } catch (final IOException e) {
+        throw new MojoExecutionException("NAR: cannot list the contents of " + dir, e);
+      }
+      if (previous != null && narFile.isFile() && previous.startsWith(getNarStamp(narFile))
+          && withoutTimes(previous.substring(previous.indexOf('\n') + 1)).equals(withoutTimes(manifest))) {
+        getLog().info("NAR: " + narFile.getName() + " is up to date");
+        writePackageManifest(manifestFile, getNarStamp(narFile) + manifest);
+        projectHelper.attachArtifact(project, NarConstants.NAR_TYPE, classifier, narFile);
+        return;
+      }
+    }
+    manifestFile.delete();
+
     if (narFile.exists()) {
       narFile.delete();
     }
@@ -94,16 +137,257 @@ public abstract class AbstractNarLayout implements NarLayout, NarConstants {
     } catch (final ArchiverException | IOException e) {
       throw new MojoExecutionException("NAR: cannot create NAR archive '" + narFile + "'", e);
     }
+    if (manifest != null) {
+      writePackageManifest(manifestFile, getNarStamp(narFile) + manifest);
+    }
     projectHelper.attachArtifact(project, NarConstants.NAR_TYPE, classifier, narFile);
   }
 
+  /**
+   * Attaches the nars without incremental packaging or separate debug nars.
+   */
+  @Deprecated
+  @Override
+  public void attachNars(final File baseDir, final ArchiverManager archiverManager,
+      final MavenProjectHelper projectHelper, final MavenProject project)
+      throws MojoExecutionException, MojoFailureException {
+    attachNars(baseDir, archiverManager, projectHelper, project, false, null);
+  }
+
+  /**
+   * Unpacks a nar completely, in place.
+   */
+  @Deprecated
+  @Override
+  public void unpackNar(final File baseDir, final ArchiverManager archiverManager, final File file,
+      final String os, final String linkerName, final AOL defaultAOL, final boolean skipRanlib)
+      throws MojoExecutionException, MojoFailureException {
+    unpackNar(baseDir, archiverManager, file, os, linkerName, defaultAOL, skipRanlib, null, null);
+  }
+
   protected Log getLog() {
     return this.log;
   }
 
+  private static String getNarStamp(final File narFile) {
+    return "nar\t" + narFile.length() + "\t" + narFile.lastModified() + "\n";
+  }
+
+  /**
+   * Returns the manifest of the inputs of a nar: the directories and files
+   * the archiver includes with their permissions, each file with its size,
+   * modification time and content hash. Hashes are taken from the previous
+   * manifest for files whose size and modification time did not change.
+   */
+  private static String getPackageManifest(final File dir, final String include, final String previous)
+      throws IOException {
+    final Map<String, String> previousHashes = new HashMap<>();
+    if (previous != null) {
+      for (final String line : previous.split("\n")) {
+        final String[] fields = line.split("\t");
+        if (fields.length == 6 && fields[0].equals("f")) {
+          previousHashes.put(fields[1] + "\t" + fields[2] + "\t" + fields[3], fields[5]);
+        }
+      }
+    }
+
+    final DirectoryScanner scanner = new DirectoryScanner();
+    scanner.setBasedir(dir);
+    scanner.setIncludes(new String[] {
+      include
+    });
+    scanner.addDefaultExcludes();
+    scanner.scan();
+    final String[] dirs = scanner.getIncludedDirectories();
+    final String[] files = scanner.getIncludedFiles();
+    Arrays.sort(dirs);
+    Arrays.sort(files);
+
+    final StringBuilder manifest = new StringBuilder();
+    manifest.append("include\t").append(include).append('\n');
+    for (final String name : dirs) {
+      manifest.append("d\t").append(name.replace(File.separatorChar, '/')).append('\t')
+          .append(getPermissions(new File(dir, name))).append('\n');
+    }
+    for (final String name : files) {
+      final File file = new File(dir, name);
+      final String key = name.replace(File.separatorChar, '/') + "\t" + file.length() + "\t" + file.lastModified();
+      String hash = previousHashes.get(key);
+      if (hash == null) {
+        hash = ContentHash.toString(ContentHash.hash(file));
+      }
+      manifest.append("f\t").append(key).append('\t').append(getPermissions(file)).append('\t').append(hash)
+          .append('\n');
+    }
+    return manifest.toString();
+  }
+
+  /**
+   * Returns the POSIX permissions of a file, as archived into the nar, or "-"
+   * where the file system has none.
+   */
+  private static String getPermissions(final File file) throws IOException {
+    try {
+      return PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath()));
+    } catch (final UnsupportedOperationException e) {
+      return "-";
+    }
+  }
+
+  /**
+   * Drops the modification times of the files from a package manifest, so
+   * that files rewritten with the same content still compare equal.
+   */
+  private static String withoutTimes(final String manifest) {
+    final StringBuilder result = new StringBuilder(manifest.length());
+    for (final String line : manifest.split("\n")) {
+      final String[] fields = line.split("\t");
+      if (fields.length == 6 && fields[0].equals("f")) {
+        result.append(fields[0]).append('\t').append(fields[1]).append('\t').append(fields[2]).append('\t')
+            .append(fields[4]).append('\t').append(fields[5]);
+      } else {
+        result.append(line);
+      }
+      result.append('\n');
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns a fingerprint of a nar file unpacked with the given settings: the
+   * checksum of the nar and the settings used to process it. The checksum is
+   * taken from the .sha1 file a repository keeps next to a downloaded nar,
+   * unless the nar was written after it, then from the unpack marker if the
+   * size and modification time of the nar did not change, and computed
+   * otherwise.
+   *
+   * @param recorded
+   *          content of the unpack marker, or null if there is none
+   */
+  protected final String getUnpackFingerprint(final File file, final String recorded, final String os,
+      final String linkerName, final AOL defaultAOL, final boolean skipRanlib) throws MojoExecutionException {
+    String checksum = null;
+    final File sha1File = new File(file.getPath() + ".sha1");
+    if (sha1File.lastModified() >= file.lastModified()) {
+      try {
+        final Matcher matcher = SHA1.matcher(new String(Files.readAllBytes(sha1File.toPath()),
+            StandardCharsets.US_ASCII));
+        if (matcher.find()) {
+          checksum = "sha1=" + matcher.group(1).toLowerCase();
+        }
+      } catch (final IOException e) {
+        // computed below
+      }
+    }
+    if (checksum == null && recorded != null && recorded.startsWith(getUnpackStamp(file))) {
+      final String fingerprint = withoutUnpackStamp(recorded);
+      final String line = fingerprint.substring(0, Math.max(0, fingerprint.indexOf('\n')));
+      if (line.startsWith("xxh64=")) {
+        checksum = line;
+      }
+    }
+    if (checksum == null) {
+      try {
+        checksum = "xxh64=" + ContentHash.toString(ContentHash.hash(file));
+      } catch (final IOException e) {
+        throw new MojoExecutionException("Cannot read " + file, e);
+      }
+    }
+    return checksum + "\nsize=" + file.length() + "\nlayout=" + getClass().getName() + "\nos=" + os + "\nlinker="
+        + linkerName + "\naol=" + defaultAOL + "\nskipRanlib=" + skipRanlib + "\n";
+  }
+
+  /**
+   * Returns the first line of the unpack marker of a nar, which records its
+   * size and modification time. It is not part of the fingerprint, a nar
+   * written again with the same content is not unpacked again.
+   */
+  protected static String getUnpackStamp(final File file) {
+    return "stamp=" + file.length() + "\t" + file.lastModified() + "\n";
+  }
+
+  /**
+   * Returns the content of an unpack marker without its stamp line.
+   */
+  protected static String withoutUnpackStamp(final String recorded) {
+    if (recorded == null || !recorded.startsWith("stamp=")) {
+      return recorded;
+    }
+    return recorded.substring(recorded.indexOf('\n') + 1);
+  }
+
+  /**
+   * Returns the content of an unpack marker, or null if there is none.
+   */
+  protected static String readUnpackMarker(final File marker) {
+    return readText(marker);
+  }
+
+  /**
+   * Writes an unpack marker atomically, once a nar is completely unpacked and
+   * processed, so an interrupted unpack leaves no marker behind.
+   */
+  protected static void writeUnpackMarker(final File marker, final String fingerprint)
+      throws MojoExecutionException {
+    try {
+      writeText(marker, fingerprint);
+    } catch (final IOException e) {
+      throw new MojoExecutionException("Cannot write " + marker, e);
+    }
+  }
+
+  /**
+   * Returns the package manifest recorded next to a nar, or null if there is
+   * none.
+   */
+  private static String readPackageManifest(final File manifestFile) {
+    return readText(manifestFile);
+  }
+
+  /**
+   * Writes the package manifest of a nar atomically, once the nar is
+   * created, so an interrupted packaging leaves no manifest behind.
+   */
+  private static void writePackageManifest(final File manifestFile, final String manifest)
+      throws MojoExecutionException {
+    try {
+      writeText(manifestFile, manifest);
+    } catch (final IOException e) {
+      throw new MojoExecutionException("NAR: cannot write package manifest " + manifestFile, e);
+    }
+  }
+
+  private static String readText(final File file) {
+    try {
+      return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    } catch (final IOException e) {
+      return null;
+    }
+  }
+
+  private static void writeText(final File file, final String text) throws IOException {
+    final File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    try {
+      Files.write(tempFile.toPath(), text.getBytes(StandardCharsets.UTF_8));
+      CUtil.replaceFile(tempFile, file);
+    } finally {
+      tempFile.delete();
+    }
+  }
+
   protected void unpackNarAndProcess(final ArchiverManager archiverManager, final File file, final File narLocation,
       final String os, final String linkerName, final AOL defaultAOL, final boolean skipRanlib)
       throws MojoExecutionException, MojoFailureException {
+    unpackNarAndProcess(archiverManager, file, narLocation, os, linkerName, defaultAOL, skipRanlib, null, null);
+  }
+
+  /**
+   * Unpacks the entries of a nar matching the includes and not matching the
+   * excludes, null meaning all and none, and processes them.
+   */
+  protected void unpackNarAndProcess(final ArchiverManager archiverManager, final File file, final File narLocation,
+      final String os, final String linkerName, final AOL defaultAOL, final boolean skipRanlib,
+      final String[] includes, final String[] excludes) throws MojoExecutionException, MojoFailureException {
 
     final String gpp = "g++";
     final String gcc = "gcc";
@@ -116,6 +400,15 @@ public abstract class AbstractNarLayout implements NarLayout, NarConstants {
       unArchiver = archiverManager.getUnArchiver(NarConstants.NAR_ROLE_HINT);
       unArchiver.setSourceFile(file);
       unArchiver.setDestDirectory(narLocation);
+      if (includes != null || excludes != null) {
+        final IncludeExcludeFileSelector selector = new IncludeExcludeFileSelector();
+        selector.setIncludes(includes);
+        selector.setExcludes(excludes);
+        selector.setUseDefaultExcludes(false);
+        unArchiver.setFileSelectors(new FileSelector[] {
+          selector
+        });
+      }
       unArchiver.extract();
     } catch (final NoSuchArchiverException | ArchiverException e) {
       throw new MojoExecutionException("Error unpacking file: " + file + " to: " + narLocation, e);
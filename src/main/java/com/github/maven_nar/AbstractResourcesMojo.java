@@ -57,12 +57,28 @@ public abstract class AbstractResourcesMojo extends AbstractNarMojo {
   @Parameter(defaultValue = "lib", required = true)
   private String resourceLibDir;
 
+  /**
+   * Hard link the resources into the target directory instead of copying
+   * them, where source and target are on the same file system. Resources
+   * must then not be modified in place, except by the plugin itself, which
+   * gives a linked file a copy of its own before changing its permissions.
+   */
+  @Parameter(property = "nar.hardLinkResources", defaultValue = "false")
+  private boolean hardLinkResources;
+
   /**
    * To look up Archiver/UnArchiver implementations
    */
   @Component(role = org.codehaus.plexus.archiver.manager.ArchiverManager.class)
   private ArchiverManager archiverManager;
 
+  private int syncResources(final File srcDir, final File dstDir, final String includes) throws IOException {
+    final DirectorySync.Result result = NarUtil.syncDirectory(srcDir, dstDir, includes, NarUtil.DEFAULT_EXCLUDES,
+        this.hardLinkResources);
+    getLog().debug("Synced " + dstDir + ": " + result);
+    return result.getCopied() + result.getLinked();
+  }
+
   protected final int copyBinaries(final File srcDir, final String aol)
       throws IOException, MojoExecutionException, MojoFailureException {
     int copied = 0;
@@ -73,7 +89,7 @@ public abstract class AbstractResourcesMojo extends AbstractNarMojo {
       final File binDstDir = getLayout().getBinDirectory(getTargetDirectory(), getMavenProject().getArtifactId(),
           getMavenProject().getVersion(), aol);
       getLog().debug("Copying binaries from " + binDir + " to " + binDstDir);
-      copied += NarUtil.copyDirectoryStructure(binDir, binDstDir, null, NarUtil.DEFAULT_EXCLUDES);
+      copied += syncResources(binDir, binDstDir, null);
     }
 
     return copied;
@@ -88,7 +104,7 @@ public abstract class AbstractResourcesMojo extends AbstractNarMojo {
       final File includeDstDir = getLayout().getIncludeDirectory(getTargetDirectory(),
           getMavenProject().getArtifactId(), getMavenProject().getVersion());
       getLog().debug("Copying includes from " + includeDir + " to " + includeDstDir);
-      copied += NarUtil.copyDirectoryStructure(includeDir, includeDstDir, null, NarUtil.DEFAULT_EXCLUDES);
+      copied += syncResources(includeDir, includeDstDir, null);
     }
 
     return copied;
@@ -130,7 +146,7 @@ public abstract class AbstractResourcesMojo extends AbstractNarMojo {
         if (new AOL(aol).getOS().equals(OS.WINDOWS) && type.equals(Library.SHARED)) {
           includes += ",**/*.lib";
         }
-        copied += NarUtil.copyDirectoryStructure(libDir, libDstDir, includes, NarUtil.DEFAULT_EXCLUDES);
+        copied += syncResources(libDir, libDstDir, includes);
       }
     }
 
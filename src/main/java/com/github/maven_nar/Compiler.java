@@ -128,6 +128,14 @@ public abstract class Compiler {
   @Parameter(required = true)
   private boolean debug = false;
 
+  /**
+   * With debug information, write it to a file next to each object instead of
+   * into the object (-gsplit-dwarf), so that links do not have to process it.
+   * Only supported by gcc and clang.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean splitDebug = false;
+
   /**
    * Enables generation of exception handling code.
    */
@@ -335,6 +343,7 @@ public abstract class Compiler {
     compilerDef.setCompilerPrefix(this.prefix);
     compilerDef.setCcache(this.ccache);
     compilerDef.setDebug(this.debug);
+    compilerDef.setSplitDebug(this.splitDebug);
     compilerDef.setExceptions(this.exceptions);
     compilerDef.setRtti(this.rtti);
     compilerDef.setMultithreaded(this.mojo.getOS().equals("Windows") || this.multiThreaded);
@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Moves the debug information of ELF executables and shared libraries into
+ * separate files, so that it can be packaged in its own NAR.
+ *
+ * For each binary with debug sections objcopy writes a <code>.debug</code>
+ * file holding them next to the path of the binary in the debug tree and a
+ * copy of the binary without them, which names the <code>.debug</code> file
+ * in a <code>.gnu_debuglink</code> section, in the stripped tree. The symbol
+ * table is kept in the stripped binary. Debuggers look for the
+ * <code>.debug</code> file next to the binary, which is where the debug NAR
+ * is unpacked.
+ */
+public final class DebugInfo {
+  /**
+   * Suffix of the classifier of a NAR holding debug information.
+   */
+  public static final String CLASSIFIER_SUFFIX = "-debug";
+
+  private static final String DEBUG_EXTENSION = ".debug";
+
+  private static final int ET_DYN = 3;
+
+  private static final int ET_EXEC = 2;
+
+  private static final byte[] ELF_MAGIC = {
+      0x7f, 'E', 'L', 'F'
+  };
+
+  /**
+   * Returns true if the file is an ELF executable or shared library with
+   * debug sections.
+   */
+  public static boolean hasDebugSections(final File file) throws IOException {
+    if (!file.isFile() || Files.isSymbolicLink(file.toPath()) || file.length() < 64) {
+      return false;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      final ByteBuffer header = read(channel, 0, 64);
+      for (int i = 0; i < ELF_MAGIC.length; i++) {
+        if (header.get(i) != ELF_MAGIC[i]) {
+          return false;
+        }
+      }
+      final boolean elf64 = header.get(4) == 2;
+      header.order(header.get(5) == 2 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+      final int type = header.getShort(16) & 0xFFFF;
+      if (type != ET_EXEC && type != ET_DYN) {
+        return false;
+      }
+
+      //
+      // section header table and the index of the section names
+      //
+      final long shoff = elf64 ? header.getLong(0x28) : header.getInt(0x20) & 0xFFFFFFFFL;
+      final int shentsize = header.getShort(elf64 ? 0x3A : 0x2E) & 0xFFFF;
+      final int shnum = header.getShort(elf64 ? 0x3C : 0x30) & 0xFFFF;
+      final int shstrndx = header.getShort(elf64 ? 0x3E : 0x32) & 0xFFFF;
+      if (shoff == 0 || shnum == 0 || shstrndx >= shnum
+          || shoff + (long) shentsize * shnum > channel.size()) {
+        return false;
+      }
+      final ByteBuffer sections = read(channel, shoff, shentsize * shnum).order(header.order());
+      final int strtab = shstrndx * shentsize;
+      final long namesOffset = elf64 ? sections.getLong(strtab + 0x18) : sections.getInt(strtab + 0x10) & 0xFFFFFFFFL;
+      final long namesSize = elf64 ? sections.getLong(strtab + 0x20) : sections.getInt(strtab + 0x14) & 0xFFFFFFFFL;
+      if (namesOffset + namesSize > channel.size() || namesSize > Integer.MAX_VALUE) {
+        return false;
+      }
+      final byte[] names = new byte[(int) namesSize];
+      read(channel, namesOffset, names.length).get(names);
+
+      for (int i = 0; i < shnum; i++) {
+        final int start = sections.getInt(i * shentsize);
+        int end = start;
+        while (end < names.length && names[end] != 0) {
+          end++;
+        }
+        if (start < end) {
+          final String name = new String(names, start, end - start, StandardCharsets.US_ASCII);
+          if (name.startsWith(".debug_") || name.startsWith(".zdebug_")) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+
+  private static ByteBuffer read(final FileChannel channel, final long position, final int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void runObjcopy(final String objcopy, final String[] args, final Log log)
+      throws MojoExecutionException, MojoFailureException {
+    final int result = NarUtil.runCommand(objcopy, args, null, null, log);
+    if (result != 0) {
+      throw new MojoExecutionException("NAR: " + objcopy + " returned with error code " + result);
+    }
+  }
+
+  /**
+   * Copies a directory tree to a stripped tree, splitting the debug
+   * information of each binary into a debug tree.
+   *
+   * @param dir
+   *          tree to copy, which is left untouched
+   * @param strippedDir
+   *          tree receiving the files of dir, with the binaries stripped
+   * @param debugDir
+   *          tree receiving the debug information
+   * @param objcopy
+   *          objcopy command to use
+   * @return number of binaries split
+   */
+  public static int split(final File dir, final File strippedDir, final File debugDir, final String objcopy,
+      final Log log) throws MojoExecutionException, MojoFailureException {
+    int count = 0;
+    final File[] files = dir.listFiles();
+    if (files == null) {
+      return 0;
+    }
+    strippedDir.mkdirs();
+    for (final File file : files) {
+      final File stripped = new File(strippedDir, file.getName());
+      try {
+        if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+          count += split(file, stripped, new File(debugDir, file.getName()), objcopy, log);
+        } else if (hasDebugSections(file)) {
+          debugDir.mkdirs();
+          final File debug = new File(debugDir, file.getName() + DEBUG_EXTENSION);
+          runObjcopy(objcopy, new String[] {
+              "--only-keep-debug", file.getPath(), debug.getPath()
+          }, log);
+          runObjcopy(objcopy, new String[] {
+              "--strip-debug", "--add-gnu-debuglink=" + debug.getPath(), file.getPath(), stripped.getPath()
+          }, log);
+          count++;
+        } else {
+          Files.copy(file.toPath(), stripped.toPath(), LinkOption.NOFOLLOW_LINKS, StandardCopyOption.COPY_ATTRIBUTES,
+              StandardCopyOption.REPLACE_EXISTING);
+        }
+      } catch (final IOException e) {
+        throw new MojoExecutionException("NAR: cannot copy " + file + " to " + stripped, e);
+      }
+    }
+    return count;
+  }
+
+  private DebugInfo() {
+  }
+}
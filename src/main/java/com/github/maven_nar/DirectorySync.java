@@ -0,0 +1,301 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
+
+import com.github.maven_nar.cpptasks.ContentHash;
+
+/**
+ * Brings the files of a target directory up to date with those of a source
+ * directory, as a replacement for copying the whole tree on every build.
+ *
+ * A file is skipped when the target has one of the same size and
+ * modification time, or optionally the same content, and is copied with its
+ * attributes otherwise. Files are optionally hard linked instead, when source
+ * and target are on the same file system. Files only in the target are kept.
+ * Includes and excludes are comma separated patterns as for
+ * DirectoryScanner, whose default excludes always apply.
+ */
+public final class DirectorySync {
+  /**
+   * Number of files copied, skipped and linked by a sync.
+   */
+  public static final class Result {
+    private final AtomicInteger copied = new AtomicInteger();
+    private final AtomicInteger linked = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    public int getCopied() {
+      return this.copied.get();
+    }
+
+    public int getLinked() {
+      return this.linked.get();
+    }
+
+    public int getSkipped() {
+      return this.skipped.get();
+    }
+
+    @Override
+    public String toString() {
+      return getCopied() + " copied, " + getSkipped() + " skipped, " + getLinked() + " linked";
+    }
+  }
+
+  private static List<String> parsePatterns(final String... patterns) {
+    final List<String> result = new ArrayList<>();
+    for (String pattern : patterns) {
+      pattern = pattern.trim().replace('/', File.separatorChar).replace('\\', File.separatorChar);
+      if (pattern.isEmpty()) {
+        continue;
+      }
+      if (pattern.endsWith(File.separator)) {
+        pattern += "**";
+      }
+      result.add(pattern);
+    }
+    return result;
+  }
+
+  private static boolean matches(final List<String> patterns, final String path) {
+    for (final String pattern : patterns) {
+      if (SelectorUtils.matchPath(pattern, path, true)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean compareContent;
+
+  private final List<String> excludes = new ArrayList<>();
+
+  private boolean hardLinks;
+
+  private List<String> includes = parsePatterns("**");
+
+  private volatile boolean linkFailed;
+
+  private final Path source;
+
+  private final Path target;
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  public DirectorySync(final File source, final File target) {
+    this.source = source.toPath();
+    this.target = target.toPath();
+    this.excludes.addAll(parsePatterns(DirectoryScanner.DEFAULTEXCLUDES));
+  }
+
+  /**
+   * Compares the content of files of the same size but another modification
+   * time, instead of copying them.
+   */
+  public void setCompareContent(final boolean compareContent) {
+    this.compareContent = compareContent;
+  }
+
+  /**
+   * Adds comma separated patterns of files not to sync.
+   */
+  public void setExcludes(final String excludes) {
+    if (excludes != null) {
+      this.excludes.addAll(parsePatterns(excludes.split(",")));
+    }
+  }
+
+  /**
+   * Hard links the files instead of copying them, where the file system
+   * allows it. The target files must then not be modified in place.
+   */
+  public void setHardLinks(final boolean hardLinks) {
+    this.hardLinks = hardLinks;
+  }
+
+  /**
+   * Sets comma separated patterns of files to sync, all files if null.
+   */
+  public void setIncludes(final String includes) {
+    this.includes = parsePatterns(includes != null ? includes.split(",") : new String[] {
+      "**"
+    });
+  }
+
+  /**
+   * Sets the number of files synced concurrently.
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads;
+  }
+
+  private boolean isExcludedDirectory(final String path) {
+    // a directory is left out if all paths below it are excluded
+    for (final String pattern : this.excludes) {
+      final String suffix = File.separator + "**";
+      if (pattern.endsWith(suffix)
+          && SelectorUtils.matchPath(pattern.substring(0, pattern.length() - suffix.length()), path, true)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isUpToDate(final Path file, final BasicFileAttributes attrs, final Path dest) throws IOException {
+    final BasicFileAttributes destAttrs;
+    try {
+      destAttrs = Files.readAttributes(dest, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    } catch (final IOException e) {
+      return false;
+    }
+    if (!destAttrs.isRegularFile() || destAttrs.size() != attrs.size()) {
+      return false;
+    }
+    if (destAttrs.lastModifiedTime().toMillis() == attrs.lastModifiedTime().toMillis()) {
+      return true;
+    }
+    if (this.compareContent && ContentHash.hash(file.toFile()) == ContentHash.hash(dest.toFile())) {
+      Files.setLastModifiedTime(dest, attrs.lastModifiedTime());
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Syncs the target directory with the source directory.
+   *
+   * @throws IOException
+   *           if the source directory does not exist or a file can not be
+   *           synced, in which case the first failure in walk order is thrown
+   */
+  public Result sync() throws IOException {
+    if (!Files.isDirectory(this.source)) {
+      throw new IOException("Source directory doesn't exists (" + this.source.toAbsolutePath() + ").");
+    }
+
+    //
+    // walk the source, collecting the files to sync
+    //
+    final List<Path> files = new ArrayList<>();
+    final List<BasicFileAttributes> attributes = new ArrayList<>();
+    Files.walkFileTree(this.source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+            if (!dir.equals(DirectorySync.this.source)
+                && isExcludedDirectory(DirectorySync.this.source.relativize(dir).toString())) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+            final String path = DirectorySync.this.source.relativize(file).toString();
+            if (!attrs.isRegularFile()) {
+              if (attrs.isOther()) {
+                throw new IOException("Unknown file type: " + file.toAbsolutePath());
+              }
+            } else if (matches(DirectorySync.this.includes, path) && !matches(DirectorySync.this.excludes, path)) {
+              files.add(file);
+              attributes.add(attrs);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    //
+    // and sync them concurrently
+    //
+    final Result result = new Result();
+    if (files.isEmpty()) {
+      return result;
+    }
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < files.size(); i++) {
+      final Path file = files.get(i);
+      final BasicFileAttributes attrs = attributes.get(i);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          syncFile(file, attrs, result);
+          return null;
+        }
+      });
+    }
+    final List<Throwable> failures;
+    try {
+      failures = NarUtil.runTasks(tasks, this.threads);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while syncing " + this.source + " to " + this.target, e);
+    }
+    for (final Throwable failure : failures) {
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure != null) {
+        throw new IOException("Could not sync " + this.source + " to " + this.target, failure);
+      }
+    }
+    return result;
+  }
+
+  private void syncFile(final Path file, final BasicFileAttributes attrs, final Result result) throws IOException {
+    final Path dest = this.target.resolve(this.source.relativize(file).toString());
+    if (isUpToDate(file, attrs, dest)) {
+      result.skipped.incrementAndGet();
+      return;
+    }
+    Files.createDirectories(dest.getParent());
+    if (this.hardLinks && !this.linkFailed) {
+      try {
+        Files.deleteIfExists(dest);
+        Files.createLink(dest, file.toRealPath());
+        result.linked.incrementAndGet();
+        return;
+      } catch (final FileSystemException | UnsupportedOperationException e) {
+        // another file system, copy from now on
+        this.linkFailed = true;
+      }
+    }
+    Files.copy(file, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    result.copied.incrementAndGet();
+  }
+}
@@ -116,6 +116,15 @@ public class Library implements Executable {
    */
   @Parameter
   private List<String> dependencyBindings = new ArrayList<>();
+
+  /**
+   * When true and if type is "static" create a thin archive, which refers to
+   * the object files instead of containing them, for links within the build.
+   * A full archive is written when the NAR is packaged. Requires GNU ar.
+   * Defaults to false.
+   */
+  @Parameter
+  private boolean thinArchive = false;
   
   @Override
   public final List/* <String> */getArgs() {
@@ -166,6 +175,10 @@ public class Library implements Executable {
     return this.linkFortranMain;
   }
 
+  public final boolean isThinArchive() {
+    return this.thinArchive;
+  }
+
   @Override
   public final boolean shouldRun() {
     return this.run;
@@ -90,6 +90,22 @@ public class Linker {
 
   @Parameter(required = true)
   private boolean skipDepLink = false;
+
+  /**
+   * Links with a faster linker than the default one if available: "auto"
+   * tries mold, lld and gold in this order, a comma separated list of these
+   * names tries those given. Falls back to the default linker if none of them
+   * can be used. Only applies to gcc compatible compiler drivers.
+   */
+  @Parameter
+  private String fastLinker;
+
+  /**
+   * Collects the debug information split from the objects by the splitDebug
+   * compiler option into a package next to the output, using dwp.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean debugPackage = false;
   
   /**
    * Options for the linker Defaults to Architecture-OS-Linker specific values.
@@ -301,6 +317,8 @@ public class Linker {
     linker.setLinkerPrefix(linkerPrefix);
     linker.setIncremental(this.incremental);
     linker.setMap(this.map);
+    linker.setFastLinker(this.fastLinker);
+    linker.setDebugPackage(this.debugPackage);
 
     // Add definitions (Window only)
     if (os.equals(OS.WINDOWS) && getName(null, null).equals("msvc")
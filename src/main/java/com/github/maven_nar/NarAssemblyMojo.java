@@ -21,6 +21,7 @@ package com.github.maven_nar;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.maven.artifact.Artifact;
@@ -50,6 +51,15 @@ public class NarAssemblyMojo extends AbstractDependencyMojo {
     return new ScopeFilter( Artifact.SCOPE_RUNTIME, null );
   }
 
+  /**
+   * Assembles all library types of the dependencies, not only those they are
+   * bound as.
+   */
+  @Override
+  protected List<String> getRequiredBindings() {
+    return Arrays.asList(Library.EXECUTABLE, Library.SHARED, Library.JNI, Library.STATIC);
+  }
+
   /**
    * Copies the unpacked nar libraries and files into the projects target area
    */
@@ -73,6 +83,7 @@ public class NarAssemblyMojo extends AbstractDependencyMojo {
     unpackAttachedNars(attachedNarArtifacts);
 
     // this may make some extra copies...
+    final NarManager narManager = getNarManager();
     for (final Object element : attachedNarArtifacts) {
       final Artifact dependency = (Artifact) element;
       getLog().debug("Assemble from " + dependency);
@@ -83,7 +94,7 @@ public class NarAssemblyMojo extends AbstractDependencyMojo {
       dependency.isSnapshot();
 
       final File srcDir = getLayout().getNarUnpackDirectory(getUnpackDirectory(),
-          getNarManager().getNarFile(dependency));
+          narManager.getNarFile(dependency));
       // File srcDir = new File( getLocalRepository().pathOf( dependency ) );
       // srcDir = new File( getLocalRepository().getBasedir(),
       // srcDir.getParent() );
@@ -32,6 +32,12 @@ import java.util.ListIterator;
 import java.util.Objects;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.MavenSession;
@@ -74,6 +80,14 @@ public class NarCompileMojo extends AbstractCompileMojo {
   @Parameter(property = "nar.embedManifest", defaultValue = "true")
   protected boolean embedManifest = true;
 
+  /**
+   * Build the libraries of the project concurrently, within the core budget
+   * of maxCores. Executables are linked after the other libraries. The
+   * output of each library is logged once it is done.
+   */
+  @Parameter(property = "nar.parallelLibraries", defaultValue = "false")
+  protected boolean parallelLibraries;
+
   /**
    * The current build session instance.
    */
@@ -92,6 +106,123 @@ public class NarCompileMojo extends AbstractCompileMojo {
 
   private void createLibrary(final Project antProject, final Library library)
       throws MojoExecutionException, MojoFailureException {
+    final CCTask task = configureLibrary(antProject, library);
+    executeLibrary(task);
+    finishLibrary(library, task);
+  }
+
+  /**
+   * Builds the libraries concurrently. An executable waits for the other
+   * libraries, which it may link, and a library waits for earlier libraries
+   * of the same type, which share its directories. Running processes share
+   * the core budget and the log of each library is written as a whole when
+   * the library is done.
+   */
+  private void createLibraries(final List<Library> libraries) throws MojoExecutionException, MojoFailureException {
+    int noOfCores = Runtime.getRuntime().availableProcessors();
+    final int maxCores = getMaxCores(getAOL());
+    if (maxCores > 0) {
+      noOfCores = Math.min(maxCores, noOfCores);
+    }
+    final Semaphore coreBudget = new Semaphore(noOfCores, true);
+
+    final List<CCTask> tasks = new ArrayList<>();
+    final List<NarLogBuffer> logs = new ArrayList<>();
+    for (final Library library : libraries) {
+      final NarLogBuffer log = new NarLogBuffer();
+      final Project antProject = new Project();
+      antProject.setName("NARProject");
+      antProject.addBuildListener(log);
+      final CCTask task = configureLibrary(antProject, library);
+      task.setCoreBudget(coreBudget);
+      tasks.add(task);
+      logs.add(log);
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(libraries.size());
+    final List<Future<Void>> futures = new ArrayList<>(Collections.<Future<Void>> nCopies(libraries.size(), null));
+    try {
+      //
+      // submit the other libraries before the executables, so
+      // that everything waited for has been submitted already
+      //
+      for (final boolean executables : new boolean[] {
+          false, true
+      }) {
+        for (int i = 0; i < libraries.size(); i++) {
+          final String type = libraries.get(i).getType();
+          if (type.equals(Library.EXECUTABLE) != executables) {
+            continue;
+          }
+          final List<Future<Void>> prerequisites = new ArrayList<>();
+          for (int j = 0; j < libraries.size(); j++) {
+            final String otherType = libraries.get(j).getType();
+            if (j < i && type.equals(otherType) || executables && !otherType.equals(Library.EXECUTABLE)) {
+              prerequisites.add(futures.get(j));
+            }
+          }
+          final CCTask task = tasks.get(i);
+          final NarLogBuffer log = logs.get(i);
+          futures.set(i, executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              for (final Future<Void> prerequisite : prerequisites) {
+                prerequisite.get();
+              }
+              try {
+                executeLibrary(task);
+              } finally {
+                // report each library as soon as it is done
+                synchronized (logs) {
+                  getLog().info("Output of the " + type + " library:");
+                  log.flush(getAntProject());
+                }
+              }
+              return null;
+            }
+          }));
+        }
+      }
+
+      //
+      // wait for all libraries, then report the first
+      // failure in the order of the libraries
+      //
+      Throwable failure = null;
+      for (int i = 0; i < libraries.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (final ExecutionException e) {
+          if (failure == null) {
+            // a library waiting for a failed one fails with its failure
+            failure = e.getCause();
+            while (failure instanceof ExecutionException) {
+              failure = failure.getCause();
+            }
+          }
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new MojoExecutionException("NAR: interrupted while building libraries", e);
+        }
+      }
+      if (failure instanceof MojoExecutionException) {
+        throw (MojoExecutionException) failure;
+      } else if (failure instanceof MojoFailureException) {
+        throw (MojoFailureException) failure;
+      } else if (failure != null) {
+        throw new MojoExecutionException("NAR: Compile failed", failure);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    for (int i = 0; i < libraries.size(); i++) {
+      finishLibrary(libraries.get(i), tasks.get(i));
+    }
+  }
+
+  private CCTask configureLibrary(final Project antProject, final Library library)
+      throws MojoExecutionException, MojoFailureException {
     getLog().debug("Creating Library " + library);
     // configure task
     final CCTask task = new CCTask();
@@ -153,6 +284,18 @@ public class NarCompileMojo extends AbstractCompileMojo {
     task.setFailonerror(failOnError(getAOL()));
     task.setLibtool(useLibtool(getAOL()));
 
+    // content hash change detection
+    task.setContentHash(this.contentHash);
+
+    // binary dependency and history tables
+    task.setBinaryStore(this.binaryStore);
+
+    // persistent compiler workers
+    task.setCompilerWorker(this.compilerWorker);
+
+    // incremental static libraries
+    task.setIncrementalArchive(this.incrementalArchive);
+
     // runtime
     final RuntimeType runtimeType = new RuntimeType();
     runtimeType.setValue(getRuntime(getAOL()));
@@ -330,6 +473,7 @@ public class NarCompileMojo extends AbstractCompileMojo {
     final LinkerDef linkerDefinition = getLinker().getLinker(this, task, getOS(), getAOL().getKey() + ".linker.", type, linkPaths);
     linkerDefinition.setCommands(linkCommands);
     linkerDefinition.setDryRun(dryRun);
+    linkerDefinition.setThinArchive(type.equals(Library.STATIC) && library.isThinArchive());
     task.addConfiguredLinker(linkerDefinition);
     
     Set<SysLib> dependencySysLibs = new LinkedHashSet<>();
@@ -457,13 +601,20 @@ public class NarCompileMojo extends AbstractCompileMojo {
     // Add JVM to linker
     getJava().addRuntime(task, getJavaHome(getAOL()), getOS(), getAOL().getKey() + ".java.");
 
-    // execute
+    return task;
+  }
+
+  private void executeLibrary(final CCTask task) throws MojoExecutionException {
     try {
       task.execute();
     } catch (final BuildException e) {
       throw new MojoExecutionException("NAR: Compile failed", e);
     }
+  }
 
+  private void finishLibrary(final Library library, final CCTask task)
+      throws MojoExecutionException, MojoFailureException {
+    final File outFile = task.getOutfile();
     // FIXME, this should be done in CPPTasks at some point
     // getRuntime(getAOL()).equals("dynamic") &&
     if ((isEmbedManifest() || getLinker().isGenerateManifest()) && getOS().equals(OS.WINDOWS)
@@ -572,8 +723,13 @@ public class NarCompileMojo extends AbstractCompileMojo {
 
     if (noOfSources > 0) {
       getLog().info("Compiling " + noOfSources + " native files");
-      for (final Library library : getLibraries()) {
-        createLibrary(getAntProject(), library);
+      final List<Library> libraries = getLibraries();
+      if (this.parallelLibraries && libraries.size() > 1) {
+        createLibraries(libraries);
+      } else {
+        for (final Library library : libraries) {
+          createLibrary(getAntProject(), library);
+        }
       }
     } else {
       getLog().info("Nothing to compile");
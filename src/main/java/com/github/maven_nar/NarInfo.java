@@ -206,6 +206,13 @@ public class NarInfo {
     this.info.load(jar.getInputStream(getNarPropertiesEntry(jar)));
   }
 
+  /**
+   * Adds properties read before, for instance by a {@link NarInfoCache}.
+   */
+  public final void read(final Properties properties) {
+    this.info.putAll(properties);
+  }
+
   public final void setBinding(final AOL aol, final String value) {
     setProperty(aol, "libs.binding", value);
   }
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Caches the nar properties read from dependency nars, so that the goals of
+ * a build, which all look at the same dependencies, read each nar once.
+ *
+ * The cache lives in the data of the repository session, which lasts as long
+ * as the Maven session and is shared by the modules of a build. Entries are
+ * keyed by the path, size and modification time of the nar, so a nar
+ * installed again during the build is read again. Only the central directory
+ * of a nar and the nar properties entry are read.
+ */
+public final class NarInfoCache {
+  /**
+   * Properties of the nars without nar properties.
+   */
+  private static final Properties NONE = new Properties();
+
+  /**
+   * Returns the cache of a repository session, or a new cache if there is no
+   * session.
+   */
+  public static NarInfoCache get(final RepositorySystemSession session) {
+    if (session == null || session.getData() == null) {
+      return new NarInfoCache();
+    }
+    // the class itself is the key, plugin versions loaded side by side do
+    // not share their caches
+    final SessionData data = session.getData();
+    NarInfoCache cache = (NarInfoCache) data.get(NarInfoCache.class);
+    while (cache == null) {
+      data.set(NarInfoCache.class, null, new NarInfoCache());
+      cache = (NarInfoCache) data.get(NarInfoCache.class);
+    }
+    return cache;
+  }
+
+  private static Properties read(final File file, final String entryName) throws IOException {
+    try (ZipFile zip = new ZipFile(file)) {
+      final ZipEntry entry = zip.getEntry(entryName);
+      if (entry == null) {
+        return NONE;
+      }
+      final Properties properties = new Properties();
+      try (InputStream in = zip.getInputStream(entry)) {
+        properties.load(in);
+      }
+      return properties;
+    } catch (final ZipException e) {
+      // not a zip file, or an empty one
+      return NONE;
+    }
+  }
+
+  private final ConcurrentMap<String, Properties> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the properties stored in an entry of a nar file, or null if the
+   * file is not a readable zip file or does not have the entry. The
+   * properties returned must not be modified.
+   *
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public Properties getProperties(final File file, final String entryName) throws IOException {
+    final String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|" + entryName;
+    Properties properties = this.entries.get(key);
+    if (properties == null) {
+      properties = read(file, entryName);
+      this.entries.putIfAbsent(key, properties);
+    }
+    return properties == NONE ? null : properties;
+  }
+}
@@ -38,7 +38,25 @@ public interface NarLayout {
   /**
    * Called to attach nars to main nar/jar file. This method needs to produce
    * all the attached nar archive files.
+   *
+   * @param incrementalPackaging
+   *          keep a nar from a previous build when the manifest of its
+   *          inputs is unchanged, or archive all nars again if false
+   * @param objcopy
+   *          objcopy command used to move the debug information of binaries
+   *          into separate debug nars, or null to keep it in the binaries
+   */
+  void attachNars(File baseDir, ArchiverManager archiverManager, MavenProjectHelper projectHelper,
+      MavenProject project, boolean incrementalPackaging, String objcopy)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Called to attach nars to main nar/jar file, archiving all of them again
+   * and keeping the debug information in the binaries.
+   *
+   * @deprecated use the variant taking the packaging options
    */
+  @Deprecated
   void
       attachNars(File baseDir, ArchiverManager archiverManager, MavenProjectHelper projectHelper, MavenProject project)
           throws MojoExecutionException, MojoFailureException;
@@ -103,8 +121,25 @@ public interface NarLayout {
    * 
    * @param defaultAOL
    * @param linkerName
+   * @param unpackStore
+   *          store shared by the builds on the machine to unpack the nar
+   *          into, creating only a view of it in the unpack directory, or
+   *          null to unpack it in place
+   * @param excludes
+   *          patterns of the entries left packed until a later unpackNar
+   *          needs them, or null to unpack all entries
    */
-  void unpackNar(File baseDir, ArchiverManager archiverManager, File file, String os, String linkerName, AOL defaultAOL, boolean skipRanlib)
-          throws MojoExecutionException, MojoFailureException;
+  void unpackNar(File baseDir, ArchiverManager archiverManager, File file, String os, String linkerName,
+      AOL defaultAOL, boolean skipRanlib, NarUnpackStore unpackStore, String[] excludes)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Called to unpack a nar file completely, in place.
+   *
+   * @deprecated use the variant taking the unpack store and excludes
+   */
+  @Deprecated
+  void unpackNar(File baseDir, ArchiverManager archiverManager, File file, String os, String linkerName,
+      AOL defaultAOL, boolean skipRanlib) throws MojoExecutionException, MojoFailureException;
 
 }
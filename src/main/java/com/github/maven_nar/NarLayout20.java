@@ -62,15 +62,20 @@ public class NarLayout20 extends AbstractNarLayout {
    */
   @Override
   public final void attachNars(final File baseDir, final ArchiverManager archiverManager,
-      final MavenProjectHelper projectHelper, final MavenProject project) throws MojoExecutionException {
+      final MavenProjectHelper projectHelper, final MavenProject project, final boolean incrementalPackaging,
+      final String objcopy) throws MojoExecutionException {
+    if (objcopy != null) {
+      throw new MojoExecutionException("NAR: separate debug nars need the NarLayout21 layout");
+    }
     if (getIncludeDirectory(baseDir, project.getArtifactId(), project.getVersion()).exists()) {
-      attachNar(archiverManager, projectHelper, project, "noarch", baseDir, "include/**");
+      attachNar(archiverManager, projectHelper, project, "noarch", baseDir, "include/**",
+          incrementalPackaging);
     }
 
     final String[] binAOL = new File(baseDir, "bin").list();
     for (int i = 0; binAOL != null && i < binAOL.length; i++) {
       attachNar(archiverManager, projectHelper, project, binAOL[i] + "-" + Library.EXECUTABLE, baseDir, "bin/"
-          + binAOL[i] + "/**");
+          + binAOL[i] + "/**", incrementalPackaging);
     }
 
     final File libDir = new File(baseDir, "lib");
@@ -80,7 +85,7 @@ public class NarLayout20 extends AbstractNarLayout {
       final String[] libType = new File(libDir, libAOL[i]).list();
       for (int j = 0; libType != null && j < libType.length; j++) {
         attachNar(archiverManager, projectHelper, project, libAOL[i] + "-" + libType[j], baseDir, "lib/" + libAOL[i]
-            + "/" + libType[j] + "/**");
+            + "/" + libType[j] + "/**", incrementalPackaging);
       }
 
     }
@@ -225,7 +230,15 @@ public class NarLayout20 extends AbstractNarLayout {
 
   @Override
   public void unpackNar(final File unpackDir, final ArchiverManager archiverManager, final File file, final String os,
-      final String linkerName, final AOL defaultAOL, final boolean skipRanlib) throws MojoExecutionException, MojoFailureException {
+      final String linkerName, final AOL defaultAOL, final boolean skipRanlib, final NarUnpackStore unpackStore,
+      final String[] excludes) throws MojoExecutionException, MojoFailureException {
+    if (unpackStore != null) {
+      throw new MojoExecutionException("NAR: the unpack store needs the NarLayout21 layout");
+    }
+    if (excludes != null) {
+      // the flag file can not tell what was left packed
+      getLog().debug("NAR: " + file.getName() + " is unpacked completely, lazy unpack needs the NarLayout21 layout");
+    }
     final File flagFile = new File(unpackDir, FileUtils.basename(file.getPath(), "." + NarConstants.NAR_EXTENSION)
         + ".flag");
 
@@ -20,12 +20,18 @@
 package com.github.maven_nar;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -65,12 +71,22 @@ public class NarLayout21 extends AbstractNarLayout {
    */
   @Override
   public final void attachNars(final File baseDir, final ArchiverManager archiverManager,
-      final MavenProjectHelper projectHelper, final MavenProject project) throws MojoExecutionException {
+      final MavenProjectHelper projectHelper, final MavenProject project, final boolean incrementalPackaging,
+      final String objcopy) throws MojoExecutionException, MojoFailureException {
     if (getNoArchDirectory(baseDir, project.getArtifactId(), project.getVersion()).exists()) {
       attachNar(archiverManager, projectHelper, project, NarConstants.NAR_NO_ARCH,
-          getNoArchDirectory(baseDir, project.getArtifactId(), project.getVersion()), "*/**");
+          getNoArchDirectory(baseDir, project.getArtifactId(), project.getVersion()), "*/**", incrementalPackaging);
     }
 
+    // stripped binaries and full archives are packaged from a copy, the build
+    // output is kept as it is so it does not look out of date to the next build
+    final File debugStagingDir = new File(project.getBuild().getDirectory(), "nar-debug");
+    if (objcopy != null) {
+      NarUtil.deleteDirectory(debugStagingDir);
+    }
+    final File archiveStagingDir = new File(project.getBuild().getDirectory(), "nar-archive");
+    NarUtil.deleteDirectory(archiveStagingDir);
+
     // list all directories in basedir, scan them for classifiers
     final String[] subDirs = baseDir.list();
     for (int i = 0; subDirs != null && i < subDirs.length; i++) {
@@ -89,7 +105,32 @@ public class NarLayout21 extends AbstractNarLayout {
       }
 
       final File dir = new File(baseDir, subDirs[i]);
-      attachNar(archiverManager, projectHelper, project, classifier, dir, "*/**");
+      if (classifier.endsWith("-" + Library.STATIC)) {
+        // thin archives only refer to the objects, package full ones
+        final File fullDir = new File(archiveStagingDir, subDirs[i]);
+        try {
+          final int count = ThinArchive.materializeAll(dir, fullDir);
+          if (count > 0) {
+            getLog().debug("Packaging " + count + " thin archive(s) in " + dir + " as full archives");
+            attachNar(archiverManager, projectHelper, project, classifier, fullDir, "*/**", incrementalPackaging);
+            continue;
+          }
+        } catch (final IOException e) {
+          throw new MojoExecutionException("NAR: cannot create full archives of " + dir, e);
+        }
+      } else if (objcopy != null) {
+        final File strippedDir = new File(debugStagingDir, "stripped/" + subDirs[i]);
+        final File debugDir = new File(debugStagingDir, "debug/" + subDirs[i]);
+        final int count = DebugInfo.split(dir, strippedDir, debugDir, objcopy, getLog());
+        if (count > 0) {
+          getLog().debug("Separated debug information of " + count + " binaries in " + dir);
+          attachNar(archiverManager, projectHelper, project, classifier, strippedDir, "*/**", incrementalPackaging);
+          attachNar(archiverManager, projectHelper, project, classifier + DebugInfo.CLASSIFIER_SUFFIX, debugDir,
+              "*/**", incrementalPackaging);
+          continue;
+        }
+      }
+      attachNar(archiverManager, projectHelper, project, classifier, dir, "*/**", incrementalPackaging);
     }
   }
 
@@ -161,13 +202,24 @@ public class NarLayout21 extends AbstractNarLayout {
     return new File(aolDirectory, this.fileLayout.getNarInfoFile(groupId, artifactId, type));
   }
 
+  /**
+   * Debug nars are unpacked into the directory of the nar holding their
+   * binaries, so debuggers find the debug information next to them.
+   */
   @Override
   public File getNarUnpackDirectory(final File baseUnpackDirectory, final File narFile) {
-    final File dir = new File(baseUnpackDirectory, FileUtils.basename(narFile.getPath(), "."
-        + NarConstants.NAR_EXTENSION));
+    String name = FileUtils.basename(narFile.getPath(), "." + NarConstants.NAR_EXTENSION);
+    if (isDebugNar(narFile)) {
+      name = name.substring(0, name.length() - DebugInfo.CLASSIFIER_SUFFIX.length());
+    }
+    final File dir = new File(baseUnpackDirectory, name);
     return dir;
   }
 
+  private boolean isDebugNar(final File narFile) {
+    return narFile.getName().endsWith(DebugInfo.CLASSIFIER_SUFFIX + "." + NarConstants.NAR_EXTENSION);
+  }
+
   @Override
   public File getNoArchDirectory(final File baseDir, final String artifactId, final String version) {
     return new File(baseDir, artifactId + "-" + version + "-" + NarConstants.NAR_NO_ARCH);
@@ -299,31 +351,122 @@ public class NarLayout21 extends AbstractNarLayout {
     }
   }
 
+  /**
+   * Returns the file recording how a nar was unpacked, next to its unpack
+   * directory.
+   */
+  private File getUnpackMarker(final File unpackDirectory, final File narFile) {
+    return new File(unpackDirectory, "." + narFile.getName() + ".unpacked");
+  }
+
+  /**
+   * Unpacks a nar unless its unpack marker shows that the same content was
+   * unpacked with the same settings, whatever the timestamps.
+   */
   @Override
   public void unpackNar(final File unpackDirectory, final ArchiverManager archiverManager, final File file,
-      final String os, final String linkerName, final AOL defaultAOL, final boolean skipRanlib)
-      throws MojoExecutionException, MojoFailureException {
+      final String os, final String linkerName, final AOL defaultAOL, final boolean skipRanlib,
+      final NarUnpackStore unpackStore, final String[] unpackExcludes) throws MojoExecutionException,
+      MojoFailureException {
     final File dir = getNarUnpackDirectory(unpackDirectory, file);
+    final File marker = getUnpackMarker(unpackDirectory, file);
+    final String stamped = readUnpackMarker(marker);
+    final String recorded = withoutUnpackStamp(stamped);
+    final String fingerprint = getUnpackFingerprint(file, stamped, os, linkerName, defaultAOL, skipRanlib);
+    final String stamp = getUnpackStamp(file);
+
+    if (isDebugNar(file)) {
+      // shares the directory of its binaries, which are unpacked first and
+      // remove this marker when unpacked again
+      if (!fingerprint.equals(recorded)) {
+        marker.delete();
+        if (unpackStore != null) {
+          // keep the debug information out of the store
+          unpackStore.unshare(dir);
+        }
+        unpackNarAndProcess(archiverManager, file, dir, os, linkerName, defaultAOL, true);
+        writeUnpackMarker(marker, stamp + fingerprint);
+      } else if (!stamped.startsWith(stamp)) {
+        writeUnpackMarker(marker, stamp + fingerprint);
+      }
+      return;
+    }
 
-    boolean process = false;
+    // the store is shared, nars are unpacked completely into it
+    final String[] excludes = unpackStore != null ? null : unpackExcludes;
+    final String viewFingerprint = unpackStore != null ? fingerprint + "store=" + unpackStore.getDescription()
+        + "\n" : fingerprint;
+    if (dir.isDirectory() && recorded != null && recorded.startsWith(viewFingerprint)) {
+      // unpack what was left packed and is needed now
+      final Set<String> packed = parseExcludes(recorded.substring(viewFingerprint.length()));
+      final Set<String> needed = new HashSet<>(packed);
+      if (excludes != null) {
+        needed.removeAll(Arrays.asList(excludes));
+      }
+      if (!needed.isEmpty()) {
+        getLog().debug("Unpacking " + needed + " of " + file);
+        unpackNarAndProcess(archiverManager, file, dir, os, linkerName, defaultAOL, skipRanlib,
+            needed.toArray(new String[needed.size()]), null);
+        packed.removeAll(needed);
+        writeUnpackMarker(marker, stamp + viewFingerprint + formatExcludes(packed));
+      } else if (!stamped.startsWith(stamp)) {
+        writeUnpackMarker(marker, stamp + recorded);
+      }
+      return;
+    }
 
-    if (!unpackDirectory.exists()) {
-      unpackDirectory.mkdirs();
-      process = true;
-    } else if (!dir.exists()) {
-      process = true;
-    } else if (file.lastModified() > dir.lastModified()) {
+    // without a matching marker the directory may hold another version or
+    // a partial unpack, start from scratch
+    marker.delete();
+    getUnpackMarker(unpackDirectory, new File(dir.getName() + DebugInfo.CLASSIFIER_SUFFIX + "."
+        + NarConstants.NAR_EXTENSION)).delete();
+    if (Files.isSymbolicLink(dir.toPath())) {
+      try {
+        Files.delete(dir.toPath());
+      } catch (final IOException e) {
+        throw new MojoExecutionException("Cannot delete " + dir, e);
+      }
+    } else if (dir.exists()) {
       NarUtil.deleteDirectory(dir);
-      process = true;
-    } else if (dir.list().length == 0) {
-      // a previously failed cleanup which failed deleting all may have left a
-      // state where dir modified > file modified but not unpacked.
-      process = true;
     }
+    unpackDirectory.mkdirs();
+    if (unpackStore != null) {
+      final File entry = unpackStore.unpack(fingerprint, new NarUnpackStore.Unpacker() {
+        @Override
+        public void unpack(final File entryDir) throws MojoExecutionException, MojoFailureException {
+          unpackNarAndProcess(archiverManager, file, entryDir, os, linkerName, defaultAOL, skipRanlib);
+        }
+      });
+      unpackStore.createView(entry, dir);
+    } else {
+      unpackNarAndProcess(archiverManager, file, dir, os, linkerName, defaultAOL, skipRanlib, null, excludes);
+    }
+    writeUnpackMarker(marker, stamp + viewFingerprint
+        + formatExcludes(excludes != null ? Arrays.asList(excludes) : Collections.<String> emptyList()));
+  }
 
-    if (process) {
-      unpackNarAndProcess(archiverManager, file, dir, os, linkerName, defaultAOL, skipRanlib);
+  /**
+   * Formats the patterns of the entries left packed, recorded in the unpack
+   * marker.
+   */
+  private static String formatExcludes(final Collection<String> excludes) {
+    final StringBuilder text = new StringBuilder("packed=");
+    for (final String exclude : new TreeSet<>(excludes)) {
+      text.append(exclude).append(' ');
+    }
+    return text.toString().trim() + "\n";
+  }
+
+  private static Set<String> parseExcludes(final String text) {
+    final Set<String> excludes = new TreeSet<>();
+    if (text.startsWith("packed=")) {
+      for (final String exclude : text.substring("packed=".length()).trim().split("\\s+")) {
+        if (!exclude.isEmpty()) {
+          excludes.add(exclude);
+        }
+      }
     }
+    return excludes;
   }
 
 }
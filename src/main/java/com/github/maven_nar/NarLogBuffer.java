@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+
+/**
+ * Keeps the Ant messages of a library built concurrently with others, so
+ * that they can be logged together once it is done.
+ */
+public class NarLogBuffer implements BuildListener {
+
+  private final List<BuildEvent> events = new ArrayList<>();
+
+  @Override
+  public void buildFinished(final BuildEvent event) {
+  }
+
+  @Override
+  public void buildStarted(final BuildEvent event) {
+  }
+
+  /**
+   * Logs the kept messages to a project and forgets them.
+   */
+  public final synchronized void flush(final Project project) {
+    for (final BuildEvent event : this.events) {
+      project.log(event.getMessage(), event.getPriority());
+    }
+    this.events.clear();
+  }
+
+  @Override
+  public final synchronized void messageLogged(final BuildEvent event) {
+    this.events.add(event);
+  }
+
+  @Override
+  public void targetFinished(final BuildEvent event) {
+  }
+
+  @Override
+  public void targetStarted(final BuildEvent event) {
+  }
+
+  @Override
+  public void taskFinished(final BuildEvent event) {
+  }
+
+  @Override
+  public void taskStarted(final BuildEvent event) {
+  }
+}
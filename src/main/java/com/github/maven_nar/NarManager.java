@@ -22,13 +22,17 @@ package com.github.maven_nar;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.jar.JarFile;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
-import org.apache.maven.artifact.resolver.ArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -41,6 +45,69 @@ import org.codehaus.plexus.archiver.manager.ArchiverManager;
  * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
  */
 public class NarManager {
+  /**
+   * Number of attached nars resolved concurrently by default.
+   */
+  public static final int DEFAULT_DOWNLOAD_THREADS = 5;
+
+  /**
+   * Locks of the directories nars are unpacked to, shared by the modules
+   * built concurrently.
+   */
+  private static final ConcurrentMap<File, Object> UNPACK_LOCKS = new ConcurrentHashMap<>();
+
+  private static Object getUnpackLock(final File dir) {
+    final File key = dir.getAbsoluteFile();
+    final Object lock = new Object();
+    final Object existing = UNPACK_LOCKS.putIfAbsent(key, lock);
+    return existing != null ? existing : lock;
+  }
+
+  /**
+   * Resolves artifacts on up to the given number of threads. Every artifact
+   * is attempted and the failures are returned in the order of the
+   * artifacts, whatever the order in which they happened, so the first one
+   * reported does not depend on timing.
+   *
+   * @return the exception of each artifact which could not be resolved
+   */
+  public static Map<Artifact, Exception> resolveAll(final List<? extends Artifact> artifacts,
+      final List remoteRepositories, final ArtifactResolver resolver, final ArtifactRepository localRepository,
+      final int threads, final Log log) throws MojoExecutionException {
+    final Map<Artifact, Exception> failures = new LinkedHashMap<>();
+    if (artifacts.isEmpty()) {
+      return failures;
+    }
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (final Artifact artifact : artifacts) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          log.debug("Resolving " + artifact);
+          resolver.resolve(artifact, remoteRepositories, localRepository);
+          return null;
+        }
+      });
+    }
+    final List<Throwable> results;
+    try {
+      results = NarUtil.runTasks(tasks, threads);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("NAR: interrupted while resolving nars", e);
+    }
+    for (int i = 0; i < artifacts.size(); i++) {
+      final Throwable failure = results.get(i);
+      if (failure == null) {
+        continue;
+      }
+      if (!(failure instanceof Exception)) {
+        throw new MojoExecutionException("nar cannot resolve " + artifacts.get(i).getId(), failure);
+      }
+      failures.put(artifacts.get(i), (Exception) failure);
+    }
+    return failures;
+  }
 
   private final Log log;
 
@@ -52,6 +119,8 @@ public class NarManager {
 
   private final String linkerName;
 
+  private NarInfoCache narInfoCache = new NarInfoCache();
+
   private final String[] narTypes = {
       NarConstants.NAR_NO_ARCH, Library.STATIC, Library.SHARED, Library.JNI, Library.PLUGIN
   };
@@ -66,6 +135,63 @@ public class NarManager {
     this.linkerName = NarUtil.getLinkerName(project, architecture, os, linker, log);
   }
 
+  /**
+   * Unpacks nar files on up to the given number of threads. Nars unpacked
+   * to the same directory, such as a debug nar and the nar holding its
+   * binaries, are unpacked one after the other in the given order, holding
+   * the lock of the directory. The first failure in the order of the files
+   * is reported. Each unpack runs ranlib on its own thread, so the number of
+   * threads bounds all of the work.
+   *
+   * @param unpackStore
+   *          store to unpack the nars into, or null to unpack them in place
+   * @param excludes
+   *          patterns of the entries left packed, or null to unpack all
+   */
+  public static void unpackAll(final List<File> files, final NarLayout layout, final File unpackDir,
+      final ArchiverManager archiverManager, final String os, final String linkerName, final AOL defaultAOL,
+      final boolean skipRanlib, final NarUnpackStore unpackStore, final String[] excludes, final int threads,
+      final Log log) throws MojoExecutionException, MojoFailureException {
+    final Map<File, List<File>> groups = new LinkedHashMap<>();
+    for (final File file : files) {
+      final File dir = layout.getNarUnpackDirectory(unpackDir, file);
+      List<File> group = groups.get(dir);
+      if (group == null) {
+        group = new ArrayList<>();
+        groups.put(dir, group);
+      }
+      group.add(file);
+    }
+    if (groups.isEmpty()) {
+      return;
+    }
+
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (final Map.Entry<File, List<File>> group : groups.entrySet()) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          synchronized (getUnpackLock(group.getKey())) {
+            for (final File file : group.getValue()) {
+              log.debug("Unpack " + file + " to " + group.getKey());
+              layout.unpackNar(unpackDir, archiverManager, file, os, linkerName, defaultAOL, skipRanlib, unpackStore,
+                  excludes);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    NarUtil.runTasks(tasks, threads, "cannot unpack nars to " + unpackDir);
+  }
+
+  /**
+   * Sets the cache the nar properties of the dependencies are read through.
+   */
+  public final void setNarInfoCache(final NarInfoCache narInfoCache) {
+    this.narInfoCache = narInfoCache;
+  }
+
   public final void downloadAttachedNars(final List/* <NarArtifacts> */narArtifacts, final List remoteRepositories,
       final ArtifactResolver resolver, final String classifier) throws MojoExecutionException, MojoFailureException {
     // FIXME this may not be the right way to do this.... -U ignored and
@@ -78,18 +204,15 @@ public class NarManager {
     }
     this.log.debug("}");
 
-    for (final Object dependency1 : dependencies) {
-      final Artifact dependency = (Artifact) dependency1;
-      try {
-        this.log.debug("Resolving " + dependency);
-        resolver.resolve(dependency, remoteRepositories, this.repository);
-      } catch (final ArtifactNotFoundException e) {
-        final String message = "nar not found " + dependency.getId();
-        throw new MojoExecutionException(message, e);
-      } catch (final ArtifactResolutionException e) {
-        final String message = "nar cannot resolve " + dependency.getId();
-        throw new MojoExecutionException(message, e);
+    final Map<Artifact, Exception> failures = resolveAll(dependencies, remoteRepositories, resolver, this.repository,
+        DEFAULT_DOWNLOAD_THREADS, this.log);
+    for (final Map.Entry<Artifact, Exception> failure : failures.entrySet()) {
+      if (failure.getValue() instanceof ArtifactNotFoundException) {
+        final String message = "nar not found " + failure.getKey().getId();
+        throw new MojoExecutionException(message, failure.getValue());
       }
+      final String message = "nar cannot resolve " + failure.getKey().getId();
+      throw new MojoExecutionException(message, failure.getValue());
     }
   }
 
@@ -255,26 +378,17 @@ public class NarManager {
       return null;
     }
 
-    JarFile jar = null;
+    final NarInfo info = new NarInfo(dependency.getGroupId(), dependency.getArtifactId(),
+        dependency.getBaseVersion(), this.log);
     try {
-      jar = new JarFile(file);
-      final NarInfo info = new NarInfo(dependency.getGroupId(), dependency.getArtifactId(),
-          dependency.getBaseVersion(), this.log);
-      if (!info.exists(jar)) {
+      final Properties properties = this.narInfoCache.getProperties(file, info.getNarInfoFileName());
+      if (properties == null) {
         return null;
       }
-      info.read(jar);
+      info.read(properties);
       return info;
     } catch (final IOException e) {
       throw new MojoExecutionException("Error while reading " + file, e);
-    } finally {
-      if (jar != null) {
-        try {
-          jar.close();
-        } catch (final IOException e) {
-          // ignore
-        }
-      }
     }
   }
 
@@ -288,12 +402,13 @@ public class NarManager {
     this.log.debug("}");
     // FIXME, kludge to get to download the -noarch, based on classifier
     final List dependencies = getAttachedNarDependencies(narArtifacts, classifier);
+    final List<File> files = new ArrayList<>();
     for (final Object dependency1 : dependencies) {
       final Artifact dependency = (Artifact) dependency1;
       this.log.debug("Unpack " + dependency + " to " + unpackDir);
-      final File file = getNarFile(dependency);
-
-      layout.unpackNar(unpackDir, archiverManager, file, os, this.linkerName, this.defaultAOL, skipRanlib);
+      files.add(getNarFile(dependency));
     }
+    unpackAll(files, layout, unpackDir, archiverManager, os, this.linkerName, this.defaultAOL, skipRanlib, null,
+        null, Runtime.getRuntime().availableProcessors(), this.log);
   }
 }
@@ -24,6 +24,7 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProjectHelper;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 
@@ -47,12 +48,36 @@ public class NarPackageMojo extends AbstractNarMojo {
   @Component
   private MavenProjectHelper projectHelper;
 
+  /**
+   * Moves the debug information of ELF executables and shared libraries into
+   * separate nars, classified as &lt;aol&gt;-&lt;type&gt;-debug, which consumers
+   * download only when asking for them. The packaged binaries are stripped of
+   * it and refer to their debug information by a debug link.
+   */
+  @Parameter(property = "nar.separateDebugInfo", defaultValue = "false")
+  private boolean separateDebugInfo;
+
+  /**
+   * The objcopy command used to separate debug information.
+   */
+  @Parameter(property = "nar.objcopy", defaultValue = "objcopy")
+  private String objcopy;
+
+  /**
+   * Keeps each nar of a previous build when the directories and files it was
+   * archived from have the same names, sizes and content hashes, recorded in
+   * a manifest next to the nar, instead of archiving it again.
+   */
+  @Parameter(property = "nar.incrementalPackage", defaultValue = "true")
+  private boolean incrementalPackage;
+
   // TODO: this is working of what is present rather than what was requested to
   // be built, POM ~/= artifacts!
   @Override
   public final void narExecute() throws MojoExecutionException, MojoFailureException {
     // let the layout decide which nars to attach
-    getLayout().attachNars(getTargetDirectory(), this.archiverManager, this.projectHelper, getMavenProject());
+    getLayout().attachNars(getTargetDirectory(), this.archiverManager, this.projectHelper, getMavenProject(),
+        this.incrementalPackage, this.separateDebugInfo ? this.objcopy : null);
 
   }
 }
@@ -63,7 +63,7 @@ public class NarResourcesMojo extends AbstractResourcesMojo {
         getLog().debug("Copying noarch from " + noarchDir + " to " + noarchDstDir);
         copied += NarUtil.copyDirectoryStructure(noarchDir, noarchDstDir, null, NarUtil.DEFAULT_EXCLUDES);
       }
-      getLog().info("Copied " + copied + " resources");
+      getLog().info("Copied " + copied + " out of date resources");
     } catch (final IOException e) {
       throw new MojoExecutionException("NAR: Could not copy resources", e);
     }
@@ -104,6 +104,18 @@ public class NarTestCompileMojo extends AbstractCompileMojo {
     task.setFailonerror(failOnError(getAOL()));
     task.setLibtool(useLibtool(getAOL()));
 
+    // content hash change detection
+    task.setContentHash(this.contentHash);
+
+    // binary dependency and history tables
+    task.setBinaryStore(this.binaryStore);
+
+    // persistent compiler workers
+    task.setCompilerWorker(this.compilerWorker);
+
+    // incremental static libraries
+    task.setIncrementalArchive(this.incrementalArchive);
+
     // runtime
     final RuntimeType runtimeType = new RuntimeType();
     runtimeType.setValue(getRuntime(getAOL()));
@@ -213,7 +213,7 @@ public class NarTestMojo extends AbstractCompileMojo {
           copied += NarUtil.copyDirectoryStructure(this.testResourceDirectory, workingDir, null,
               NarUtil.DEFAULT_EXCLUDES);
         }
-        getLog().info("Copied " + copied + " test resources");
+        getLog().info("Copied " + copied + " out of date test resources");
       } catch (final IOException e) {
         throw new MojoExecutionException("NAR: Could not copy test resources", e);
       }
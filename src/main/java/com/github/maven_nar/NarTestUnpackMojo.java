@@ -61,6 +61,14 @@ public class NarTestUnpackMojo extends AbstractDependencyMojo {
     return getTestUnpackDirectory() == null ? super.getUnpackDirectory() : getTestUnpackDirectory();
   }
 
+  /**
+   * Leaves the entries of the dependencies not needed to compile, link and run the tests packed.
+   */
+  @Override
+  protected String[] getUnpackExcludes(final List<AttachedNarArtifact> dependencies) {
+    return getNativeUnpackExcludes(dependencies);
+  }
+
   @Override
   public final void narExecute() throws MojoExecutionException, MojoFailureException {
     final List<AttachedNarArtifact> attachedNarArtifacts = getAttachedNarArtifacts(tests);
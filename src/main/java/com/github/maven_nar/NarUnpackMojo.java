@@ -55,6 +55,14 @@ public class NarUnpackMojo extends AbstractDependencyMojo {
     return new ScopeFilter( Artifact.SCOPE_COMPILE, null );
   }
 
+  /**
+   * Leaves the entries of the dependencies not needed to compile and link packed.
+   */
+  @Override
+  protected String[] getUnpackExcludes(final List<AttachedNarArtifact> dependencies) {
+    return getNativeUnpackExcludes(dependencies);
+  }
+
   @Override
   public final void narExecute() throws MojoExecutionException, MojoFailureException {
     final List<AttachedNarArtifact> attachedNarArtifacts = getAttachedNarArtifacts(libraries);
@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A store of unpacked nars shared by the builds on a machine, so that a nar
+ * is unpacked and processed once and the modules using it only get a view of
+ * it in their unpack directory: a symbolic link to the unpacked nar or a tree
+ * of hard links to its files.
+ *
+ * Unpacked nars are keyed by their unpack fingerprint, which covers the
+ * checksum of the nar and the settings used to process it. An entry is
+ * unpacked while holding a file lock, so concurrent builds wait for each
+ * other, and is only used once its marker has been written. Views must not
+ * be modified in place, since their files are those of the store.
+ *
+ * Entries are never evicted: views in other builds may point into any of
+ * them, so the store grows with every nar and setting unpacked until the
+ * directory is deleted while no build is running.
+ */
+public final class NarUnpackStore {
+  /**
+   * Unpacks a nar into a store entry.
+   */
+  public interface Unpacker {
+    void unpack(File dir) throws MojoExecutionException, MojoFailureException;
+  }
+
+  private static final ConcurrentMap<File, Object> LOCKS = new ConcurrentHashMap<>();
+
+  private static Object getLock(final File file) {
+    final File key = file.getAbsoluteFile();
+    final Object lock = new Object();
+    final Object existing = LOCKS.putIfAbsent(key, lock);
+    return existing != null ? existing : lock;
+  }
+
+  private static String sha1(final String text) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (final byte b : digest) {
+        hex.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private final File directory;
+
+  private final boolean hardLinks;
+
+  private final Log log;
+
+  /**
+   * Constructor.
+   *
+   * @param directory
+   *          directory of the store
+   * @param hardLinks
+   *          true to give modules trees of hard links, false for symbolic
+   *          links
+   */
+  public NarUnpackStore(final File directory, final boolean hardLinks, final Log log) {
+    this.directory = directory;
+    this.hardLinks = hardLinks;
+    this.log = log;
+  }
+
+  /**
+   * Creates the view of a store entry, falling back to a tree of hard links
+   * where symbolic links can not be created and to copies where hard links
+   * can not be created.
+   */
+  public void createView(final File entry, final File view) throws MojoExecutionException {
+    try {
+      Files.createDirectories(view.toPath().getParent());
+      if (!this.hardLinks) {
+        try {
+          Files.createSymbolicLink(view.toPath(), entry.getAbsoluteFile().toPath());
+          return;
+        } catch (final IOException | UnsupportedOperationException e) {
+          this.log.debug("Cannot link " + view + " to " + entry + ", linking its files instead: " + e);
+        }
+      }
+      linkTree(entry.toPath(), view.toPath());
+    } catch (final IOException e) {
+      throw new MojoExecutionException("Cannot create " + view + " from " + entry, e);
+    }
+  }
+
+  /**
+   * Returns a description of the views, recorded in the unpack marker of a
+   * view so that a change of the store settings creates the view again.
+   */
+  public String getDescription() {
+    return (this.hardLinks ? "hardlink:" : "symlink:") + this.directory.getAbsolutePath();
+  }
+
+  private void linkTree(final Path source, final Path target) throws IOException {
+    Files.createDirectories(target);
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(source)) {
+      for (final Path child : children) {
+        final Path link = target.resolve(child.getFileName().toString());
+        if (Files.isSymbolicLink(child)) {
+          Files.createSymbolicLink(link, Files.readSymbolicLink(child));
+        } else if (Files.isDirectory(child)) {
+          linkTree(child, link);
+        } else {
+          try {
+            Files.createLink(link, child);
+          } catch (final IOException | UnsupportedOperationException e) {
+            Files.copy(child, link, StandardCopyOption.COPY_ATTRIBUTES);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces a view which is a symbolic link by a tree of hard links, so
+   * that files can be added to it without adding them to the store.
+   */
+  public void unshare(final File view) throws MojoExecutionException {
+    final Path path = view.toPath();
+    if (!Files.isSymbolicLink(path)) {
+      return;
+    }
+    try {
+      final Path entry = Files.readSymbolicLink(path);
+      Files.delete(path);
+      linkTree(entry, path);
+    } catch (final IOException e) {
+      throw new MojoExecutionException("Cannot replace the link " + view + " by a copy", e);
+    }
+  }
+
+  /**
+   * Returns the store entry of an unpacked nar, unpacking it first unless
+   * it is complete.
+   *
+   * @param fingerprint
+   *          unpack fingerprint of the nar
+   */
+  public File unpack(final String fingerprint, final Unpacker unpacker)
+      throws MojoExecutionException, MojoFailureException {
+    final String key = sha1(fingerprint);
+    final File entry = new File(this.directory, key);
+    final File marker = new File(this.directory, key + ".unpacked");
+    if (entry.isDirectory() && fingerprint.equals(AbstractNarLayout.readUnpackMarker(marker))) {
+      return entry;
+    }
+
+    // file locks are held by the JVM, so threads take turns first
+    final File lockFile = new File(this.directory, key + ".lock");
+    synchronized (getLock(lockFile)) {
+      try {
+        Files.createDirectories(this.directory.toPath());
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+          if (entry.isDirectory() && fingerprint.equals(AbstractNarLayout.readUnpackMarker(marker))) {
+            return entry;
+          }
+          this.log.debug("Unpacking into the store at " + entry);
+          marker.delete();
+          if (Files.exists(entry.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+            NarUtil.deleteDirectory(entry);
+          }
+          unpacker.unpack(entry);
+          AbstractNarLayout.writeUnpackMarker(marker, fingerprint);
+          return entry;
+        }
+      } catch (final IOException e) {
+        throw new MojoExecutionException("Cannot lock " + lockFile, e);
+      }
+    }
+  }
+}
@@ -19,18 +19,27 @@
  */
 package com.github.maven_nar;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.apache.bcel.classfile.ClassParser;
@@ -41,40 +50,22 @@ import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 
+import com.github.maven_nar.cpptasks.ProcessOutputPump;
+
 /**
  * @author Mark Donszelmann
  */
 public final class NarUtil {
-  private static final class StreamGobbler extends Thread {
-    private final InputStream is;
+  private static final int AR_HEADER_SIZE = 60;
 
-    private final TextStream ts;
+  private static final String AR_MAGIC = "!<arch>\n";
 
-    private StreamGobbler(final InputStream is, final TextStream ts) {
-      this.is = is;
-      this.ts = ts;
-    }
+  private static final String AR_THIN_MAGIC = "!<thin>\n";
 
-    @Override
-    public void run() {
-      try {
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(this.is));
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-          this.ts.println(line);
-        }
-        reader.close();
-      } catch (final IOException e) {
-        // e.printStackTrace()
-        final StackTraceElement[] stackTrace = e.getStackTrace();
-        for (final StackTraceElement element : stackTrace) {
-          this.ts.println(element.toString());
-        }
-      }
-    }
-  }
+  private static final int RANLIB_BATCH_SIZE = 64;
 
   public static final String DEFAULT_EXCLUDES = "**/*~,**/#*#,**/.#*,**/%*%,**/._*,"
       + "**/CVS,**/CVS/**,**/.cvsignore," + "**/SCCS,**/SCCS/**,**/vssver.scc," + "**/.svn,**/.svn/**,**/.DS_Store";
@@ -138,49 +129,31 @@ public final class NarUtil {
     return profiles;
   }
 
+  /**
+   * Copies the files of a directory which are not up to date in the
+   * destination directory.
+   *
+   * @return number of files copied, leaving out the files skipped as up to
+   *         date
+   */
   public static int copyDirectoryStructure(final File sourceDirectory, final File destinationDirectory,
       final String includes, final String excludes) throws IOException {
-    if (!sourceDirectory.exists()) {
-      throw new IOException("Source directory doesn't exists (" + sourceDirectory.getAbsolutePath() + ").");
-    }
-
-    final List files = FileUtils.getFiles(sourceDirectory, includes, excludes);
-    final String sourcePath = sourceDirectory.getAbsolutePath();
-
-    int copied = 0;
-    for (final Object file1 : files) {
-      final File file = (File) file1;
-      String dest = file.getAbsolutePath();
-      dest = dest.substring(sourcePath.length() + 1);
-      final File destination = new File(destinationDirectory, dest);
-      if (file.isFile()) {
-        // destination = destination.getParentFile();
-        // use FileUtils from commons-io, because it preserves timestamps
-        org.apache.commons.io.FileUtils.copyFile(file, destination);
-        copied++;
-
-        // copy executable bit
-        try {
-          // 1.6 only so coded using introspection
-          // destination.setExecutable( file.canExecute(), false );
-          final Method canExecute = file.getClass().getDeclaredMethod("canExecute");
-          final Method setExecutable = destination.getClass()
-              .getDeclaredMethod("setExecutable", boolean.class, boolean.class);
-          setExecutable
-              .invoke(destination, canExecute.invoke(file), Boolean.FALSE);
-        } catch (final SecurityException | InvocationTargetException | IllegalAccessException | IllegalArgumentException | NoSuchMethodException e) {
-          // ignored
-        }
-      } else if (file.isDirectory()) {
-        if (!destination.exists() && !destination.mkdirs()) {
-          throw new IOException("Could not create destination directory '" + destination.getAbsolutePath() + "'.");
-        }
-        copied += copyDirectoryStructure(file, destination, includes, excludes);
-      } else {
-        throw new IOException("Unknown file type: " + file.getAbsolutePath());
-      }
-    }
-    return copied;
+    return syncDirectory(sourceDirectory, destinationDirectory, includes, excludes, false).getCopied();
+  }
+
+  /**
+   * Brings the files of a destination directory up to date with those of a
+   * source directory, optionally by hard linking them.
+   *
+   * @see DirectorySync
+   */
+  public static DirectorySync.Result syncDirectory(final File sourceDirectory, final File destinationDirectory,
+      final String includes, final String excludes, final boolean hardLinks) throws IOException {
+    final DirectorySync sync = new DirectorySync(sourceDirectory, destinationDirectory);
+    sync.setIncludes(includes);
+    sync.setExcludes(excludes);
+    sync.setHardLinks(hardLinks);
+    return sync.sync();
   }
 
   public static void deleteDirectory(final File dir) throws MojoExecutionException {
@@ -411,13 +384,51 @@ public final class NarUtil {
       }
     }
     if (file.isFile() && file.canRead() && file.canWrite() && !file.isHidden()) {
-      // chmod +x file
-      final int result = runCommand("chmod", new String[] {
-          "+x", file.getPath()
-      }, null, null, log);
-      if (result != 0) {
-        throw new MojoExecutionException("Failed to execute 'chmod +x " + file.getPath() + "'" + " return code: \'"
-            + result + "\'.");
+      // chmod +x file, for whoever may read it
+      try {
+        final Path path = file.toPath();
+        final Set<PosixFilePermission> perms = Files.getPosixFilePermissions(path);
+        final Set<PosixFilePermission> newPerms = EnumSet.copyOf(perms);
+        newPerms.add(PosixFilePermission.OWNER_EXECUTE);
+        if (perms.contains(PosixFilePermission.GROUP_READ)) {
+          newPerms.add(PosixFilePermission.GROUP_EXECUTE);
+        }
+        if (perms.contains(PosixFilePermission.OTHERS_READ)) {
+          newPerms.add(PosixFilePermission.OTHERS_EXECUTE);
+        }
+        if (!newPerms.equals(perms)) {
+          breakHardLink(path);
+          Files.setPosixFilePermissions(path, newPerms);
+        }
+      } catch (final UnsupportedOperationException e) {
+        if (!file.setExecutable(true, false)) {
+          throw new MojoExecutionException("Failed to make " + file.getPath() + " executable");
+        }
+      } catch (final IOException e) {
+        throw new MojoExecutionException("Failed to make " + file.getPath() + " executable", e);
+      }
+    }
+  }
+
+  /**
+   * Replaces a file hard linked elsewhere, such as a resource linked from the
+   * sources, by a copy of its own, so that changing it in place leaves the
+   * other links alone.
+   */
+  static void breakHardLink(final Path path) throws IOException {
+    final int links;
+    try {
+      links = (Integer) Files.getAttribute(path, "unix:nlink");
+    } catch (final UnsupportedOperationException | IllegalArgumentException e) {
+      return;
+    }
+    if (links > 1) {
+      final Path copy = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+      try {
+        Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        Files.move(copy, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(copy);
       }
     }
   }
@@ -436,14 +447,15 @@ public final class NarUtil {
     if (file.isFile() && file.canRead() && file.canWrite() && !file.isHidden()
         && file.getName().matches(".*\\.so(\\.\\d+)+$")) {
       final File sofile = new File(file.getParent(), file.getName().substring(0, file.getName().indexOf(".so") + 3));
-      if (!sofile.exists()) {
+      final Path link = sofile.toPath();
+      if (!Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
         // ln -s lib.so.xx lib.so
-        final int result = runCommand("ln", new String[] {
-            "-s", file.getName(), sofile.getPath()
-        }, null, null, log);
-        if (result != 0) {
-          throw new MojoExecutionException("Failed to execute 'ln -s " + file.getName() + " " + sofile.getPath() + "'"
-              + " return code: \'" + result + "\'.");
+        try {
+          Files.createSymbolicLink(link, Paths.get(file.getName()));
+        } catch (final FileAlreadyExistsException e) {
+          // made by a concurrent unpack
+        } catch (final IOException | UnsupportedOperationException e) {
+          throw new MojoExecutionException("Failed to link " + sofile.getPath() + " to " + file.getName(), e);
         }
       }
     }
@@ -591,17 +603,18 @@ public final class NarUtil {
       }
 
       final Process process = cmdLine.execute();
-      final StreamGobbler errorGobbler = new StreamGobbler(process.getErrorStream(), err);
-      final StreamGobbler outputGobbler = new StreamGobbler(process.getInputStream(), out);
-
-      errorGobbler.start();
-      outputGobbler.start();
-      process.waitFor();
-      final int exitValue = process.exitValue();
+      final int exitValue = ProcessOutputPump.pump(process, new ProcessOutputPump.LineHandler() {
+        @Override
+        public void line(final String line) {
+          out.println(line);
+        }
+      }, new ProcessOutputPump.LineHandler() {
+        @Override
+        public void line(final String line) {
+          err.println(line);
+        }
+      }).waitFor();
       dbg.println("ExitValue: " + exitValue);
-      final int timeout = 5000;
-      errorGobbler.join(timeout);
-      outputGobbler.join(timeout);
       if (exitValue != 0 ^ expectFailure) {
         if (log == null) {
           System.err.println(err.toString());
@@ -660,25 +673,188 @@ public final class NarUtil {
     }
   }
 
+  /**
+   * Returns true if the archive starts with a symbol index which the linker
+   * accepts: a GNU "/" or "/SYM64/" member, or a BSD "__.SYMDEF" member not
+   * older than the archive.
+   */
+  public static boolean hasSymbolIndex(final File archive) {
+    final byte[] head = new byte[AR_MAGIC.length() + AR_HEADER_SIZE + 20];
+    int read = 0;
+    try (InputStream in = new FileInputStream(archive)) {
+      int count;
+      while (read < head.length && (count = in.read(head, read, head.length - read)) > 0) {
+        read += count;
+      }
+    } catch (final IOException e) {
+      return false;
+    }
+    if (read < AR_MAGIC.length() + AR_HEADER_SIZE) {
+      return false;
+    }
+    final String magic = new String(head, 0, AR_MAGIC.length(), StandardCharsets.US_ASCII);
+    if (!magic.equals(AR_MAGIC) && !magic.equals(AR_THIN_MAGIC)) {
+      return false;
+    }
+    final int header = AR_MAGIC.length();
+    String name = new String(head, header, 16, StandardCharsets.US_ASCII).trim();
+    if (name.equals("/") || name.equals("/SYM64/")) {
+      return true;
+    }
+    if (name.startsWith("#1/")) {
+      // BSD long name, stored in front of the member data
+      try {
+        final int length = Integer.parseInt(name.substring(3));
+        name = new String(head, header + AR_HEADER_SIZE, Math.min(length, read - header - AR_HEADER_SIZE),
+            StandardCharsets.US_ASCII);
+      } catch (final NumberFormatException e) {
+        return false;
+      }
+    }
+    if (!name.startsWith("__.SYMDEF")) {
+      return false;
+    }
+    // the darwin linker rejects a table of contents older than the archive
+    try {
+      final long date = Long.parseLong(new String(head, header + 16, 12, StandardCharsets.US_ASCII).trim());
+      return date >= archive.lastModified() / 1000;
+    } catch (final NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Runs ranlib on the archives in a directory, several per command line, on
+   * the calling thread. Nars are unpacked concurrently already, see
+   * NarManager.unpackAll, so ranlib does not start threads of its own.
+   */
   public static void runRanlib(final File file, final Log log) throws MojoExecutionException, MojoFailureException {
-    if (!file.exists()) {
+    final List<File> archives = new ArrayList<>();
+    collectRanlibArchives(file, archives, log);
+    runRanlib(archives, 1, log);
+  }
+
+  /**
+   * Runs ranlib on archives, several per command line and the command lines
+   * concurrently. Failures are reported in the order of the archives.
+   */
+  public static void runRanlib(final List<File> archives, final int threads, final Log log)
+      throws MojoExecutionException, MojoFailureException {
+    if (archives.isEmpty()) {
       return;
     }
+    final int perThread = (archives.size() + threads - 1) / Math.max(1, threads);
+    final int batchSize = Math.max(1, Math.min(RANLIB_BATCH_SIZE, perThread));
+    final List<List<File>> batches = new ArrayList<>();
+    for (int i = 0; i < archives.size(); i += batchSize) {
+      batches.add(archives.subList(i, Math.min(i + batchSize, archives.size())));
+    }
+
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (final List<File> batch : batches) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          final String[] args = new String[batch.size()];
+          for (int i = 0; i < args.length; i++) {
+            args[i] = batch.get(i).getPath();
+          }
+          // ranlib file...
+          final int result = runCommand("ranlib", args, null, null, log);
+          if (result != 0) {
+            throw new MojoExecutionException("Failed to execute 'ranlib " + StringUtils.join(args, " ") + "'"
+                + " return code: \'" + result + "\'.");
+          }
+          return null;
+        }
+      });
+    }
+    runTasks(tasks, threads, "cannot run ranlib");
+  }
+
+  /**
+   * Runs tasks on up to the given number of threads and waits for all of
+   * them. The failures are returned in the order of the tasks, null for the
+   * tasks which succeeded, so which one comes first does not depend on
+   * timing. A single thread means the calling one.
+   */
+  public static List<Throwable> runTasks(final List<? extends Callable<?>> tasks, final int threads)
+      throws InterruptedException {
+    final List<Throwable> failures = new ArrayList<>();
+    if (tasks.isEmpty()) {
+      return failures;
+    }
+    if (threads <= 1 || tasks.size() == 1) {
+      for (final Callable<?> task : tasks) {
+        try {
+          task.call();
+          failures.add(null);
+        } catch (final InterruptedException e) {
+          throw e;
+        } catch (final Exception e) {
+          failures.add(e);
+        }
+      }
+      return failures;
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (final Callable<?> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      for (final Future<?> future : futures) {
+        try {
+          future.get();
+          failures.add(null);
+        } catch (final ExecutionException e) {
+          failures.add(e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return failures;
+  }
 
+  /**
+   * Runs tasks on up to the given number of threads and rethrows the failure
+   * of the first task in their order which failed. Failures other than mojo
+   * exceptions are wrapped in a MojoExecutionException with the message.
+   */
+  public static void runTasks(final List<? extends Callable<?>> tasks, final int threads, final String message)
+      throws MojoExecutionException, MojoFailureException {
+    final List<Throwable> failures;
+    try {
+      failures = runTasks(tasks, threads);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("NAR: interrupted, " + message, e);
+    }
+    for (final Throwable failure : failures) {
+      if (failure instanceof MojoExecutionException) {
+        throw (MojoExecutionException) failure;
+      } else if (failure instanceof MojoFailureException) {
+        throw (MojoFailureException) failure;
+      } else if (failure != null) {
+        throw new MojoExecutionException("NAR: " + message, failure);
+      }
+    }
+  }
+
+  private static void collectRanlibArchives(final File file, final List<File> archives, final Log log) {
     if (file.isDirectory()) {
       final File[] files = file.listFiles();
-      for (final File file2 : files) {
-        runRanlib(file2, log);
+      if (files != null) {
+        for (final File file2 : files) {
+          collectRanlibArchives(file2, archives, log);
+        }
       }
-    }
-    if (file.isFile() && file.canWrite() && !file.isHidden() && file.getName().endsWith(".a")) {
-      // ranlib file
-      final int result = runCommand("ranlib", new String[] {
-        file.getPath()
-      }, null, null, log);
-      if (result != 0) {
-        throw new MojoExecutionException("Failed to execute 'ranlib " + file.getPath() + "'" + " return code: \'"
-            + result + "\'.");
+    } else if (file.isFile() && file.canWrite() && !file.isHidden() && file.getName().endsWith(".a")) {
+      if (hasSymbolIndex(file)) {
+        log.debug("Symbol index of " + file + " is up to date, not running ranlib");
+      } else {
+        archives.add(file);
       }
     }
   }
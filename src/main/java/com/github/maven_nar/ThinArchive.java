@@ -0,0 +1,379 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.maven_nar.cpptasks.CUtil;
+
+/**
+ * Converts GNU thin archives, which refer to their member files, into full
+ * archives containing them, so that they can be packaged.
+ *
+ * The symbol table of the thin archive is kept, with the member offsets it
+ * holds moved to the positions of the members in the full archive.
+ */
+public final class ThinArchive {
+  private static final class Member {
+    private byte[] data;
+    private File file;
+    private byte[] header;
+    private String name;
+    private long newOffset;
+    private long offset;
+    private long size;
+  }
+
+  private static final byte[] ARCH_MAGIC = "!<arch>\n".getBytes(StandardCharsets.US_ASCII);
+
+  private static final int HEADER_SIZE = 60;
+
+  private static final byte[] THIN_MAGIC = "!<thin>\n".getBytes(StandardCharsets.US_ASCII);
+
+  private static String field(final byte[] header, final int start, final int length) {
+    return new String(header, start, length, StandardCharsets.US_ASCII).trim();
+  }
+
+  /**
+   * Returns true if the file is a thin archive.
+   */
+  public static boolean isThin(final File file) throws IOException {
+    if (!file.isFile() || file.length() < THIN_MAGIC.length) {
+      return false;
+    }
+    final byte[] magic = new byte[THIN_MAGIC.length];
+    try (InputStream in = new FileInputStream(file)) {
+      int read = 0;
+      while (read < magic.length) {
+        final int count = in.read(magic, read, magic.length - read);
+        if (count < 0) {
+          return false;
+        }
+        read += count;
+      }
+    }
+    return Arrays.equals(magic, THIN_MAGIC);
+  }
+
+  /**
+   * Replaces a thin archive by a full archive with the same members and
+   * symbol table.
+   *
+   * @throws IOException
+   *           if the archive can not be parsed or a member can not be read
+   */
+  public static void materialize(final File archive) throws IOException {
+    materialize(archive, archive);
+  }
+
+  /**
+   * Writes the full archive with the same members and symbol table as a thin
+   * archive to a target file, which may be the thin archive itself.
+   *
+   * @throws IOException
+   *           if the archive can not be parsed or a member can not be read
+   */
+  public static void materialize(final File archive, final File target) throws IOException {
+    final byte[] bytes = Files.readAllBytes(archive.toPath());
+    if (bytes.length < THIN_MAGIC.length || !Arrays.equals(Arrays.copyOf(bytes, THIN_MAGIC.length), THIN_MAGIC)) {
+      throw new IOException("Not a thin archive: " + archive);
+    }
+
+    //
+    // parse the thin archive, the symbol table and the table of
+    // long member names are the only members stored inline
+    //
+    Member symbols = null;
+    byte[] names = null;
+    final List<Member> members = new ArrayList<>();
+    int pos = THIN_MAGIC.length;
+    while (pos + HEADER_SIZE <= bytes.length) {
+      final Member member = new Member();
+      member.offset = pos;
+      member.header = Arrays.copyOfRange(bytes, pos, pos + HEADER_SIZE);
+      final String rawName = field(member.header, 0, 16);
+      try {
+        member.size = Long.parseLong(field(member.header, 48, 10));
+      } catch (final NumberFormatException e) {
+        throw new IOException("Corrupt archive header at " + pos + " in " + archive);
+      }
+      pos += HEADER_SIZE;
+      if (rawName.equals("/") || rawName.equals("/SYM64/") || rawName.equals("//")) {
+        if (pos + member.size > bytes.length) {
+          throw new IOException("Truncated archive: " + archive);
+        }
+        member.data = Arrays.copyOfRange(bytes, pos, pos + (int) member.size);
+        pos += member.size + (member.size & 1);
+        if (rawName.equals("//")) {
+          names = member.data;
+        } else {
+          member.name = rawName;
+          symbols = member;
+        }
+        continue;
+      }
+      String path;
+      if (rawName.startsWith("/")) {
+        if (names == null) {
+          throw new IOException("Missing name table in " + archive);
+        }
+        final int start;
+        try {
+          start = Integer.parseInt(rawName.substring(1));
+        } catch (final NumberFormatException e) {
+          throw new IOException("Corrupt archive header at " + member.offset + " in " + archive);
+        }
+        if (start < 0 || start >= names.length) {
+          throw new IOException("Corrupt archive header at " + member.offset + " in " + archive);
+        }
+        int end = start;
+        while (end < names.length && names[end] != '\n') {
+          end++;
+        }
+        path = new String(names, start, end - start, StandardCharsets.UTF_8);
+      } else {
+        path = rawName;
+      }
+      if (path.endsWith("/")) {
+        path = path.substring(0, path.length() - 1);
+      }
+      member.file = new File(path);
+      if (!member.file.isAbsolute()) {
+        member.file = new File(archive.getParentFile(), path);
+      }
+      member.name = member.file.getName();
+      members.add(member);
+    }
+
+    //
+    // lay out the full archive
+    //
+    final ByteArrayOutputStream longNames = new ByteArrayOutputStream();
+    final Map<Member, String> headerNames = new HashMap<>();
+    for (final Member member : members) {
+      member.size = member.file.length();
+      if (!member.file.isFile()) {
+        throw new IOException("Missing member " + member.file + " of " + archive);
+      }
+      if (member.name.getBytes(StandardCharsets.UTF_8).length < 16 && member.name.indexOf(' ') < 0) {
+        headerNames.put(member, member.name + "/");
+      } else {
+        headerNames.put(member, "/" + longNames.size());
+        final byte[] name = (member.name + "/\n").getBytes(StandardCharsets.UTF_8);
+        longNames.write(name, 0, name.length);
+      }
+    }
+    long offset = ARCH_MAGIC.length;
+    if (symbols != null) {
+      offset += HEADER_SIZE + symbols.data.length + (symbols.data.length & 1);
+    }
+    if (longNames.size() > 0) {
+      offset += HEADER_SIZE + longNames.size() + (longNames.size() & 1);
+    }
+    final Map<Long, Long> offsets = new HashMap<>();
+    for (final Member member : members) {
+      member.newOffset = offset;
+      offsets.put(member.offset, member.newOffset);
+      offset += HEADER_SIZE + member.size + (member.size & 1);
+    }
+    if (symbols != null) {
+      relocate(symbols, offsets, archive);
+    }
+
+    //
+    // write it next to the target and replace it
+    //
+    final File tempFile = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+    try {
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+        out.write(ARCH_MAGIC);
+        if (symbols != null) {
+          writeHeader(out, symbols.name, symbols.header, symbols.data.length);
+          writePadded(out, symbols.data);
+        }
+        if (longNames.size() > 0) {
+          writeHeader(out, "//", null, longNames.size());
+          writePadded(out, longNames.toByteArray());
+        }
+        final byte[] buf = new byte[64 * 1024];
+        for (final Member member : members) {
+          writeHeader(out, headerNames.get(member), member.header, member.size);
+          long copied = 0;
+          try (InputStream in = new FileInputStream(member.file)) {
+            int count;
+            while ((count = in.read(buf)) > 0) {
+              out.write(buf, 0, count);
+              copied += count;
+            }
+          }
+          if (copied != member.size) {
+            throw new IOException("Member " + member.file + " changed while packaging " + archive);
+          }
+          if ((member.size & 1) != 0) {
+            out.write('\n');
+          }
+        }
+      }
+      CUtil.replaceFile(tempFile, target);
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Copies a directory containing thin archives to a target directory, with
+   * full archives in place of the thin ones. The directory itself is left
+   * as it is, and nothing is copied if it contains no thin archive.
+   *
+   * @return number of archives replaced in the copy
+   */
+  public static int materializeAll(final File dir, final File targetDir) throws IOException {
+    return containsThin(dir) ? copyMaterialized(dir, targetDir) : 0;
+  }
+
+  private static boolean containsThin(final File dir) throws IOException {
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (final File file : files) {
+        if (file.isDirectory() ? containsThin(file) : isThin(file)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static int copyMaterialized(final File dir, final File targetDir) throws IOException {
+    int count = 0;
+    if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
+      throw new IOException("Cannot create " + targetDir);
+    }
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (final File file : files) {
+        final File target = new File(targetDir, file.getName());
+        if (file.isDirectory()) {
+          count += copyMaterialized(file, target);
+        } else if (isThin(file)) {
+          // the copy is as recent as the thin archive, which changes with its members
+          materialize(file, target);
+          target.setLastModified(file.lastModified());
+          count++;
+        } else {
+          Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.COPY_ATTRIBUTES);
+        }
+      }
+    }
+    return count;
+  }
+
+  private static void relocate(final Member symbols, final Map<Long, Long> offsets, final File archive)
+      throws IOException {
+    //
+    // big endian count followed by one offset per symbol,
+    // 4 bytes wide in "/" and 8 bytes wide in "/SYM64/"
+    //
+    final int width = symbols.name.equals("/") ? 4 : 8;
+    final byte[] data = symbols.data;
+    if (data.length < width) {
+      return;
+    }
+    final long count = read(data, 0, width);
+    if (width + count * width > data.length) {
+      throw new IOException("Corrupt symbol table in " + archive);
+    }
+    for (int i = 0; i < count; i++) {
+      final int pos = width + i * width;
+      final Long newOffset = offsets.get(read(data, pos, width));
+      if (newOffset == null) {
+        throw new IOException("Symbol table of " + archive + " refers to an unknown member");
+      }
+      if (width == 4 && newOffset > 0xFFFFFFFFL) {
+        throw new IOException("Archive too large for its symbol table: " + archive);
+      }
+      long value = newOffset;
+      for (int b = width - 1; b >= 0; b--, value >>>= 8) {
+        data[pos + b] = (byte) value;
+      }
+    }
+  }
+
+  private static long read(final byte[] data, final int pos, final int width) {
+    long value = 0;
+    for (int i = 0; i < width; i++) {
+      value = value << 8 | data[pos + i] & 0xFF;
+    }
+    return value;
+  }
+
+  private static void writeField(final StringBuilder header, final String value, final int width) {
+    header.append(value);
+    for (int i = value.length(); i < width; i++) {
+      header.append(' ');
+    }
+  }
+
+  /**
+   * Writes a member header, taking date, owner and mode from the thin
+   * archive if known.
+   */
+  private static void writeHeader(final OutputStream out, final String name, final byte[] thinHeader,
+      final long size) throws IOException {
+    final StringBuilder header = new StringBuilder(HEADER_SIZE);
+    writeField(header, name, 16);
+    if (thinHeader != null) {
+      header.append(new String(thinHeader, 16, 32, StandardCharsets.US_ASCII));
+    } else {
+      writeField(header, "0", 12);
+      writeField(header, "0", 6);
+      writeField(header, "0", 6);
+      writeField(header, "0", 8);
+    }
+    writeField(header, Long.toString(size), 10);
+    header.append("`\n");
+    out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void writePadded(final OutputStream out, final byte[] data) throws IOException {
+    out.write(data);
+    if ((data.length & 1) != 0) {
+      out.write('\n');
+    }
+  }
+
+  private ThinArchive() {
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary file used as an alternative to the XML files of
+ * {@link DependencyTable} and {@link TargetHistoryTable}.
+ *
+ * The file holds a table of distinct strings followed by tables of fixed
+ * width records whose fields are ints, which may be indexes into the string
+ * table or into another table, and longs. The file is memory mapped and
+ * strings are decoded on first use, so reading only touches the pages of the
+ * records and strings that are actually used.
+ *
+ * <pre>
+ * int magic, version, kind, stringCount, tableCount
+ * int stringOffsets[stringCount + 1]
+ * { int recordSize, recordCount } tables[tableCount]
+ * byte strings[]   (UTF-8)
+ * byte records[]   (each table in turn)
+ * </pre>
+ */
+public final class BinaryStore {
+  /**
+   * Reads a binary store.
+   */
+  public static final class Reader {
+    private final ByteBuffer buffer;
+    private final int offsetsStart;
+    private final int[] recordCounts;
+    private final int[] recordSizes;
+    private final String[] strings;
+    private final int stringsStart;
+    private final int[] tableStarts;
+
+    private Reader(final ByteBuffer buffer, final int kind) throws IOException {
+      this.buffer = buffer;
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != kind) {
+        throw new IOException("Unexpected binary store header");
+      }
+      this.strings = new String[buffer.getInt()];
+      final int tableCount = buffer.getInt();
+      this.offsetsStart = buffer.position();
+      buffer.position(this.offsetsStart + this.strings.length * 4);
+      final int stringsLength = buffer.getInt();
+      this.recordSizes = new int[tableCount];
+      this.recordCounts = new int[tableCount];
+      this.tableStarts = new int[tableCount];
+      for (int i = 0; i < tableCount; i++) {
+        this.recordSizes[i] = buffer.getInt();
+        this.recordCounts[i] = buffer.getInt();
+      }
+      this.stringsStart = buffer.position();
+      int start = this.stringsStart + stringsLength;
+      for (int i = 0; i < tableCount; i++) {
+        this.tableStarts[i] = start;
+        start += this.recordSizes[i] * this.recordCounts[i];
+      }
+      if (start != buffer.limit()) {
+        throw new IOException("Unexpected binary store length");
+      }
+    }
+
+    public int getInt(final int table, final int record, final int offset) {
+      return this.buffer.getInt(this.tableStarts[table] + record * this.recordSizes[table] + offset);
+    }
+
+    public long getLong(final int table, final int record, final int offset) {
+      return this.buffer.getLong(this.tableStarts[table] + record * this.recordSizes[table] + offset);
+    }
+
+    public int getRecordCount(final int table) {
+      return this.recordCounts[table];
+    }
+
+    public String getString(final int index) {
+      String string = this.strings[index];
+      if (string == null) {
+        final int start = this.buffer.getInt(this.offsetsStart + index * 4);
+        final int end = this.buffer.getInt(this.offsetsStart + index * 4 + 4);
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer view = this.buffer.duplicate();
+        view.position(this.stringsStart + start);
+        view.get(bytes);
+        string = new String(bytes, StandardCharsets.UTF_8);
+        this.strings[index] = string;
+      }
+      return string;
+    }
+  }
+
+  /**
+   * Builds a binary store in memory and writes it.
+   */
+  public static final class Writer {
+    private final int kind;
+    private final int[] recordSizes;
+    private final ByteArrayOutputStream[] tables;
+    private final DataOutputStream[] tableOuts;
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param kind
+     *          identifies the content, checked by the reader
+     * @param recordSizes
+     *          size in bytes of the records of each table
+     */
+    public Writer(final int kind, final int... recordSizes) {
+      this.kind = kind;
+      this.recordSizes = recordSizes.clone();
+      this.tables = new ByteArrayOutputStream[recordSizes.length];
+      this.tableOuts = new DataOutputStream[recordSizes.length];
+      for (int i = 0; i < recordSizes.length; i++) {
+        this.tables[i] = new ByteArrayOutputStream();
+        this.tableOuts[i] = new DataOutputStream(this.tables[i]);
+      }
+    }
+
+    public int getRecordCount(final int table) {
+      return this.tables[table].size() / this.recordSizes[table];
+    }
+
+    public void putInt(final int table, final int value) {
+      try {
+        this.tableOuts[table].writeInt(value);
+      } catch (final IOException ex) {
+        // not thrown by a ByteArrayOutputStream
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    public void putLong(final int table, final long value) {
+      try {
+        this.tableOuts[table].writeLong(value);
+      } catch (final IOException ex) {
+        // not thrown by a ByteArrayOutputStream
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    /**
+     * Returns the index of a string in the string table, adding it if needed.
+     */
+    public int putString(final String string) {
+      Integer index = this.stringIndexes.get(string);
+      if (index == null) {
+        index = this.strings.size();
+        this.strings.add(string);
+        this.stringIndexes.put(string, index);
+      }
+      return index;
+    }
+
+    /**
+     * Writes the store to a temporary file which then replaces the target.
+     */
+    public void write(final File target) throws IOException {
+      final ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+      final int[] offsets = new int[this.strings.size() + 1];
+      for (int i = 0; i < this.strings.size(); i++) {
+        final byte[] bytes = this.strings.get(i).getBytes(StandardCharsets.UTF_8);
+        stringBytes.write(bytes, 0, bytes.length);
+        offsets[i + 1] = stringBytes.size();
+      }
+      final File tempFile = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+      try {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          out.writeInt(this.kind);
+          out.writeInt(this.strings.size());
+          out.writeInt(this.tables.length);
+          for (final int offset : offsets) {
+            out.writeInt(offset);
+          }
+          for (int i = 0; i < this.tables.length; i++) {
+            if (this.tables[i].size() % this.recordSizes[i] != 0) {
+              throw new IllegalStateException("Incomplete record in table " + i);
+            }
+            out.writeInt(this.recordSizes[i]);
+            out.writeInt(getRecordCount(i));
+          }
+          stringBytes.writeTo(out);
+          for (final ByteArrayOutputStream table : this.tables) {
+            table.writeTo(out);
+          }
+        } finally {
+          out.close();
+        }
+        CUtil.replaceFile(tempFile, target);
+      } finally {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private static final int MAGIC = 0x4E415253; // NARS
+
+  private static final int VERSION = 1;
+
+  /**
+   * Maps a binary store for reading.
+   *
+   * @param file
+   *          binary store
+   * @param kind
+   *          expected kind of content
+   * @throws IOException
+   *           if the file can not be read or is not a binary store of that
+   *           kind
+   */
+  public static Reader open(final File file, final int kind) throws IOException {
+    try (FileInputStream in = new FileInputStream(file)) {
+      final FileChannel channel = in.getChannel();
+      final ByteBuffer buffer;
+      if (File.separatorChar == '\\') {
+        //
+        // a mapped file can not be replaced on Windows
+        // until the mapping is garbage collected
+        //
+        buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+          // read fully
+        }
+        buffer.flip();
+      } else {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      try {
+        return new Reader(buffer, kind);
+      } catch (final BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException ex) {
+        throw new IOException("Truncated binary store " + file);
+      }
+    }
+  }
+
+  private BinaryStore() {
+  }
+}
@@ -32,10 +32,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.Semaphore;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.Commandline;
 import org.apache.tools.ant.types.Environment;
 import org.apache.commons.io.FilenameUtils;
 
@@ -45,8 +47,6 @@ import com.github.maven_nar.cpptasks.compiler.Linker;
 import com.github.maven_nar.cpptasks.compiler.LinkerConfiguration;
 import com.github.maven_nar.cpptasks.compiler.Processor;
 import com.github.maven_nar.cpptasks.compiler.ProcessorConfiguration;
-import com.github.maven_nar.cpptasks.compiler.AbstractCompiler;
-import com.github.maven_nar.cpptasks.compiler.CommandLineCompilerConfiguration;
 import com.github.maven_nar.cpptasks.ide.ProjectDef;
 import com.github.maven_nar.cpptasks.types.CompilerArgument;
 import com.github.maven_nar.cpptasks.types.ConditionalFileSet;
@@ -210,6 +210,12 @@ public class CCTask extends Task {
 
   private static final ProcessorConfiguration[] EMPTY_CONFIG_ARRAY = new ProcessorConfiguration[0];
 
+  /**
+   * Milliseconds between background commits of the object history while
+   * compiling, so that an interrupted build keeps most of its progress.
+   */
+  private static final long HISTORY_COMMIT_INTERVAL = 120000;
+
   /**
    * Builds a Hashtable to targets needing to be rebuilt keyed by compiler
    * configuration
@@ -307,6 +313,45 @@ public class CCTask extends Task {
    */
   private int commandLogLevel = Project.MSG_VERBOSE;
 
+  /**
+   * diagnostics reported by the compilers of this task
+   */
+  private final CompilerDiagnostics diagnostics = new CompilerDiagnostics();
+
+  /**
+   * command line starting a persistent compiler worker, or null to start the
+   * compiler for every source file
+   */
+  private String[] compilerWorker;
+
+  /**
+   * workers of this task, started on first use
+   */
+  private CompilerWorkerPool compilerWorkers;
+
+  /**
+   * permits for running processes, shared with concurrent tasks, or null
+   */
+  private Semaphore coreBudget;
+
+  /**
+   * if incrementalArchive = true, static libraries are updated with the
+   * changed objects instead of being recreated
+   */
+  private boolean incrementalArchive;
+
+  /**
+   * if binaryStore = true, the dependency and history tables are stored in a
+   * binary format instead of XML
+   */
+  private boolean binaryStore;
+  /**
+   * if contentHash = true, content hashes of sources, headers and link inputs
+   * are recorded and a file whose timestamp changed but whose content did not
+   * is not considered modified
+   */
+  private boolean contentHash;
+
   /**
    * If non-empty, compile an object of this name and package it 
    * into a shared archive with the specified output name (AIX only)
@@ -528,6 +573,8 @@ public class CCTask extends Task {
     if (potentialTargets > 0) {
       log("Starting dependency analysis for " + Integer.toString(potentialTargets) + " files.");
       final DependencyTable dependencyTable = new DependencyTable(this._objDir);
+      dependencyTable.setContentHash(this.contentHash);
+      dependencyTable.setBinaryStore(this.binaryStore);
       try {
         dependencyTable.load();
       } catch (final Exception ex) {
@@ -707,7 +754,8 @@ public class CCTask extends Task {
     if (!this._objDir.exists()) {
       throw new BuildException("Object directory does not exist");
     }
-    final TargetHistoryTable objHistory = new TargetHistoryTable(this, this._objDir);
+    final TargetHistoryTable objHistory = new TargetHistoryTable(this, this._objDir, this.binaryStore);
+    objHistory.setContentHash(this.contentHash);
 
     //
     // get the first active version info
@@ -811,9 +859,15 @@ public class CCTask extends Task {
       progress.start();
       // ENDFREEHEP
 
-      compileException = runTargetPool(monitor, compileException, targetVectorsPreComp);
-      if (compileException == null || this.relentless)
-        compileException = runTargetPool(monitor, compileException, targetVectors);
+      objHistory.startBackgroundCommit(HISTORY_COMMIT_INTERVAL);
+      try {
+        compileException = runTargetPool(monitor, compileException, targetVectorsPreComp);
+        if (compileException == null || this.relentless)
+          compileException = runTargetPool(monitor, compileException, targetVectors);
+      } finally {
+        objHistory.stopBackgroundCommit();
+        closeCompilerWorkers();
+      }
 
       // BEGINFREEHEP
       progress.exit();
@@ -832,6 +886,7 @@ public class CCTask extends Task {
       } catch (final IOException ex) {
         this.log("Error writing history.xml: " + ex.toString());
       }
+      writeDiagnostics();
       //
       // if we threw a compile exception and
       // didn't throw it at the time because
@@ -847,6 +902,19 @@ public class CCTask extends Task {
           return;
         }
       }
+    } else {
+      //
+      // save any timestamps refreshed by content hash checks
+      //
+      try {
+        objHistory.commit();
+      } catch (final IOException ex) {
+        this.log("Error writing history.xml: " + ex.toString());
+      }
+      //
+      // nothing compiled, so nothing diagnosed
+      //
+      writeDiagnostics();
     }
     //
     // if the dependency tree was not fully
@@ -883,6 +951,7 @@ public class CCTask extends Task {
         log("Linking...");
         log("Starting link {" + linkConfig.getIdentifier() + "}", this.getCommandLogLevel());
         // ENDFREEHEP
+        linkTarget.setPreviousHistory(linkHistory.get(linkConfig.getIdentifier(), output.getName()));
         if (this.failOnError) {
           linkConfig.link(this, linkTarget);
         } else {
@@ -906,6 +975,15 @@ public class CCTask extends Task {
         if (this.outputFileProperty != null) {
           getProject().setProperty(this.outputFileProperty, output.getAbsolutePath());
         }
+        //
+        // keep the timestamps of objects recompiled
+        // with the same content
+        //
+        try {
+          linkHistory.commit();
+        } catch (final IOException ex) {
+          log("Error writing link history.xml: " + ex.toString(), Project.MSG_ERR);
+        }
       }
 
       // If sharedObjectName was specified, add the shared object to an archive, then delete the shared object.
@@ -926,6 +1004,35 @@ public class CCTask extends Task {
     }
   }
 
+  private synchronized void closeCompilerWorkers() {
+    if (this.compilerWorkers != null) {
+      this.compilerWorkers.close();
+      this.compilerWorkers = null;
+    }
+  }
+
+  /**
+   * Logs the diagnostic counts and writes them, with the diagnostics, to
+   * diagnostics.json in the object directory.
+   *
+   * The file is written by every execution and only covers the sources
+   * compiled by it: an incremental compile reports the recompiled sources
+   * only and a compile with nothing to do writes an empty summary.
+   */
+  private void writeDiagnostics() {
+    final int errors = this.diagnostics.getErrorCount();
+    final int warnings = this.diagnostics.getWarningCount();
+    if (errors > 0 || warnings > 0) {
+      log(errors + " error(s), " + warnings + " warning(s) reported by the compiler",
+          errors > 0 ? Project.MSG_ERR : Project.MSG_WARN);
+    }
+    try {
+      this.diagnostics.writeSummary(new File(this._objDir, "diagnostics.json"));
+    } catch (final IOException ex) {
+      this.log("Error writing diagnostics.json: " + ex.toString());
+    }
+  }
+
   private BuildException runTargetPool(final CCTaskProgressMonitor monitor, BuildException compileException,
       final ArrayList<Vector<TargetInfo>> targetVectors) {
     int index;
@@ -1069,6 +1176,40 @@ public class CCTask extends Task {
     return this.commandLogLevel;
   }
 
+  /**
+   * Gets the diagnostics parsed from the compiler output.
+   *
+   * @return diagnostics collected so far
+   */
+  public CompilerDiagnostics getDiagnostics() {
+    return this.diagnostics;
+  }
+
+  public boolean isIncrementalArchive() {
+    return this.incrementalArchive;
+  }
+
+  /**
+   * Gets the core budget shared with concurrent tasks.
+   *
+   * @return semaphore with a permit per core, or null if there is none
+   */
+  public Semaphore getCoreBudget() {
+    return this.coreBudget;
+  }
+
+  /**
+   * Gets the persistent compiler workers.
+   *
+   * @return the worker pool, or null if no compiler worker is set
+   */
+  public synchronized CompilerWorkerPool getCompilerWorkers() {
+    if (this.compilerWorkers == null && this.compilerWorker != null) {
+      this.compilerWorkers = new CompilerWorkerPool(this.compilerWorker);
+    }
+    return this.compilerWorkers;
+  }
+
   /**
    * Gets the dataset.
    * 
@@ -1105,7 +1246,9 @@ public class CCTask extends Task {
     if (this._objDir.equals(outputFileDir)) {
       return objHistory;
     }
-    return new TargetHistoryTable(this, outputFileDir);
+    final TargetHistoryTable linkHistory = new TargetHistoryTable(this, outputFileDir, this.binaryStore);
+    linkHistory.setContentHash(this.contentHash);
+    return linkHistory;
   }
 
   protected TargetInfo getLinkTarget(final LinkerConfiguration linkerConfig, final Vector<File> objectFiles,
@@ -1260,10 +1403,6 @@ public class CCTask extends Task {
         // see if this processor had a precompile child element
         //
         final PrecompileDef precompileDef = currentCompilerDef.getActivePrecompile(this.compilerDef);
-        CommandLineCompilerConfiguration commandLineConfig = (CommandLineCompilerConfiguration) config;
-        AbstractCompiler compiler = (AbstractCompiler) commandLineConfig.getCompiler();
-        compiler.setWorkDir(currentCompilerDef.getWorkDir());
-        compiler.setGccFileAbsolutePath(currentCompilerDef.getGccFileAbsolutePath());
         ProcessorConfiguration[] localConfigs = new ProcessorConfiguration[] {
           config
         };
@@ -1369,6 +1508,66 @@ public class CCTask extends Task {
     this.linkerDef.setClassname(classname);
   }
 
+  /**
+   * Enables the binary store for the dependency and history tables.
+   *
+   * When true, dependencies.bin and history.bin are written instead of
+   * dependencies.xml and history.xml. Whichever was written last is read, so
+   * a single build with a changed setting converts the tables.
+   *
+   * @param binaryStore
+   *          if true, use the binary store
+   */
+  public void setBinaryStore(final boolean binaryStore) {
+    this.binaryStore = binaryStore;
+  }
+
+  /**
+   * Enables incremental updates of static libraries.
+   *
+   * When true, an ar librarian updates an existing archive by replacing,
+   * adding and deleting the members that changed since the last link, and
+   * then updates its symbol index, instead of creating it from scratch.
+   *
+   * @param incrementalArchive
+   *          if true, update static libraries incrementally
+   */
+  public void setIncrementalArchive(final boolean incrementalArchive) {
+    this.incrementalArchive = incrementalArchive;
+  }
+
+  /**
+   * Sets a core budget shared with tasks running concurrently.
+   *
+   * Each compiler, linker or archiver process holds a permit while it runs,
+   * so that concurrent tasks together do not run more processes than there
+   * are permits.
+   *
+   * @param coreBudget
+   *          semaphore with a permit per core, or null for no budget
+   */
+  public void setCoreBudget(final Semaphore coreBudget) {
+    this.coreBudget = coreBudget;
+  }
+
+  /**
+   * Sets the command line of a persistent compiler worker.
+   *
+   * When set, compiler command lines are run by long-lived workers, see
+   * {@link CompilerWorkerPool}, instead of starting the compiler for every
+   * source file.
+   *
+   * @param compilerWorker
+   *          worker command line, null or empty to run the compiler directly
+   */
+  public void setCompilerWorker(final String compilerWorker) {
+    if (compilerWorker == null || compilerWorker.trim().length() == 0) {
+      this.compilerWorker = null;
+    } else {
+      this.compilerWorker = Commandline.translateCommandline(compilerWorker);
+    }
+  }
+
   /**
    * Set commandLogLevel
    * 
@@ -1381,6 +1580,22 @@ public class CCTask extends Task {
     this.commandLogLevel = commandLogLevel;
   }
 
+  /**
+   * Enables content hash change detection.
+   *
+   * When true, a hash of each source and header is recorded and consulted
+   * when its timestamp differs from the recorded one, so files that were
+   * touched or checked out again without changing do not cause
+   * recompilation. The same applies to the objects of the link, so objects
+   * recompiled to the same content do not cause a relink.
+   *
+   * @param contentHash
+   *          if true, consult content hashes
+   */
+  public void setContentHash(final boolean contentHash) {
+    this.contentHash = contentHash;
+  }
+
   /**
    * Sets the dataset for OS/390 builds.
    * 
@@ -19,16 +19,22 @@
  */
 package com.github.maven_nar.cpptasks;
 
-import java.io.IOException;
-
 import com.github.maven_nar.cpptasks.compiler.ProcessorConfiguration;
 import com.github.maven_nar.cpptasks.compiler.ProgressMonitor;
 
+/**
+ * Records compiled sources in the object history. Shared by all compile
+ * threads, each of which reports the configuration it compiles with, so the
+ * history is written by the history's background commit and not by the
+ * compile threads.
+ */
 public class CCTaskProgressMonitor implements ProgressMonitor {
-  private ProcessorConfiguration config;
+  /**
+   * Configuration started by each compile thread.
+   */
+  private final ThreadLocal<ProcessorConfiguration> config = new ThreadLocal<>();
   private final TargetHistoryTable history;
   private final VersionInfo versionInfo;
-  private long lastCommit = -1;
 
   public CCTaskProgressMonitor(final TargetHistoryTable history, final VersionInfo versionInfo) {
     this.history = history;
@@ -37,34 +43,16 @@ public class CCTaskProgressMonitor implements ProgressMonitor {
 
   @Override
   public void finish(final ProcessorConfiguration config, final boolean normal) {
-    final long current = System.currentTimeMillis();
-    if (current - this.lastCommit > 120000) {
-      try {
-        this.history.commit();
-        this.lastCommit = System.currentTimeMillis();
-      } catch (final IOException ex) {
-      }
-    }
+    this.config.remove();
   }
 
   @Override
   public void progress(final String[] sources) {
-    this.history.update(this.config, sources, this.versionInfo);
-    final long current = System.currentTimeMillis();
-    if (current - this.lastCommit > 120000) {
-      try {
-        this.history.commit();
-        this.lastCommit = current;
-      } catch (final IOException ex) {
-      }
-    }
+    this.history.update(this.config.get(), sources, this.versionInfo);
   }
 
   @Override
   public void start(final ProcessorConfiguration config) {
-    if (this.lastCommit < 0) {
-      this.lastCommit = System.currentTimeMillis();
-    }
-    this.config = config;
+    this.config.set(config);
   }
 }
@@ -21,7 +21,11 @@ package com.github.maven_nar.cpptasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Semaphore;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
@@ -390,6 +394,21 @@ public class CUtil {
     return paths;
   }
 
+  /**
+   * Replaces a file with a fully written temporary file from the same
+   * directory, so a reader sees either the old or the new content but never a
+   * partial write. Falls back to a plain replace where the file system can
+   * not rename atomically.
+   */
+  public static void replaceFile(final File tempFile, final File target) throws IOException {
+    try {
+      Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (final AtomicMoveNotSupportedException ex) {
+      Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
   /**
    * This method is exposed so test classes can overload and test the
    * arguments without actually spawning the compiler
@@ -419,8 +438,18 @@ public class CUtil {
       return exe.execute();
             */
 
-      return CommandExecution.runCommand(cmdline, workingDir, task, 
-              env == null ? new Vector<Environment.Variable>() : env.getVariablesVector());
+      final Semaphore coreBudget = task.getCoreBudget();
+      if (coreBudget != null) {
+        coreBudget.acquireUninterruptibly();
+      }
+      try {
+        return CommandExecution.runCommand(cmdline, workingDir, task,
+            env == null ? new Vector<Environment.Variable>() : env.getVariablesVector());
+      } finally {
+        if (coreBudget != null) {
+          coreBudget.release();
+        }
+      }
     } catch (final java.io.IOException exc) {
       throw new BuildException("Could not launch " + cmdline[0] + ": " + exc, task.getLocation());
     }
@@ -8,36 +8,6 @@ import java.io.*;
 import java.util.Vector;
 
 
-class StreamGobbler extends Thread {
-    InputStream is;
-    String type;
-    CCTask task;
-
-
-    StreamGobbler(InputStream is, String type, CCTask task) {
-        this.is = is;
-        this.type = type;
-        this.task = task;
-    }
-
-
-    public void run() {
-        try {
-            InputStreamReader isr = new InputStreamReader(is);
-            BufferedReader br = new BufferedReader(isr);
-            String line;
-            while ((line = br.readLine()) != null)
-                task.log(type +">"+ line );
-
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-        }
-
-
-    }
-}
-
-
 public class CommandExecution {
 
 
@@ -76,15 +46,30 @@ public class CommandExecution {
             task.log("Executing - " + builder.toString(), task.getCommandLogLevel());
 
 
-            //Create the StreamGobbler to read the process output
-            StreamGobbler outputGobbler = new StreamGobbler(process.getInputStream(), "OUTPUT",task);
-
-            outputGobbler.start();
+            //Collect the process output on the shared pump threads, so that
+            //the output of concurrent jobs is not interleaved in the log
+            final CompilerDiagnostics diagnostics = task.getDiagnostics();
+            final StringBuilder output = new StringBuilder();
+            ProcessOutputPump.Handle handle = ProcessOutputPump.pump(process, new ProcessOutputPump.LineHandler() {
+                @Override
+                public void line(String line) {
+                    diagnostics.parse(line);
+                    if (output.length() > 0) {
+                        output.append('\n');
+                    }
+                    output.append("OUTPUT>").append(line);
+                }
+            }, null);
 
             int exit_value;
 
-            //Wait for the process to finish
-            exit_value = process.waitFor();
+            //Wait for the process to finish and all of its output to be read
+            exit_value = handle.waitFor();
+
+            //Log the output of the job as a whole
+            if (output.length() > 0) {
+                task.log(output.toString());
+            }
 
 
             return exit_value;
@@ -50,6 +50,7 @@ public final class CompilerDef extends ProcessorDef {
   /** The source file sets. */
   private final Vector defineSets = new Vector();
   private Boolean ccache = false;
+  private boolean splitDebug;
   private Boolean exceptions;
   private Boolean rtti;
   private final Vector includePaths = new Vector();
@@ -350,10 +351,22 @@ public final class CompilerDef extends ProcessorDef {
     return this.clearDefaultOptions;
   }
 
+  public boolean isSplitDebug() {
+    return this.splitDebug;
+  }
+
   public void setCcache(final Boolean ccache) {
     this.ccache = ccache;
   }
 
+  /**
+   * Sets whether debug information is written to a file next to each object
+   * instead of into the object, if the compiler supports it.
+   */
+  public void setSplitDebug(final boolean splitDebug) {
+    this.splitDebug = splitDebug;
+  }
+
   /**
    * Sets the default compiler adapter. Use the "name" attribute when the
    * compiler is a supported compiler.
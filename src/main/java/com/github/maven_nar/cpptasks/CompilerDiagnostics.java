@@ -0,0 +1,221 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the diagnostics printed by GCC compatible compilers, in the form
+ * <code>file:line:column: severity: message</code>, during a task.
+ *
+ * Shared by the compile threads of a task.
+ */
+public final class CompilerDiagnostics {
+  /**
+   * A parsed diagnostic.
+   */
+  public static final class Diagnostic {
+    private final int column;
+    private final String file;
+    private final int line;
+    private final String message;
+    private final String severity;
+
+    private Diagnostic(final String file, final int line, final int column, final String severity,
+        final String message) {
+      this.file = file;
+      this.line = line;
+      this.column = column;
+      this.severity = severity;
+      this.message = message;
+    }
+
+    /**
+     * Returns the column, or 0 if the compiler did not report one.
+     */
+    public int getColumn() {
+      return this.column;
+    }
+
+    public String getFile() {
+      return this.file;
+    }
+
+    public int getLine() {
+      return this.line;
+    }
+
+    public String getMessage() {
+      return this.message;
+    }
+
+    /**
+     * Returns one of error, warning or note. Fatal errors are errors.
+     */
+    public String getSeverity() {
+      return this.severity;
+    }
+  }
+
+  /**
+   * file:line[:column]: [fatal ]error|warning|note: message
+   */
+  private static final Pattern DIAGNOSTIC = Pattern
+      .compile("^(.+?):(\\d+):(?:(\\d+):)?\\s*(fatal error|error|warning|note):\\s*(.*)$");
+
+  private final List<Diagnostic> diagnostics = new ArrayList<>();
+  private int errors;
+  private int notes;
+  private int warnings;
+
+  /**
+   * Parses a line of compiler output, recording it if it is a diagnostic.
+   *
+   * @return the diagnostic, or null if the line is not one
+   */
+  public Diagnostic parse(final String text) {
+    final Matcher matcher = DIAGNOSTIC.matcher(text);
+    if (!matcher.matches()) {
+      return null;
+    }
+    String severity = matcher.group(4);
+    if (severity.equals("fatal error")) {
+      severity = "error";
+    }
+    final int line;
+    final int column;
+    try {
+      line = Integer.parseInt(matcher.group(2));
+      column = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 0;
+    } catch (final NumberFormatException ex) {
+      // out of range, not a position the compiler reported
+      return null;
+    }
+    final Diagnostic diagnostic = new Diagnostic(matcher.group(1), line, column, severity, matcher.group(5));
+    synchronized (this) {
+      this.diagnostics.add(diagnostic);
+      switch (severity) {
+        case "error":
+          this.errors++;
+          break;
+        case "warning":
+          this.warnings++;
+          break;
+        default:
+          this.notes++;
+      }
+    }
+    return diagnostic;
+  }
+
+  public synchronized List<Diagnostic> getDiagnostics() {
+    return new ArrayList<>(this.diagnostics);
+  }
+
+  public synchronized int getErrorCount() {
+    return this.errors;
+  }
+
+  public synchronized int getNoteCount() {
+    return this.notes;
+  }
+
+  public synchronized int getWarningCount() {
+    return this.warnings;
+  }
+
+  private static void writeString(final StringBuilder buf, final String value) {
+    buf.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          buf.append("\\\"");
+          break;
+        case '\\':
+          buf.append("\\\\");
+          break;
+        case '\n':
+          buf.append("\\n");
+          break;
+        case '\r':
+          buf.append("\\r");
+          break;
+        case '\t':
+          buf.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            buf.append(String.format("\\u%04x", (int) c));
+          } else {
+            buf.append(c);
+          }
+      }
+    }
+    buf.append('"');
+  }
+
+  /**
+   * Writes the counts and the diagnostics as JSON.
+   *
+   * @param file
+   *          summary file, replaced as a whole
+   */
+  public synchronized void writeSummary(final File file) throws IOException {
+    final StringBuilder buf = new StringBuilder();
+    buf.append("{\n  \"errors\": ").append(this.errors);
+    buf.append(",\n  \"warnings\": ").append(this.warnings);
+    buf.append(",\n  \"notes\": ").append(this.notes);
+    buf.append(",\n  \"diagnostics\": [");
+    for (int i = 0; i < this.diagnostics.size(); i++) {
+      final Diagnostic diagnostic = this.diagnostics.get(i);
+      buf.append(i == 0 ? "\n" : ",\n");
+      buf.append("    {\"file\": ");
+      writeString(buf, diagnostic.getFile());
+      buf.append(", \"line\": ").append(diagnostic.getLine());
+      buf.append(", \"column\": ").append(diagnostic.getColumn());
+      buf.append(", \"severity\": ");
+      writeString(buf, diagnostic.getSeverity());
+      buf.append(", \"message\": ");
+      writeString(buf, diagnostic.getMessage());
+      buf.append('}');
+    }
+    buf.append(this.diagnostics.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+    final File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    try {
+      try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile),
+          StandardCharsets.UTF_8))) {
+        writer.write(buf.toString());
+      }
+      CUtil.replaceFile(tempFile, file);
+    } finally {
+      tempFile.delete();
+    }
+  }
+}
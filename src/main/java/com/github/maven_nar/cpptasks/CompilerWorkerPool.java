@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs compiler command lines on long-lived worker processes instead of
+ * starting a process per source file, for toolchains whose start-up
+ * dominates the compile time.
+ *
+ * A worker is started when no idle one is available, so there are at most as
+ * many workers as concurrent compile jobs. A worker reads requests on its
+ * standard input and answers each on its standard output, one line per item:
+ *
+ * <pre>
+ * request:  DIR &lt;working directory&gt;  (optional, the worker's own if missing)
+ *           ARG &lt;argument&gt;        (one per argument, the first is the executable)
+ *           RUN
+ * response: OUT &lt;line&gt;            (the output of the command, any number)
+ *           EXIT &lt;exit value&gt;
+ * </pre>
+ *
+ * The object file is written by the command itself, as usual. Arguments can
+ * not contain line breaks. The standard error of a worker is inherited and
+ * closing its standard input asks it to exit. The plugin contains no worker,
+ * one has to be provided for the toolchain. The site has an example,
+ * examples/nar-compile-worker.sh, which shows the protocol but still starts
+ * the compiler for every request.
+ */
+public final class CompilerWorkerPool {
+  /**
+   * A running worker process.
+   */
+  private static final class Worker {
+    private final BufferedReader in;
+    private final Writer out;
+    private final Process process;
+
+    private Worker(final Process process) {
+      this.process = process;
+      this.in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+      this.out = new OutputStreamWriter(process.getOutputStream());
+    }
+
+    private void destroy() {
+      this.process.destroy();
+    }
+  }
+
+  private final String[] command;
+
+  private final List<Worker> idle = new ArrayList<>();
+
+  private final List<Worker> workers = new ArrayList<>();
+
+  /**
+   * Constructor.
+   *
+   * @param command
+   *          command line starting a worker
+   */
+  public CompilerWorkerPool(final String[] command) {
+    this.command = command.clone();
+  }
+
+  private synchronized Worker acquire() throws IOException {
+    if (!this.idle.isEmpty()) {
+      return this.idle.remove(this.idle.size() - 1);
+    }
+    final ProcessBuilder builder = new ProcessBuilder(this.command);
+    builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+    final Worker worker = new Worker(builder.start());
+    this.workers.add(worker);
+    return worker;
+  }
+
+  /**
+   * Asks all workers to exit and waits for them.
+   */
+  public synchronized void close() {
+    for (final Worker worker : this.workers) {
+      try {
+        worker.out.close();
+        worker.process.waitFor();
+      } catch (final IOException ex) {
+        worker.destroy();
+      } catch (final InterruptedException ex) {
+        worker.destroy();
+        Thread.currentThread().interrupt();
+      }
+    }
+    this.workers.clear();
+    this.idle.clear();
+  }
+
+  /**
+   * Returns the number of workers started and not yet closed.
+   */
+  public synchronized int getWorkerCount() {
+    return this.workers.size();
+  }
+
+  private synchronized void release(final Worker worker, final boolean reusable) {
+    if (reusable) {
+      this.idle.add(worker);
+    } else {
+      this.workers.remove(worker);
+      worker.destroy();
+    }
+  }
+
+  /**
+   * Runs a command line on a worker.
+   *
+   * The output of the command is logged to the task in one piece once the
+   * command has finished and its diagnostics are added to those of the task.
+   * Without a working directory the command runs in that of the worker.
+   *
+   * @return exit value of the command
+   * @throws IOException
+   *           if no worker could be started or a worker failed, in which case
+   *           the worker is discarded
+   */
+  public int run(final CCTask task, final File workDir, final String[] cmdline) throws IOException {
+    final Worker worker = acquire();
+    boolean reusable = false;
+    try {
+      final StringBuilder request = new StringBuilder();
+      if (workDir != null) {
+        request.append("DIR ").append(workDir.getPath()).append('\n');
+      }
+      for (final String arg : cmdline) {
+        if (arg.indexOf('\n') >= 0 || arg.indexOf('\r') >= 0) {
+          throw new IOException("Argument contains a line break: " + arg);
+        }
+        request.append("ARG ").append(arg).append('\n');
+      }
+      request.append("RUN\n");
+      worker.out.write(request.toString());
+      worker.out.flush();
+
+      final CompilerDiagnostics diagnostics = task.getDiagnostics();
+      final StringBuilder output = new StringBuilder();
+      String line;
+      while ((line = worker.in.readLine()) != null) {
+        if (line.startsWith("OUT ")) {
+          line = line.substring(4);
+          diagnostics.parse(line);
+          if (output.length() > 0) {
+            output.append('\n');
+          }
+          output.append("OUTPUT>").append(line);
+        } else if (line.startsWith("EXIT ")) {
+          if (output.length() > 0) {
+            task.log(output.toString());
+          }
+          final int exitValue;
+          try {
+            exitValue = Integer.parseInt(line.substring(5).trim());
+          } catch (final NumberFormatException ex) {
+            throw new IOException("Unexpected worker response: " + line);
+          }
+          reusable = true;
+          return exitValue;
+        } else {
+          throw new IOException("Unexpected worker response: " + line);
+        }
+      }
+      throw new IOException("Worker exited while running " + cmdline[0]);
+    } finally {
+      release(worker, reusable);
+    }
+  }
+}
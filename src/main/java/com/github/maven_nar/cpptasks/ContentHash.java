@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fast, non-cryptographic content hashes (XXH64) used to tell whether a file
+ * whose timestamp changed actually has different content.
+ *
+ * A hash of 0 is used by the history and dependency tables to mean that no
+ * hash was recorded.
+ */
+public final class ContentHash {
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+  private static final int STRIPE = 32;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Computes the hash of the content of a file.
+   *
+   * @param file
+   *          file to be hashed
+   * @return XXH64 of the file content with a seed of 0
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static long hash(final File file) throws IOException {
+    try (FileInputStream in = new FileInputStream(file)) {
+      final FileChannel channel = in.getChannel();
+      final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      long v1 = PRIME1 + PRIME2;
+      long v2 = PRIME2;
+      long v3 = 0;
+      long v4 = -PRIME1;
+      long length = 0;
+      int read;
+      while ((read = channel.read(buf)) >= 0) {
+        length += read;
+        buf.flip();
+        while (buf.remaining() >= STRIPE) {
+          v1 = round(v1, buf.getLong());
+          v2 = round(v2, buf.getLong());
+          v3 = round(v3, buf.getLong());
+          v4 = round(v4, buf.getLong());
+        }
+        buf.compact();
+      }
+      buf.flip();
+      long h;
+      if (length >= STRIPE) {
+        h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        h = mergeRound(h, v1);
+        h = mergeRound(h, v2);
+        h = mergeRound(h, v3);
+        h = mergeRound(h, v4);
+      } else {
+        h = PRIME5;
+      }
+      h += length;
+      while (buf.remaining() >= 8) {
+        h ^= round(0, buf.getLong());
+        h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+      }
+      if (buf.remaining() >= 4) {
+        h ^= (buf.getInt() & 0xFFFFFFFFL) * PRIME1;
+        h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+      }
+      while (buf.hasRemaining()) {
+        h ^= (buf.get() & 0xFF) * PRIME5;
+        h = Long.rotateLeft(h, 11) * PRIME1;
+      }
+      h ^= h >>> 33;
+      h *= PRIME2;
+      h ^= h >>> 29;
+      h *= PRIME3;
+      h ^= h >>> 32;
+      return h;
+    }
+  }
+
+  /**
+   * Computes the hash of a file, returning 0 if it can not be read.
+   */
+  public static long hashOrZero(final File file) {
+    try {
+      return hash(file);
+    } catch (final IOException ex) {
+      return 0;
+    }
+  }
+
+  private static long mergeRound(final long acc, final long val) {
+    return (acc ^ round(0, val)) * PRIME1 + PRIME4;
+  }
+
+  /**
+   * Parses a hash written by {@link #toString(long)}.
+   */
+  public static long parse(final String hex) {
+    if (hex.length() > 8) {
+      final int split = hex.length() - 8;
+      return Long.parseLong(hex.substring(0, split), 16) << 32 | Long.parseLong(hex.substring(split), 16);
+    }
+    return Long.parseLong(hex, 16);
+  }
+
+  private static long round(final long acc, final long input) {
+    return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+  }
+
+  /**
+   * Formats a hash as unsigned hexadecimal.
+   */
+  public static String toString(final long hash) {
+    return Long.toHexString(hash);
+  }
+
+  private ContentHash() {
+  }
+}
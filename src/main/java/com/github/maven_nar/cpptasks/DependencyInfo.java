@@ -33,6 +33,16 @@ public final class DependencyInfo {
    */
   // FREEHEP
   // private long compositeLastModified;
+  /**
+   * Hash of the source content, 0 if not known.
+   */
+  private final/* final */long contentHash;
+  /**
+   * Actual timestamp of the source, which may be later than
+   * sourceLastModified if the source was touched without changing its
+   * content.
+   */
+  private final/* final */long fileLastModified;
   private final/* final */String includePathIdentifier;
   private final/* final */String[] includes;
   private final/* final */String source;
@@ -43,6 +53,11 @@ public final class DependencyInfo {
 
   public DependencyInfo(final String includePathIdentifier, final String source, final long sourceLastModified,
       final Vector includes, final Vector sysIncludes) {
+    this(includePathIdentifier, source, sourceLastModified, includes, sysIncludes, 0, sourceLastModified);
+  }
+
+  public DependencyInfo(final String includePathIdentifier, final String source, final long sourceLastModified,
+      final Vector includes, final Vector sysIncludes, final long contentHash, final long fileLastModified) {
     if (source == null) {
       throw new NullPointerException("source");
     }
@@ -51,6 +66,8 @@ public final class DependencyInfo {
     }
     this.source = source;
     this.sourceLastModified = sourceLastModified;
+    this.contentHash = contentHash;
+    this.fileLastModified = fileLastModified;
     this.includePathIdentifier = includePathIdentifier;
     this.includes = new String[includes.size()];
     // BEGINFREEHEP
@@ -67,6 +84,14 @@ public final class DependencyInfo {
     sysIncludes.copyInto(this.sysIncludes);
   }
 
+  public long getContentHash() {
+    return this.contentHash;
+  }
+
+  public long getFileLastModified() {
+    return this.fileLastModified;
+  }
+
   // ENDFREEHEP
   public String getIncludePathIdentifier() {
     return this.includePathIdentifier;
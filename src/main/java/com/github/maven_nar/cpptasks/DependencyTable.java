@@ -20,13 +20,21 @@
 package com.github.maven_nar.cpptasks;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -37,11 +45,19 @@ import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import com.github.maven_nar.cpptasks.compiler.CompilerConfiguration;
 
 /**
+ * Cache of the includes of source files, persisted in dependencies.xml.
+ *
+ * Changes made during a build are appended to dependencies.journal instead of
+ * rewriting dependencies.xml; the journal is folded back into a new
+ * dependencies.xml, which replaces the old one by a rename, once it grows
+ * large relative to it.
+ *
  * @author Curt Arnold
  */
 public final class DependencyTable {
@@ -50,10 +66,25 @@ public final class DependencyTable {
    * SAX parse events
    */
   private class DependencyTableHandler extends DefaultHandler {
-    private final File baseDir;
+    private long contentHash;
     private final DependencyTable dependencyTable;
+    private long fileLastModified;
+    /**
+     * Generation of dependencies.xml, 0 if not recorded.
+     */
+    private int generation;
     private String includePath;
     private final Vector includes;
+    /**
+     * Set if journal records are read, that is the journal header matches the
+     * generation of dependencies.xml, or if reading dependencies.xml itself.
+     */
+    private boolean accept;
+    private final boolean journal;
+    /**
+     * Number of complete source records read.
+     */
+    private int records;
     private String source;
     private long sourceLastModified;
     private final Vector sysIncludes;
@@ -66,9 +97,10 @@ public final class DependencyTable {
      * @param outputFiles
      *          existing files in output directory
      */
-    private DependencyTableHandler(final DependencyTable dependencyTable, final File baseDir) {
+    private DependencyTableHandler(final DependencyTable dependencyTable, final boolean journal) {
       this.dependencyTable = dependencyTable;
-      this.baseDir = baseDir;
+      this.journal = journal;
+      this.accept = !journal;
       this.includes = new Vector();
       this.sysIncludes = new Vector();
       this.source = null;
@@ -83,25 +115,26 @@ public final class DependencyTable {
       // has the same timestamp
       //
       if (qName.equals("source")) {
-        if (this.source != null && this.includePath != null) {
-          final File existingFile = new File(this.baseDir, this.source);
-          //
-          // if the file exists and the time stamp is right
-          // preserve the dependency info
-          if (existingFile.exists()) {
-            //
-            // would have expected exact matches
-            // but was seeing some unexpected difference by
-            // a few tens of milliseconds, as long
-            // as the times are within a second
-            final long existingLastModified = existingFile.lastModified();
-            if (!CUtil.isSignificantlyAfter(existingLastModified, this.sourceLastModified)
-                && !CUtil.isSignificantlyBefore(existingLastModified, this.sourceLastModified)) {
-              final DependencyInfo dependInfo = new DependencyInfo(this.includePath, this.source,
-                  this.sourceLastModified, this.includes, this.sysIncludes);
-              this.dependencyTable.putDependencyInfo(this.source, dependInfo);
+        if (this.source != null && this.includePath != null && this.accept) {
+          this.records++;
+          final long currentLastModified = this.dependencyTable.getCurrentLastModified(this.source,
+              this.sourceLastModified, this.fileLastModified, this.contentHash);
+          final boolean keep = currentLastModified != STALE;
+          if (keep) {
+            final DependencyInfo dependInfo = new DependencyInfo(this.includePath, this.source,
+                this.sourceLastModified, this.includes, this.sysIncludes, this.contentHash, currentLastModified);
+            this.dependencyTable.putDependencyInfo(this.source, dependInfo);
+            if (currentLastModified != this.fileLastModified) {
+              this.dependencyTable.changed.addElement(dependInfo);
             }
           }
+          //
+          // a stale journal record also voids the older
+          // record of dependencies.xml it was meant to replace
+          //
+          if (!keep && this.journal) {
+            this.dependencyTable.removeDependencyInfo(this.source, this.includePath);
+          }
           this.source = null;
           this.includes.setSize(0);
         }
@@ -139,11 +172,21 @@ public final class DependencyTable {
           if (qName.equals("source")) {
             this.source = atts.getValue("file");
             this.sourceLastModified = Long.parseLong(atts.getValue("lastModified"), 16);
+            final String hash = atts.getValue("hash");
+            this.contentHash = hash != null ? ContentHash.parse(hash) : 0;
+            final String fileLastModified = atts.getValue("fileLastModified");
+            this.fileLastModified = fileLastModified != null ? Long.parseLong(fileLastModified, 16)
+                : this.sourceLastModified;
             this.includes.setSize(0);
             this.sysIncludes.setSize(0);
           } else {
             if (qName.equals("includePath")) {
               this.includePath = atts.getValue("signature");
+            } else if (qName.equals("journal")) {
+              this.accept = String.valueOf(DependencyTable.this.generation).equals(atts.getValue("generation"));
+            } else if (qName.equals("dependencies") && !this.journal) {
+              final String generation = atts.getValue("generation");
+              this.generation = generation != null ? Integer.parseInt(generation) : 0;
             }
           }
         }
@@ -253,16 +296,83 @@ public final class DependencyTable {
     }
   }
 
+  /**
+   * Kind of the binary store, "DEPS".
+   */
+  private static final int BINARY_KIND = 0x44455053;
+
+  /**
+   * Binary store table of sources: includePath, source, lastModified, hash,
+   * fileLastModified, first include, include count, sysinclude count.
+   */
+  private static final int BINARY_SOURCES = 0;
+
+  private static final int BINARY_SOURCE_SIZE = 44;
+
+  /**
+   * Binary store table of the includes followed by the sysincludes of each
+   * source.
+   */
+  private static final int BINARY_INCLUDES = 1;
+
+  /**
+   * Number of journal records below which the journal is never compacted.
+   */
+  private static final int COMPACTION_MIN_RECORDS = 256;
+
+  private static final byte[] JOURNAL_PROLOG = "<?xml version='1.0' encoding='UTF-8'?>\n<dependencies>\n"
+      .getBytes(StandardCharsets.UTF_8);
+
+  private static final byte[] JOURNAL_EPILOG = "</dependencies>\n".getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * Returned by {@link #getCurrentLastModified} for a stale record.
+   */
+  private static final long STALE = Long.MIN_VALUE;
+
   private final/* final */File baseDir;
   private String baseDirPath;
+  /** The binary alternative to dependencies.xml. */
+  private final File binaryFile;
+  /**
+   * Flag indicating whether the binary store is written instead of
+   * dependencies.xml.
+   */
+  private boolean binaryStore;
+  /**
+   * DependencyInfo's added or refreshed since the last commit.
+   */
+  private final Vector changed = new Vector();
+  /**
+   * Flag indicating whether content hashes are recorded and consulted when a
+   * timestamp differs.
+   */
+  private boolean contentHash;
   /**
    * a hashtable of DependencyInfo[] keyed by output file name
    */
   private final Hashtable dependencies = new Hashtable();
   /** The file the cache was loaded from. */
   private final/* final */File dependenciesFile;
-  /** Flag indicating whether the cache should be written back to file. */
-  private boolean dirty;
+  /**
+   * Generation of dependencies.xml, incremented by every compaction. The
+   * journal records the generation it applies to so that a journal left over
+   * by an interrupted compaction is not applied to the new dependencies.xml.
+   */
+  private int generation;
+  /** Set if the journal exists but could not be read completely. */
+  private boolean journalDamaged;
+  /** The journal of changes made since dependencies.xml was written. */
+  private final File journalFile;
+  /** Number of records in the journal. */
+  private int journalRecords;
+  /**
+   * Flag indicating whether the table was read from the store that is not
+   * written, so that it is written in full by the next commit.
+   */
+  private boolean rewrite;
+  /** Number of records in dependencies.xml. */
+  private int snapshotRecords;
 
   /**
    * Creates a target history table from dependencies.xml in the prject
@@ -281,54 +391,49 @@ public final class DependencyTable {
     } catch (final IOException ex) {
       this.baseDirPath = baseDir.toString();
     }
-    this.dirty = false;
     //
     // load any existing dependencies from file
     this.dependenciesFile = new File(baseDir, "dependencies.xml");
+    this.journalFile = new File(baseDir, "dependencies.journal");
+    this.binaryFile = new File(baseDir, "dependencies.bin");
+  }
+
+  /**
+   * Appends the changed DependencyInfo's to the journal, starting a new
+   * journal if there is none for the current generation.
+   */
+  private void appendJournal() throws IOException {
+    final boolean append = this.journalFile.exists() && this.journalRecords > 0;
+    final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.journalFile,
+        append), StandardCharsets.UTF_8));
+    try {
+      if (!append) {
+        writer.write("<journal generation=\"");
+        writer.write(String.valueOf(this.generation));
+        writer.write("\"/>\n");
+      }
+      writeIncludePathDependencies(writer, groupByIncludePath(this.changed.elements()));
+    } finally {
+      writer.close();
+    }
+    this.journalRecords += this.changed.size();
   }
 
   public void commit(final CCTask task) {
     //
-    // if not dirty, no need to update file
+    // if nothing changed, no need to update file
     //
-    if (this.dirty) {
-      //
-      // walk through dependencies to get vector of include paths
-      // identifiers
-      //
-      final Vector includePaths = getIncludePaths();
-      //
-      //
-      // write dependency file
-      //
+    if (!this.changed.isEmpty() || this.rewrite) {
       try {
-        final FileOutputStream outStream = new FileOutputStream(this.dependenciesFile);
-        OutputStreamWriter streamWriter;
-        //
-        // Early VM's may not have UTF-8 support
-        // fallback to default code page which
-        // "should" be okay unless there are
-        // non ASCII file names
-        String encodingName = "UTF-8";
-        try {
-          streamWriter = new OutputStreamWriter(outStream, "UTF-8");
-        } catch (final UnsupportedEncodingException ex) {
-          streamWriter = new OutputStreamWriter(outStream);
-          encodingName = streamWriter.getEncoding();
-        }
-        final BufferedWriter writer = new BufferedWriter(streamWriter);
-        writer.write("<?xml version='1.0' encoding='");
-        writer.write(encodingName);
-        writer.write("'?>\n");
-        writer.write("<dependencies>\n");
-        final StringBuffer buf = new StringBuffer();
-        final Enumeration includePathEnum = includePaths.elements();
-        while (includePathEnum.hasMoreElements()) {
-          writeIncludePathDependencies((String) includePathEnum.nextElement(), writer, buf);
+        if (this.binaryStore) {
+          writeBinary();
+        } else if (this.rewrite || needsCompaction()) {
+          writeSnapshot();
+        } else {
+          appendJournal();
         }
-        writer.write("</dependencies>\n");
-        writer.close();
-        this.dirty = false;
+        this.changed.clear();
+        this.rewrite = false;
       } catch (final IOException ex) {
         task.log("Error writing " + this.dependenciesFile.toString() + ":" + ex.toString());
       }
@@ -342,6 +447,41 @@ public final class DependencyTable {
     return this.dependencies.elements();
   }
 
+  /**
+   * Checks a record read from file against its source.
+   *
+   * @return the timestamp of the source to be recorded in the DependencyInfo,
+   *         which differs from fileLastModified if the source was touched
+   *         since but has the recorded content, or STALE if the record should
+   *         be discarded
+   */
+  private long getCurrentLastModified(final String source, final long sourceLastModified,
+      final long fileLastModified, final long contentHash) {
+    final File existingFile = new File(this.baseDir, source);
+    //
+    // if the file exists and the time stamp is right
+    // preserve the dependency info
+    if (existingFile.exists()) {
+      //
+      // would have expected exact matches
+      // but was seeing some unexpected difference by
+      // a few tens of milliseconds, as long
+      // as the times are within a second
+      final long existingLastModified = existingFile.lastModified();
+      if (isSameTime(existingLastModified, sourceLastModified) || isSameTime(existingLastModified, fileLastModified)) {
+        return fileLastModified;
+      }
+      //
+      // a touched file with the same content keeps
+      // the timestamp of that content
+      //
+      if (this.contentHash && contentHash != 0 && ContentHash.hashOrZero(existingFile) == contentHash) {
+        return existingLastModified;
+      }
+    }
+    return STALE;
+  }
+
   /**
    * This method returns a DependencyInfo for the specific source file and
    * include path identifier
@@ -361,39 +501,149 @@ public final class DependencyTable {
     return null;
   }
 
-  private Vector getIncludePaths() {
-    final Vector includePaths = new Vector();
-    DependencyInfo[] dependInfos;
-    final Enumeration dependenciesEnum = this.dependencies.elements();
-    while (dependenciesEnum.hasMoreElements()) {
-      dependInfos = (DependencyInfo[]) dependenciesEnum.nextElement();
-      for (final DependencyInfo dependInfo : dependInfos) {
-        boolean matchesExisting = false;
-        final String dependIncludePath = dependInfo.getIncludePathIdentifier();
-        final Enumeration includePathEnum = includePaths.elements();
-        while (includePathEnum.hasMoreElements()) {
-          if (dependIncludePath.equals(includePathEnum.nextElement())) {
-            matchesExisting = true;
-            break;
-          }
-        }
-        if (!matchesExisting) {
-          includePaths.addElement(dependIncludePath);
-        }
+  /**
+   * Groups DependencyInfo's by include path identifier, keeping the order in
+   * which the identifiers are first seen.
+   */
+  private static Map<String, Vector> groupByIncludePath(final Enumeration dependInfos) {
+    final Map<String, Vector> groups = new LinkedHashMap<>();
+    while (dependInfos.hasMoreElements()) {
+      final DependencyInfo dependInfo = (DependencyInfo) dependInfos.nextElement();
+      Vector group = groups.get(dependInfo.getIncludePathIdentifier());
+      if (group == null) {
+        group = new Vector();
+        groups.put(dependInfo.getIncludePathIdentifier(), group);
       }
+      group.addElement(dependInfo);
     }
-    return includePaths;
+    return groups;
   }
 
   public void load() throws IOException, ParserConfigurationException, SAXException {
     this.dependencies.clear();
-    if (this.dependenciesFile.exists()) {
+    this.changed.clear();
+    this.generation = 0;
+    this.snapshotRecords = 0;
+    this.journalRecords = 0;
+    this.journalDamaged = false;
+    this.rewrite = false;
+    if (isBinaryCurrent()) {
+      //
+      // rewritten whatever the format if it can not be read
+      //
+      this.rewrite = true;
+      loadBinary();
+      this.rewrite = !this.binaryStore;
+    } else if (this.dependenciesFile.exists()) {
+      this.rewrite = this.binaryStore;
       final SAXParserFactory factory = SAXParserFactory.newInstance();
       factory.setValidating(false);
       final SAXParser parser = factory.newSAXParser();
-      parser.parse(this.dependenciesFile, new DependencyTableHandler(this, this.baseDir));
-      this.dirty = false;
+      final DependencyTableHandler handler = new DependencyTableHandler(this, false);
+      parser.parse(this.dependenciesFile, handler);
+      this.generation = handler.generation;
+      this.snapshotRecords = handler.records;
+      if (this.journalFile.exists()) {
+        loadJournal(parser);
+      }
+    }
+  }
+
+  /**
+   * Reads the binary store. The includes of a record are only read if the
+   * record is kept.
+   */
+  private void loadBinary() throws IOException {
+    final BinaryStore.Reader reader = BinaryStore.open(this.binaryFile, BINARY_KIND);
+    try {
+      final Vector includes = new Vector();
+      final Vector sysIncludes = new Vector();
+      final int count = reader.getRecordCount(BINARY_SOURCES);
+      for (int i = 0; i < count; i++) {
+        final String source = reader.getString(reader.getInt(BINARY_SOURCES, i, 4));
+        final long sourceLastModified = reader.getLong(BINARY_SOURCES, i, 8);
+        final long contentHash = reader.getLong(BINARY_SOURCES, i, 16);
+        final long fileLastModified = reader.getLong(BINARY_SOURCES, i, 24);
+        final long currentLastModified = getCurrentLastModified(source, sourceLastModified, fileLastModified,
+            contentHash);
+        if (currentLastModified != STALE) {
+          int edge = reader.getInt(BINARY_SOURCES, i, 32);
+          final int includeCount = reader.getInt(BINARY_SOURCES, i, 36);
+          final int sysIncludeCount = reader.getInt(BINARY_SOURCES, i, 40);
+          includes.setSize(0);
+          for (int j = 0; j < includeCount; j++) {
+            includes.addElement(reader.getString(reader.getInt(BINARY_INCLUDES, edge++, 0)));
+          }
+          sysIncludes.setSize(0);
+          for (int j = 0; j < sysIncludeCount; j++) {
+            sysIncludes.addElement(reader.getString(reader.getInt(BINARY_INCLUDES, edge++, 0)));
+          }
+          final DependencyInfo dependInfo = new DependencyInfo(reader.getString(reader.getInt(BINARY_SOURCES, i, 0)),
+              source, sourceLastModified, includes, sysIncludes, contentHash, currentLastModified);
+          putDependencyInfo(source, dependInfo);
+          if (currentLastModified != fileLastModified) {
+            this.changed.addElement(dependInfo);
+          }
+        }
+      }
+    } catch (final IndexOutOfBoundsException ex) {
+      throw new IOException("Corrupt " + this.binaryFile);
+    }
+  }
+
+  /**
+   * Applies the records of the journal on top of those of dependencies.xml.
+   * The journal is a sequence of includePath elements without a document
+   * element, so it is parsed wrapped within one.
+   */
+  private void loadJournal(final SAXParser parser) throws IOException, SAXException {
+    final DependencyTableHandler handler = new DependencyTableHandler(this, true);
+    final InputStream in = new SequenceInputStream(new ByteArrayInputStream(JOURNAL_PROLOG), new SequenceInputStream(
+        new FileInputStream(this.journalFile), new ByteArrayInputStream(JOURNAL_EPILOG)));
+    try {
+      //
+      // the records of a journal for another generation, left over
+      // by an interrupted compaction, are not applied or counted
+      // and the journal is started afresh by the next commit
+      //
+      parser.parse(in, handler);
+    } catch (final SAXParseException ex) {
+      //
+      // the last record was cut short by an interrupted build,
+      // the complete records before it have been applied
+      //
+      this.journalDamaged = true;
+    } finally {
+      in.close();
     }
+    this.journalRecords = handler.records;
+  }
+
+  /**
+   * Determines whether the binary store rather than dependencies.xml should
+   * be read. The store written last is read so that enabling or disabling
+   * the binary store converts between the formats.
+   */
+  private boolean isBinaryCurrent() {
+    if (!this.binaryFile.exists()) {
+      return false;
+    }
+    if (!this.dependenciesFile.exists()) {
+      return true;
+    }
+    final long binaryLastModified = this.binaryFile.lastModified();
+    final long xmlLastModified = Math.max(this.dependenciesFile.lastModified(), this.journalFile.lastModified());
+    return binaryLastModified > xmlLastModified || binaryLastModified == xmlLastModified && this.binaryStore;
+  }
+
+  /**
+   * Determines whether the journal should be folded into a new
+   * dependencies.xml rather than appended to.
+   */
+  private boolean needsCompaction() {
+    final int records = this.journalRecords + this.changed.size();
+    return !this.dependenciesFile.exists() || this.journalDamaged
+        || records > Math.max(COMPACTION_MIN_RECORDS, this.snapshotRecords / 2);
   }
 
   /**
@@ -440,12 +690,27 @@ public final class DependencyTable {
   }
 
   public DependencyInfo parseIncludes(final CCTask task, final CompilerConfiguration compiler, final File source) {
-    final DependencyInfo dependInfo = compiler.parseIncludes(task, this.baseDir, source);
+    DependencyInfo dependInfo = compiler.parseIncludes(task, this.baseDir, source);
+    //
+    // no hash if the timestamp was adjusted to force
+    // a reparse because of an unresolved include
+    //
+    if (this.contentHash && dependInfo.getSourceLastModified() == source.lastModified()) {
+      dependInfo = new DependencyInfo(dependInfo.getIncludePathIdentifier(), dependInfo.getSource(),
+          dependInfo.getSourceLastModified(), new Vector(Arrays.asList(dependInfo.getIncludes())), new Vector(
+              Arrays.asList(dependInfo.getSysIncludes())), ContentHash.hashOrZero(source),
+          dependInfo.getSourceLastModified());
+    }
     final String relativeSource = CUtil.getRelativePath(this.baseDirPath, source);
     putDependencyInfo(relativeSource, dependInfo);
+    this.changed.addElement(dependInfo);
     return dependInfo;
   }
 
+  private static boolean isSameTime(final long time1, final long time2) {
+    return !CUtil.isSignificantlyAfter(time1, time2) && !CUtil.isSignificantlyBefore(time1, time2);
+  }
+
   private void putDependencyInfo(final String key, final DependencyInfo dependInfo) {
     //
     // optimistic, add new value
@@ -453,7 +718,6 @@ public final class DependencyTable {
     final DependencyInfo[] old = (DependencyInfo[]) this.dependencies.put(key, new DependencyInfo[] {
       dependInfo
     });
-    this.dirty = true;
     //
     // something was already there
     //
@@ -481,6 +745,42 @@ public final class DependencyTable {
     return;
   }
 
+  private void removeDependencyInfo(final String key, final String includePathIdentifier) {
+    final DependencyInfo[] old = (DependencyInfo[]) this.dependencies.get(key);
+    if (old != null) {
+      for (int i = 0; i < old.length; i++) {
+        if (old[i].getIncludePathIdentifier().equals(includePathIdentifier)) {
+          if (old.length == 1) {
+            this.dependencies.remove(key);
+          } else {
+            final DependencyInfo[] remaining = new DependencyInfo[old.length - 1];
+            System.arraycopy(old, 0, remaining, 0, i);
+            System.arraycopy(old, i + 1, remaining, i, remaining.length - i);
+            this.dependencies.put(key, remaining);
+          }
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Selects the binary store, dependencies.bin, instead of dependencies.xml.
+   * Must be called before {@link #load()}.
+   */
+  public void setBinaryStore(final boolean binaryStore) {
+    this.binaryStore = binaryStore;
+  }
+
+  /**
+   * Enables recording of content hashes, which are then consulted when a
+   * timestamp differs so that touched but unchanged files are not considered
+   * modified. Must be called before {@link #load()}.
+   */
+  public void setContentHash(final boolean contentHash) {
+    this.contentHash = contentHash;
+  }
+
   public void walkDependencies(final CCTask task, final DependencyInfo dependInfo,
       final CompilerConfiguration compiler, final DependencyInfo[] stack, final DependencyVisitor visitor)
       throws BuildException {
@@ -577,9 +877,37 @@ public final class DependencyTable {
     }
   }
 
-  private void
-      writeDependencyInfo(final BufferedWriter writer, final StringBuffer buf, final DependencyInfo dependInfo)
-          throws IOException {
+  /**
+   * Writes all DependencyInfo's to the binary store.
+   */
+  private void writeBinary() throws IOException {
+    final BinaryStore.Writer writer = new BinaryStore.Writer(BINARY_KIND, BINARY_SOURCE_SIZE, 4);
+    final Enumeration dependenciesEnum = this.dependencies.elements();
+    while (dependenciesEnum.hasMoreElements()) {
+      for (final DependencyInfo dependInfo : (DependencyInfo[]) dependenciesEnum.nextElement()) {
+        final String[] includes = dependInfo.getIncludes();
+        final String[] sysIncludes = dependInfo.getSysIncludes();
+        writer.putInt(BINARY_SOURCES, writer.putString(dependInfo.getIncludePathIdentifier()));
+        writer.putInt(BINARY_SOURCES, writer.putString(dependInfo.getSource()));
+        writer.putLong(BINARY_SOURCES, dependInfo.getSourceLastModified());
+        writer.putLong(BINARY_SOURCES, dependInfo.getContentHash());
+        writer.putLong(BINARY_SOURCES, dependInfo.getFileLastModified());
+        writer.putInt(BINARY_SOURCES, writer.getRecordCount(BINARY_INCLUDES));
+        writer.putInt(BINARY_SOURCES, includes.length);
+        writer.putInt(BINARY_SOURCES, sysIncludes.length);
+        for (final String include : includes) {
+          writer.putInt(BINARY_INCLUDES, writer.putString(include));
+        }
+        for (final String sysInclude : sysIncludes) {
+          writer.putInt(BINARY_INCLUDES, writer.putString(sysInclude));
+        }
+      }
+    }
+    writer.write(this.binaryFile);
+  }
+
+  private void writeDependencyInfo(final BufferedWriter writer, final StringBuffer buf,
+      final DependencyInfo dependInfo) throws IOException {
     final String[] includes = dependInfo.getIncludes();
     final String[] sysIncludes = dependInfo.getSysIncludes();
     //
@@ -592,6 +920,14 @@ public final class DependencyTable {
     buf.append(CUtil.xmlAttribEncode(dependInfo.getSource()));
     buf.append("\" lastModified=\"");
     buf.append(Long.toHexString(dependInfo.getSourceLastModified()));
+    if (dependInfo.getContentHash() != 0) {
+      buf.append("\" hash=\"");
+      buf.append(ContentHash.toString(dependInfo.getContentHash()));
+      if (dependInfo.getFileLastModified() != dependInfo.getSourceLastModified()) {
+        buf.append("\" fileLastModified=\"");
+        buf.append(Long.toHexString(dependInfo.getFileLastModified()));
+      }
+    }
     buf.append("\">\n");
     writer.write(buf.toString());
     for (final String include : includes) {
@@ -612,28 +948,82 @@ public final class DependencyTable {
     return;
   }
 
-  private void writeIncludePathDependencies(final String includePathIdentifier, final BufferedWriter writer,
-      final StringBuffer buf) throws IOException {
-    //
-    // include path element
-    //
-    buf.setLength(0);
-    buf.append("   <includePath signature=\"");
-    buf.append(CUtil.xmlAttribEncode(includePathIdentifier));
-    buf.append("\">\n");
-    writer.write(buf.toString());
+  private void writeIncludePathDependencies(final BufferedWriter writer, final Map<String, Vector> groups)
+      throws IOException {
+    final StringBuffer buf = new StringBuffer();
+    for (final Map.Entry<String, Vector> group : groups.entrySet()) {
+      //
+      // include path element
+      //
+      buf.setLength(0);
+      buf.append("   <includePath signature=\"");
+      buf.append(CUtil.xmlAttribEncode(group.getKey()));
+      buf.append("\">\n");
+      writer.write(buf.toString());
+      final Enumeration dependInfos = group.getValue().elements();
+      while (dependInfos.hasMoreElements()) {
+        writeDependencyInfo(writer, buf, (DependencyInfo) dependInfos.nextElement());
+      }
+      writer.write("   </includePath>\n");
+    }
+  }
+
+  /**
+   * Writes all DependencyInfo's to a new dependencies.xml of the next
+   * generation and discards the journal.
+   */
+  private void writeSnapshot() throws IOException {
+    final Vector all = new Vector();
     final Enumeration dependenciesEnum = this.dependencies.elements();
     while (dependenciesEnum.hasMoreElements()) {
-      final DependencyInfo[] dependInfos = (DependencyInfo[]) dependenciesEnum.nextElement();
-      for (final DependencyInfo dependInfo : dependInfos) {
-        //
-        // if this is for the same include path
-        // then output the info
-        if (dependInfo.getIncludePathIdentifier().equals(includePathIdentifier)) {
-          writeDependencyInfo(writer, buf, dependInfo);
-        }
+      all.addAll(Arrays.asList((DependencyInfo[]) dependenciesEnum.nextElement()));
+    }
+    final int nextGeneration = this.generation + 1;
+    //
+    // write to a temporary file first so that an interrupted
+    // build leaves the previous dependencies.xml intact
+    //
+    final File tempFile = File.createTempFile("dependencies", ".tmp", this.baseDir);
+    try {
+      final FileOutputStream outStream = new FileOutputStream(tempFile);
+      OutputStreamWriter streamWriter;
+      //
+      // Early VM's may not have UTF-8 support
+      // fallback to default code page which
+      // "should" be okay unless there are
+      // non ASCII file names
+      String encodingName = "UTF-8";
+      try {
+        streamWriter = new OutputStreamWriter(outStream, "UTF-8");
+      } catch (final UnsupportedEncodingException ex) {
+        streamWriter = new OutputStreamWriter(outStream);
+        encodingName = streamWriter.getEncoding();
       }
+      final BufferedWriter writer = new BufferedWriter(streamWriter);
+      try {
+        writer.write("<?xml version='1.0' encoding='");
+        writer.write(encodingName);
+        writer.write("'?>\n");
+        writer.write("<dependencies generation=\"");
+        writer.write(String.valueOf(nextGeneration));
+        writer.write("\">\n");
+        writeIncludePathDependencies(writer, groupByIncludePath(all.elements()));
+        writer.write("</dependencies>\n");
+      } finally {
+        writer.close();
+      }
+      CUtil.replaceFile(tempFile, this.dependenciesFile);
+    } finally {
+      tempFile.delete();
     }
-    writer.write("   </includePath>\n");
+    //
+    // the journal is for the previous generation
+    // and would be ignored if left behind
+    //
+    this.journalFile.delete();
+    this.generation = nextGeneration;
+    this.snapshotRecords = all.size();
+    this.journalRecords = 0;
+    this.journalDamaged = false;
   }
 }
@@ -63,6 +63,9 @@ public class LinkerDef extends ProcessorDef {
   private Boolean skipDepLink;
   private List<String[]> commands;
   private boolean dryRun;
+  private boolean thinArchive;
+  private String fastLinker;
+  private boolean debugPackage;
 
   private final Set<File> libraryDirectories = new LinkedHashSet<>();
 
@@ -593,4 +596,41 @@ public class LinkerDef extends ProcessorDef {
   public void setDryRun(boolean dryRun) {
     this.dryRun = dryRun;
   }
+
+  public boolean isThinArchive() {
+    return thinArchive;
+  }
+
+  /**
+   * Sets whether an ar librarian creates a thin archive, which refers to the
+   * object files instead of containing them. Ignored by other linkers.
+   */
+  public void setThinArchive(boolean thinArchive) {
+    this.thinArchive = thinArchive;
+  }
+
+  public String getFastLinker() {
+    return fastLinker;
+  }
+
+  /**
+   * Sets the faster linkers to use if available, a comma separated list of
+   * "mold", "lld" and "gold" or "auto" for all of them in this order. Only
+   * used by linkers driven through gcc compatible compilers.
+   */
+  public void setFastLinker(String fastLinker) {
+    this.fastLinker = fastLinker;
+  }
+
+  public boolean isDebugPackage() {
+    return debugPackage;
+  }
+
+  /**
+   * Sets whether the debug information split from the objects is collected
+   * into a package next to the output.
+   */
+  public void setDebugPackage(boolean debugPackage) {
+    this.debugPackage = debugPackage;
+  }
 }
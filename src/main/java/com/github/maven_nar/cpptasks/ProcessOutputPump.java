@@ -0,0 +1,324 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Reads the output of child processes on a small, fixed pool of shared
+ * threads instead of starting reader threads for every process.
+ *
+ * Process pipes can not be selected on, so each pump thread polls the pipes
+ * of the processes assigned to it, reading what is available without
+ * blocking, and backs off briefly when none had output. Output is split into
+ * lines and delivered on the pump thread, in order for each stream. A line
+ * handler throwing an exception does not stop the stream from being drained.
+ * Once a process has exited, what it wrote before exiting is drained and its
+ * {@link Handle} completes.
+ */
+public final class ProcessOutputPump {
+  /**
+   * Completion of a pumped process.
+   */
+  public static final class Handle {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private int exitValue;
+
+    /**
+     * Waits until the process has exited and all of its output has been
+     * delivered.
+     *
+     * @return exit value of the process
+     */
+    public int waitFor() throws InterruptedException {
+      this.done.await();
+      return this.exitValue;
+    }
+  }
+
+  /**
+   * Receives the lines of a stream, without line terminator.
+   */
+  public interface LineHandler {
+    void line(String line);
+  }
+
+  /**
+   * A process and the line buffers of its streams.
+   */
+  private static final class Entry {
+    private final Handle handle = new Handle();
+    private final Process process;
+    private final Stream[] streams;
+
+    private Entry(final Process process, final LineHandler out, final LineHandler err) {
+      this.process = process;
+      if (err == null) {
+        this.streams = new Stream[] {
+          new Stream(process.getInputStream(), out)
+        };
+      } else {
+        this.streams = new Stream[] {
+            new Stream(process.getInputStream(), out), new Stream(process.getErrorStream(), err)
+        };
+      }
+    }
+
+    /**
+     * Reads available output and checks for exit.
+     *
+     * @return true if any output was read
+     */
+    private boolean poll(final byte[] buf) {
+      boolean exited;
+      try {
+        this.handle.exitValue = this.process.exitValue();
+        exited = true;
+      } catch (final IllegalThreadStateException ex) {
+        exited = false;
+      }
+      boolean read = false;
+      for (final Stream stream : this.streams) {
+        read |= stream.drain(buf, exited);
+      }
+      if (exited) {
+        //
+        // output written by descendants that outlive the
+        // process is not waited for
+        //
+        for (final Stream stream : this.streams) {
+          stream.close();
+        }
+        this.handle.done.countDown();
+      }
+      return read;
+    }
+  }
+
+  /**
+   * A thread polling the pipes of the processes assigned to it.
+   */
+  private static final class Pump extends Thread {
+    private final List<Entry> entries = new ArrayList<>();
+
+    private Pump(final int number) {
+      super("Process output pump " + number);
+      setDaemon(true);
+    }
+
+    private synchronized void add(final Entry entry) {
+      this.entries.add(entry);
+      notify();
+    }
+
+    private synchronized int size() {
+      return this.entries.size();
+    }
+
+    @Override
+    public void run() {
+      final byte[] buf = new byte[BUFFER_SIZE];
+      final List<Entry> polled = new ArrayList<>();
+      long idle = 0;
+      while (true) {
+        synchronized (this) {
+          while (this.entries.isEmpty()) {
+            try {
+              wait();
+            } catch (final InterruptedException ex) {
+              // daemon thread, keep pumping
+            }
+          }
+          polled.clear();
+          polled.addAll(this.entries);
+        }
+        boolean read = false;
+        for (final Entry entry : polled) {
+          read |= entry.poll(buf);
+          if (entry.handle.done.getCount() == 0) {
+            synchronized (this) {
+              this.entries.remove(entry);
+            }
+          }
+        }
+        if (read) {
+          idle = 0;
+        } else {
+          idle = Math.min(idle + 1, MAX_IDLE_MILLIS);
+          try {
+            Thread.sleep(idle);
+          } catch (final InterruptedException ex) {
+            // daemon thread, keep pumping
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * An output stream of a process and its incomplete last line.
+   */
+  private static final class Stream {
+    private boolean closed;
+    private boolean handlerFailed;
+    private final LineHandler handler;
+    private final InputStream in;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private Stream(final InputStream in, final LineHandler handler) {
+      this.in = in;
+      this.handler = handler;
+    }
+
+    private void close() {
+      if (!this.closed) {
+        this.closed = true;
+        if (this.line.size() > 0) {
+          emit();
+        }
+        try {
+          this.in.close();
+        } catch (final IOException ex) {
+          // nothing more to read anyway
+        }
+      }
+    }
+
+    /**
+     * Reads what is available without blocking, at most one buffer unless
+     * the process has exited.
+     *
+     * @return true if anything was read
+     */
+    private boolean drain(final byte[] buf, final boolean exited) {
+      boolean read = false;
+      try {
+        int available;
+        while (!this.closed && (available = this.in.available()) > 0) {
+          final int count = this.in.read(buf, 0, Math.min(available, buf.length));
+          if (count < 0) {
+            close();
+            break;
+          }
+          split(buf, count);
+          read = true;
+          if (!exited) {
+            break;
+          }
+        }
+      } catch (final IOException ex) {
+        close();
+      }
+      return read;
+    }
+
+    private void emit() {
+      int length = this.line.size();
+      final byte[] bytes = this.line.toByteArray();
+      if (length > 0 && bytes[length - 1] == '\r') {
+        length--;
+      }
+      this.line.reset();
+      try {
+        this.handler.line(new String(bytes, 0, length, CHARSET));
+      } catch (final RuntimeException ex) {
+        //
+        // a failing line handler must not stop the pump, the
+        // stream is still drained so the process can exit
+        //
+        if (!this.handlerFailed) {
+          this.handlerFailed = true;
+          System.err.println("Cannot handle process output: " + ex);
+        }
+      }
+    }
+
+    private void split(final byte[] buf, final int count) {
+      int start = 0;
+      for (int i = 0; i < count; i++) {
+        if (buf[i] == '\n') {
+          this.line.write(buf, start, i - start);
+          emit();
+          start = i + 1;
+        }
+      }
+      this.line.write(buf, start, count - start);
+    }
+  }
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Charset of process output, as used by an InputStreamReader.
+   */
+  private static final Charset CHARSET = Charset.defaultCharset();
+
+  /**
+   * Longest sleep of a pump thread between polls while no output arrives.
+   */
+  private static final long MAX_IDLE_MILLIS = 4;
+
+  private static final Pump[] PUMPS = new Pump[Math.max(1,
+      Math.min(4, Runtime.getRuntime().availableProcessors() / 8))];
+
+  /**
+   * Starts delivering the output of a process.
+   *
+   * @param process
+   *          started process
+   * @param out
+   *          receives the lines of the standard output
+   * @param err
+   *          receives the lines of the standard error, or null if the
+   *          standard error is redirected to the standard output
+   * @return handle to wait for the process and its output
+   */
+  public static Handle pump(final Process process, final LineHandler out, final LineHandler err) {
+    final Entry entry = new Entry(process, out, err);
+    getPump().add(entry);
+    return entry.handle;
+  }
+
+  /**
+   * Returns the pump with the fewest processes, starting pumps on first use.
+   */
+  private static synchronized Pump getPump() {
+    Pump least = null;
+    for (int i = 0; i < PUMPS.length; i++) {
+      if (PUMPS[i] == null) {
+        PUMPS[i] = new Pump(i);
+        PUMPS[i].start();
+      }
+      if (least == null || PUMPS[i].size() < least.size()) {
+        least = PUMPS[i];
+      }
+    }
+    return least;
+  }
+
+  private ProcessOutputPump() {
+  }
+}
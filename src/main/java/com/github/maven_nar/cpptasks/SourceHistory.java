@@ -28,6 +28,7 @@ import java.io.IOException;
  * @author Curt Arnold
  */
 public final class SourceHistory {
+  private final/* final */long contentHash;
   private final/* final */long lastModified;
   private final/* final */String relativePath;
 
@@ -35,11 +36,22 @@ public final class SourceHistory {
    * Constructor
    */
   public SourceHistory(final String relativePath, final long lastModified) {
+    this(relativePath, lastModified, 0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param contentHash
+   *          hash of the source content, 0 if not known
+   */
+  public SourceHistory(final String relativePath, final long lastModified, final long contentHash) {
     if (relativePath == null) {
       throw new NullPointerException("relativePath");
     }
     this.relativePath = relativePath;
     this.lastModified = lastModified;
+    this.contentHash = contentHash;
   }
 
   public String getAbsolutePath(final File baseDir) {
@@ -50,6 +62,10 @@ public final class SourceHistory {
     return this.relativePath;
   }
 
+  public long getContentHash() {
+    return this.contentHash;
+  }
+
   public long getLastModified() {
     return this.lastModified;
   }
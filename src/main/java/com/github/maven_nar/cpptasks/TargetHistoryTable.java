@@ -26,10 +26,12 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -39,6 +41,7 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import com.github.maven_nar.cpptasks.compiler.CommandLineCompilerConfiguration;
 import com.github.maven_nar.cpptasks.compiler.ProcessorConfiguration;
 
 /**
@@ -53,24 +56,17 @@ public final class TargetHistoryTable {
    * SAX parse events
    */
   private class TargetHistoryTableHandler extends DefaultHandler {
-    private final File baseDir;
     private String config;
-    private final Hashtable<String, TargetHistory> history;
     private String output;
     private long outputLastModified;
     private final Vector<SourceHistory> sources = new Vector<>();
 
     /**
      * Constructor
-     *
-     * @param history
-     *          hashtable of TargetHistory keyed by output name
      */
-    private TargetHistoryTableHandler(final Hashtable<String, TargetHistory> history, final File baseDir) {
-      this.history = history;
+    private TargetHistoryTableHandler() {
       this.config = null;
       this.output = null;
-      this.baseDir = baseDir;
     }
 
     @Override
@@ -78,33 +74,12 @@ public final class TargetHistoryTable {
       //
       // if </target> then
       // create TargetHistory object and add to hashtable
-      // if corresponding output file exists and
-      // has the same timestamp
       //
       if (qName.equals("target")) {
         if (this.config != null && this.output != null) {
-          final File existingFile = new File(this.baseDir, this.output);
-          //
-          // if the corresponding files doesn't exist or has a
-          // different
-          // modification time, then discard this record
-          if (existingFile.exists()) {
-            //
-            // would have expected exact time stamps
-            // but have observed slight differences
-            // in return value for multiple evaluations of
-            // lastModified(). Check if times are within
-            // a second
-            final long existingLastModified = existingFile.lastModified();
-            if (!CUtil.isSignificantlyBefore(existingLastModified, this.outputLastModified)
-                && !CUtil.isSignificantlyAfter(existingLastModified, this.outputLastModified)) {
-              final SourceHistory[] sourcesArray = new SourceHistory[this.sources.size()];
-              this.sources.copyInto(sourcesArray);
-              final TargetHistory targetHistory = new TargetHistory(this.config, this.output, this.outputLastModified,
-                  sourcesArray);
-              this.history.put(this.output, targetHistory);
-            }
-          }
+          final SourceHistory[] sourcesArray = new SourceHistory[this.sources.size()];
+          this.sources.copyInto(sourcesArray);
+          putIfCurrent(this.config, this.output, this.outputLastModified, sourcesArray);
         }
         this.output = null;
         this.sources.setSize(0);
@@ -131,7 +106,9 @@ public final class TargetHistoryTable {
       if (qName.equals("source")) {
         final String sourceFile = atts.getValue("file");
         final long sourceLastModified = Long.parseLong(atts.getValue("lastModified"), 16);
-        this.sources.addElement(new SourceHistory(sourceFile, sourceLastModified));
+        final String hash = atts.getValue("hash");
+        final long contentHash = hash != null ? ContentHash.parse(hash) : 0;
+        this.sources.addElement(new SourceHistory(sourceFile, sourceLastModified, contentHash));
       } else {
         //
         // if <target> element,
@@ -155,20 +132,104 @@ public final class TargetHistoryTable {
     }
   }
 
+  /**
+   * Commits the table periodically while it is updated by the compile
+   * threads, so that they never wait for the history to be written.
+   */
+  private final class HistoryWriter extends Thread {
+    private final long interval;
+    private volatile boolean stop;
+
+    private HistoryWriter(final long interval) {
+      super("History writer " + TargetHistoryTable.this.outputDir.getName());
+      setDaemon(true);
+      this.interval = interval;
+    }
+
+    private void exit() {
+      this.stop = true;
+      interrupt();
+    }
+
+    @Override
+    public void run() {
+      while (!this.stop) {
+        try {
+          Thread.sleep(this.interval);
+          commit();
+        } catch (final InterruptedException ex) {
+          // exit() was called
+        } catch (final IOException ex) {
+          if (TargetHistoryTable.this.task != null) {
+            TargetHistoryTable.this.task.log("Error writing history: " + ex.toString());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Kind of the binary store, "HIST".
+   */
+  private static final int BINARY_KIND = 0x48495354;
+
+  /**
+   * Binary store table of targets: processor signature, output,
+   * lastModified, first source, source count.
+   */
+  private static final int BINARY_TARGETS = 0;
+
+  private static final int BINARY_TARGET_SIZE = 24;
+
+  /**
+   * Binary store table of sources: file, lastModified, hash.
+   */
+  private static final int BINARY_SOURCES = 1;
+
+  private static final int BINARY_SOURCE_SIZE = 20;
+
+  /**
+   * The binary alternative to history.xml.
+   */
+  private final File binaryFile;
+  /**
+   * Flag indicating whether the binary store is written instead of
+   * history.xml.
+   */
+  private final boolean binaryStore;
+  /**
+   * Flag indicating whether source content hashes are recorded and consulted
+   * when a source timestamp differs from its history.
+   */
+  private boolean contentHash;
   /**
    * Flag indicating whether the cache should be written back to file.
    */
-  private boolean dirty;
+  private volatile boolean dirty;
   /**
-   * a hashtable of TargetHistory's keyed by output file name
+   * a map of TargetHistory's keyed by output file name, updated concurrently
+   * by the compile threads
    */
-  private final Hashtable<String, TargetHistory> history = new Hashtable<>();
+  private final ConcurrentHashMap<String, TargetHistory> history = new ConcurrentHashMap<>();
   /**
    * The file the cache was loaded from.
    */
   private final/* final */File historyFile;
   private final/* final */File outputDir;
   private String outputDirPath;
+  /**
+   * Timestamp of the history when it was loaded, outputs older than this were
+   * not produced by the current step.
+   */
+  private final long stepStart;
+  /**
+   * Task used for logging background commit errors, may be null.
+   */
+  private final CCTask task;
+  /**
+   * The background commit thread, if running.
+   */
+  private HistoryWriter historyWriter;
 
   /**
    * Creates a target history table from history.xml in the output directory,
@@ -179,9 +240,24 @@ public final class TargetHistoryTable {
    * @param outputDir
    *          output directory for task
    */
-  public TargetHistoryTable(final CCTask task, final File outputDir) throws BuildException
+  public TargetHistoryTable(final CCTask task, final File outputDir) throws BuildException {
+    this(task, outputDir, false);
+  }
 
-  {
+  /**
+   * Creates a target history table from history.bin or history.xml in the
+   * output directory, whichever was written last, if it exists. Otherwise,
+   * initializes the history table empty.
+   *
+   * @param task
+   *          task used for logging history load errors
+   * @param outputDir
+   *          output directory for task
+   * @param binaryStore
+   *          if true, history.bin is written instead of history.xml
+   */
+  public TargetHistoryTable(final CCTask task, final File outputDir, final boolean binaryStore)
+      throws BuildException {
     if (outputDir == null) {
       throw new NullPointerException("outputDir");
     }
@@ -192,6 +268,7 @@ public final class TargetHistoryTable {
       throw new BuildException("Output directory does not exist");
     }
     this.outputDir = outputDir;
+    this.task = task;
     try {
       this.outputDirPath = outputDir.getCanonicalPath();
     } catch (final IOException ex) {
@@ -203,13 +280,27 @@ public final class TargetHistoryTable {
     // file does not exist, is zero-length or
     // last modified dates differ
     this.historyFile = new File(outputDir, "history.xml");
+    this.binaryFile = new File(outputDir, "history.bin");
+    this.binaryStore = binaryStore;
 
-    if (this.historyFile.exists()) {
+    if (isBinaryCurrent()) {
+      //
+      // rewritten whatever the format if it can not be read
+      //
+      this.dirty = true;
+      try {
+        loadBinary();
+        this.dirty = !binaryStore;
+      } catch (final IOException ex) {
+        task.log("Error reading history.bin: " + ex.toString());
+      }
+    } else if (this.historyFile.exists()) {
+      this.dirty = binaryStore;
       final SAXParserFactory factory = SAXParserFactory.newInstance();
       factory.setValidating(false);
       try {
         final SAXParser parser = factory.newSAXParser();
-        parser.parse(this.historyFile, new TargetHistoryTableHandler(this.history, outputDir));
+        parser.parse(this.historyFile, new TargetHistoryTableHandler());
       } catch (final Exception ex) {
         //
         // a failure on loading this history is not critical
@@ -237,26 +328,52 @@ public final class TargetHistoryTable {
         throw new BuildException("Can't create history file", ex);
       }
     }
+    this.stepStart = getTimestampFile().lastModified();
   }
 
-  public void commit() throws IOException {
+  /**
+   * Writes the history if it changed. Safe to call while the table is being
+   * updated: the snapshot written holds at least the updates made before the
+   * call and the table stays dirty for those made during it.
+   */
+  public synchronized void commit() throws IOException {
     //
     // if not dirty, no need to update file
     //
     if (this.dirty) {
-      //
-      // build (small) hashtable of config id's in history
-      //
-      final Hashtable<String, String> configs = new Hashtable<>(20);
-      Enumeration<TargetHistory> elements = this.history.elements();
-      while (elements.hasMoreElements()) {
-        final TargetHistory targetHistory = elements.nextElement();
-        final String configId = targetHistory.getProcessorConfiguration();
-        if (configs.get(configId) == null) {
-          configs.put(configId, configId);
+      this.dirty = false;
+      final ArrayList<TargetHistory> snapshot = new ArrayList<>(this.history.values());
+      try {
+        if (this.binaryStore) {
+          writeBinary(snapshot);
+        } else {
+          writeXml(snapshot);
         }
+      } catch (final IOException ex) {
+        this.dirty = true;
+        throw ex;
+      }
+    }
+  }
+
+  private void writeXml(final ArrayList<TargetHistory> snapshot) throws IOException {
+    //
+    // build (small) hashtable of config id's in history
+    //
+    final Hashtable<String, String> configs = new Hashtable<>(20);
+    for (final TargetHistory targetHistory : snapshot) {
+      final String configId = targetHistory.getProcessorConfiguration();
+      if (configs.get(configId) == null) {
+        configs.put(configId, configId);
       }
-      final FileOutputStream outStream = new FileOutputStream(this.historyFile);
+    }
+    //
+    // written to a temporary file first so that the history
+    // is replaced as a whole or not at all
+    //
+    final File tempFile = File.createTempFile("history", ".tmp", this.outputDir);
+    try {
+      final FileOutputStream outStream = new FileOutputStream(tempFile);
       OutputStreamWriter outWriter;
       //
       // early VM's don't support UTF-8 encoding
@@ -283,9 +400,7 @@ public final class TargetHistoryTable {
         buf.append(CUtil.xmlAttribEncode(configId));
         buf.append("\">\n");
         writer.write(buf.toString());
-        elements = this.history.elements();
-        while (elements.hasMoreElements()) {
-          final TargetHistory targetHistory = elements.nextElement();
+        for (final TargetHistory targetHistory : snapshot) {
           if (targetHistory.getProcessorConfiguration().equals(configId)) {
             buf.setLength(0);
             buf.append("      <target file=\"");
@@ -301,6 +416,10 @@ public final class TargetHistoryTable {
               buf.append(CUtil.xmlAttribEncode(sourceHistorie.getRelativePath()));
               buf.append("\" lastModified=\"");
               buf.append(Long.toHexString(sourceHistorie.getLastModified()));
+              if (sourceHistorie.getContentHash() != 0) {
+                buf.append("\" hash=\"");
+                buf.append(ContentHash.toString(sourceHistorie.getContentHash()));
+              }
               buf.append("\"/>\n");
               writer.write(buf.toString());
             }
@@ -311,8 +430,25 @@ public final class TargetHistoryTable {
       }
       writer.write("</history>\n");
       writer.close();
-      this.dirty = false;
+      CUtil.replaceFile(tempFile, this.historyFile);
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Returns the name of the file holding the debug information split from an
+   * object, null if the configuration does not split it.
+   */
+  private static String getSplitDebugName(final ProcessorConfiguration config, final String outputName) {
+    if (config instanceof CommandLineCompilerConfiguration) {
+      final String extension = ((CommandLineCompilerConfiguration) config).getSplitDebugExtension();
+      if (extension != null) {
+        final int dot = outputName.lastIndexOf('.');
+        return (dot > 0 ? outputName.substring(0, dot) : outputName) + extension;
+      }
     }
+    return null;
   }
 
   public TargetHistory get(final String configId, final String outputName) {
@@ -327,21 +463,114 @@ public final class TargetHistoryTable {
     return this.historyFile;
   }
 
+  /**
+   * Returns the file last written by a commit, or created if there was no
+   * history, whose timestamp marks the start of the current step.
+   */
+  private File getTimestampFile() {
+    return this.binaryStore && this.binaryFile.exists() ? this.binaryFile : this.historyFile;
+  }
+
+  /**
+   * Determines whether history.bin rather than history.xml should be read.
+   * The store written last is read so that enabling or disabling the binary
+   * store converts between the formats.
+   */
+  private boolean isBinaryCurrent() {
+    if (!this.binaryFile.exists()) {
+      return false;
+    }
+    if (!this.historyFile.exists()) {
+      return true;
+    }
+    final long binaryLastModified = this.binaryFile.lastModified();
+    final long xmlLastModified = this.historyFile.lastModified();
+    return binaryLastModified > xmlLastModified || binaryLastModified == xmlLastModified && this.binaryStore;
+  }
+
+  /**
+   * Checks whether a source whose timestamp differs from its history still has
+   * the recorded content.
+   */
+  private boolean isContentUnchanged(final File source, final SourceHistory sourceHistory) {
+    return this.contentHash && sourceHistory.getContentHash() != 0
+        && ContentHash.hashOrZero(source) == sourceHistory.getContentHash();
+  }
+
+  /**
+   * Reads history.bin. The sources of a target are only read if the target
+   * is kept.
+   */
+  private void loadBinary() throws IOException {
+    final BinaryStore.Reader reader = BinaryStore.open(this.binaryFile, BINARY_KIND);
+    try {
+      final int count = reader.getRecordCount(BINARY_TARGETS);
+      for (int i = 0; i < count; i++) {
+        final String output = reader.getString(reader.getInt(BINARY_TARGETS, i, 4));
+        final long outputLastModified = reader.getLong(BINARY_TARGETS, i, 8);
+        if (isCurrent(output, outputLastModified)) {
+          final int first = reader.getInt(BINARY_TARGETS, i, 16);
+          final SourceHistory[] sources = new SourceHistory[reader.getInt(BINARY_TARGETS, i, 20)];
+          for (int j = 0; j < sources.length; j++) {
+            sources[j] = new SourceHistory(reader.getString(reader.getInt(BINARY_SOURCES, first + j, 0)),
+                reader.getLong(BINARY_SOURCES, first + j, 4), reader.getLong(BINARY_SOURCES, first + j, 12));
+          }
+          this.history.put(output, new TargetHistory(reader.getString(reader.getInt(BINARY_TARGETS, i, 0)), output,
+              outputLastModified, sources));
+        }
+      }
+    } catch (final IndexOutOfBoundsException ex) {
+      throw new IOException("Corrupt " + this.binaryFile);
+    }
+  }
+
+  /**
+   * Checks whether an output still exists with the recorded timestamp.
+   */
+  private boolean isCurrent(final String output, final long outputLastModified) {
+    final File existingFile = new File(this.outputDir, output);
+    //
+    // if the corresponding files doesn't exist or has a
+    // different
+    // modification time, then discard this record
+    if (existingFile.exists()) {
+      //
+      // would have expected exact time stamps
+      // but have observed slight differences
+      // in return value for multiple evaluations of
+      // lastModified(). Check if times are within
+      // a second
+      final long existingLastModified = existingFile.lastModified();
+      return !CUtil.isSignificantlyBefore(existingLastModified, outputLastModified)
+          && !CUtil.isSignificantlyAfter(existingLastModified, outputLastModified);
+    }
+    return false;
+  }
+
+  public boolean isContentHash() {
+    return this.contentHash;
+  }
+
   public void markForRebuild(final Map<String, TargetInfo> targetInfos) {
     for (final TargetInfo targetInfo : targetInfos.values()) {
       markForRebuild(targetInfo);
     }
   }
 
-  // FREEHEP added synchronized
-  public synchronized void markForRebuild(final TargetInfo targetInfo) {
+  public void markForRebuild(final TargetInfo targetInfo) {
     //
     // if it must already be rebuilt, no need to check further
     //
     if (!targetInfo.getRebuild()) {
       final TargetHistory history = get(targetInfo.getConfiguration().toString(), targetInfo.getOutput().getName());
+      final String splitDebugName = getSplitDebugName(targetInfo.getConfiguration(), targetInfo.getOutput().getName());
       if (history == null) {
         targetInfo.mustRebuild();
+      } else if (splitDebugName != null && get(targetInfo.getConfiguration().toString(), splitDebugName) == null) {
+        //
+        // the debug information split from the object is missing
+        //
+        targetInfo.mustRebuild();
       } else {
         final SourceHistory[] sourceHistories = history.getSources();
         final File[] sources = targetInfo.getSources();
@@ -356,7 +585,9 @@ public final class TargetHistoryTable {
               sourceMap.put(source.getAbsolutePath(), source);
             }
           }
-          for (final SourceHistory sourceHistorie : sourceHistories) {
+          boolean touched = false;
+          for (int i = 0; i < sourceHistories.length; i++) {
+            final SourceHistory sourceHistorie = sourceHistories[i];
             //
             // relative file name, must absolutize it on output
             // directory
@@ -371,16 +602,92 @@ public final class TargetHistoryTable {
                 break;
               }
             }
-            if (match == null || match.lastModified() != sourceHistorie.getLastModified()) {
+            if (match == null) {
               targetInfo.mustRebuild();
               break;
             }
+            final long lastModified = match.lastModified();
+            if (lastModified != sourceHistorie.getLastModified()) {
+              //
+              // a touched source with the same content
+              // does not need to be rebuilt
+              //
+              if (!isContentUnchanged(match, sourceHistorie)) {
+                targetInfo.mustRebuild();
+                break;
+              }
+              sourceHistories[i] = new SourceHistory(sourceHistorie.getRelativePath(), lastModified,
+                  sourceHistorie.getContentHash());
+              touched = true;
+            }
+          }
+          //
+          // record the new timestamps so the content
+          // is not hashed again on the next build
+          //
+          if (touched && !targetInfo.getRebuild()) {
+            this.history.put(history.getOutput(), new TargetHistory(history.getProcessorConfiguration(),
+                history.getOutput(), history.getOutputLastModified(), sourceHistories));
+            this.dirty = true;
           }
         }
       }
     }
   }
 
+  /**
+   * Adds a history read from file if its output is current.
+   */
+  private void putIfCurrent(final String config, final String output, final long outputLastModified,
+      final SourceHistory[] sources) {
+    if (isCurrent(output, outputLastModified)) {
+      this.history.put(output, new TargetHistory(config, output, outputLastModified, sources));
+    }
+  }
+
+  /**
+   * Starts committing the table in the background every interval until
+   * {@link #stopBackgroundCommit()} is called.
+   *
+   * @param interval
+   *          milliseconds between commits
+   */
+  public synchronized void startBackgroundCommit(final long interval) {
+    if (this.historyWriter == null) {
+      this.historyWriter = new HistoryWriter(interval);
+      this.historyWriter.start();
+    }
+  }
+
+  /**
+   * Stops the background commits started by
+   * {@link #startBackgroundCommit(long)}, waiting for a commit in progress to
+   * finish. Does not commit pending updates.
+   */
+  public void stopBackgroundCommit() {
+    final HistoryWriter stopped;
+    synchronized (this) {
+      stopped = this.historyWriter;
+      this.historyWriter = null;
+    }
+    if (stopped != null) {
+      stopped.exit();
+      try {
+        stopped.join();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Enables recording of source content hashes, which are then consulted when
+   * a source timestamp differs from its history.
+   */
+  public void setContentHash(final boolean contentHash) {
+    this.contentHash = contentHash;
+  }
+
   public void update(final ProcessorConfiguration config, final String[] sources, final VersionInfo versionInfo) {
     final String configId = config.getIdentifier();
     final String[] onesource = new String[1];
@@ -390,50 +697,77 @@ public final class TargetHistoryTable {
       outputNames = config.getOutputFileNames(source, versionInfo);
       for (final String outputName : outputNames) {
         update(configId, outputName, onesource);
+        final String splitDebugName = getSplitDebugName(config, outputName);
+        if (splitDebugName != null) {
+          update(configId, splitDebugName, onesource);
+        }
       }
     }
   }
 
-  // FREEHEP added synchronized
-  private synchronized void update(final String configId, final String outputName, final String[] sources) {
+  private void update(final String configId, final String outputName, final String[] sources) {
     final File outputFile = new File(this.outputDir, outputName);
     //
     // if output file doesn't exist or predates the start of the
     // compile step (most likely a compilation error) then
     // do not write add a history entry
     //
-    if (outputFile.exists() && !CUtil.isSignificantlyBefore(outputFile.lastModified(), this.historyFile.lastModified())) {
-      this.dirty = true;
-      this.history.remove(outputName);
+    if (outputFile.exists() && !CUtil.isSignificantlyBefore(outputFile.lastModified(), this.stepStart)) {
       final SourceHistory[] sourceHistories = new SourceHistory[sources.length];
       for (int i = 0; i < sources.length; i++) {
         final File sourceFile = new File(sources[i]);
         final long lastModified = sourceFile.lastModified();
         final String relativePath = CUtil.getRelativePath(this.outputDirPath, sourceFile);
-        sourceHistories[i] = new SourceHistory(relativePath, lastModified);
+        final long contentHash = this.contentHash ? ContentHash.hashOrZero(sourceFile) : 0;
+        sourceHistories[i] = new SourceHistory(relativePath, lastModified, contentHash);
       }
       final TargetHistory newHistory = new TargetHistory(configId, outputName, outputFile.lastModified(),
           sourceHistories);
       this.history.put(outputName, newHistory);
+      this.dirty = true;
     }
   }
 
-  // FREEHEP added synchronized
-  public synchronized void update(final TargetInfo linkTarget) {
+  public void update(final TargetInfo linkTarget) {
     final File outputFile = linkTarget.getOutput();
     final String outputName = outputFile.getName();
     //
     // if output file doesn't exist or predates the start of the
     // compile or link step (most likely a compilation error) then
-    // do not write add a history entry
+    // do not write add a history entry, unless it was kept as up to date
     //
-    if (outputFile.exists() && !CUtil.isSignificantlyBefore(outputFile.lastModified(), this.historyFile.lastModified())) {
-      this.dirty = true;
-      this.history.remove(outputName);
-      final SourceHistory[] sourceHistories = linkTarget.getSourceHistories(this.outputDirPath);
+    if (outputFile.exists()
+        && (linkTarget.isOutputKept() || !CUtil.isSignificantlyBefore(outputFile.lastModified(), this.stepStart))) {
+      //
+      // with content hashes of the objects, recompiled objects
+      // with the same content do not cause a relink
+      //
+      final SourceHistory[] sourceHistories = linkTarget.getSourceHistories(this.outputDirPath, this.contentHash);
       final TargetHistory newHistory = new TargetHistory(linkTarget.getConfiguration().getIdentifier(), outputName,
           outputFile.lastModified(), sourceHistories);
       this.history.put(outputName, newHistory);
+      this.dirty = true;
+    }
+  }
+
+  /**
+   * Writes all histories to history.bin.
+   */
+  private void writeBinary(final ArrayList<TargetHistory> snapshot) throws IOException {
+    final BinaryStore.Writer writer = new BinaryStore.Writer(BINARY_KIND, BINARY_TARGET_SIZE, BINARY_SOURCE_SIZE);
+    for (final TargetHistory targetHistory : snapshot) {
+      final SourceHistory[] sourceHistories = targetHistory.getSources();
+      writer.putInt(BINARY_TARGETS, writer.putString(targetHistory.getProcessorConfiguration()));
+      writer.putInt(BINARY_TARGETS, writer.putString(targetHistory.getOutput()));
+      writer.putLong(BINARY_TARGETS, targetHistory.getOutputLastModified());
+      writer.putInt(BINARY_TARGETS, writer.getRecordCount(BINARY_SOURCES));
+      writer.putInt(BINARY_TARGETS, sourceHistories.length);
+      for (final SourceHistory sourceHistory : sourceHistories) {
+        writer.putInt(BINARY_SOURCES, writer.putString(sourceHistory.getRelativePath()));
+        writer.putLong(BINARY_SOURCES, sourceHistory.getLastModified());
+        writer.putLong(BINARY_SOURCES, sourceHistory.getContentHash());
+      }
     }
+    writer.write(this.binaryFile);
   }
 }
@@ -33,6 +33,8 @@ public final class TargetInfo {
   private boolean rebuild;
   private final/* final */File[] sources;
   private File[] sysSources;
+  private TargetHistory previousHistory;
+  private boolean outputKept;
 
   public TargetInfo(final ProcessorConfiguration config, final File[] sources, final File[] sysSources,
       final File output, boolean rebuild) {
@@ -90,6 +92,14 @@ public final class TargetInfo {
     return this.output;
   }
 
+  /**
+   * Returns the history of the last build of the output with the same
+   * configuration, or null if there is none or it was not looked up.
+   */
+  public TargetHistory getPreviousHistory() {
+    return this.previousHistory;
+  }
+
   public boolean getRebuild() {
     return this.rebuild;
   }
@@ -99,11 +109,20 @@ public final class TargetInfo {
    * last modified time) for the source[s] of this target
    */
   public SourceHistory[] getSourceHistories(final String basePath) {
+    return getSourceHistories(basePath, false);
+  }
+
+  /**
+   * Returns the histories of the sources, including their content hashes if
+   * requested.
+   */
+  public SourceHistory[] getSourceHistories(final String basePath, final boolean contentHash) {
     final SourceHistory[] histories = new SourceHistory[this.sources.length];
     for (int i = 0; i < this.sources.length; i++) {
       final String relativeName = CUtil.getRelativePath(basePath, this.sources[i]);
       final long lastModified = this.sources[i].lastModified();
-      histories[i] = new SourceHistory(relativeName, lastModified);
+      final long hash = contentHash ? ContentHash.hashOrZero(this.sources[i]) : 0;
+      histories[i] = new SourceHistory(relativeName, lastModified, hash);
     }
     return histories;
   }
@@ -134,7 +153,27 @@ public final class TargetInfo {
     return clone;
   }
 
+  /**
+   * Returns true if the output was found up to date when it was to be
+   * rebuilt, and kept as it is.
+   */
+  public boolean isOutputKept() {
+    return this.outputKept;
+  }
+
+  /**
+   * Records that the output was found up to date and kept as it is, so that
+   * its history is updated as if it had been rebuilt.
+   */
+  public void keepOutput() {
+    this.outputKept = true;
+  }
+
   public void mustRebuild() {
     this.rebuild = true;
   }
+
+  public void setPreviousHistory(final TargetHistory previousHistory) {
+    this.previousHistory = previousHistory;
+  }
 }
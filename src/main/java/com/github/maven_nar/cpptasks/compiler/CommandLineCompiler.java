@@ -26,14 +26,17 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
 import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.types.Commandline;
 import org.apache.tools.ant.types.Environment;
 import org.apache.commons.io.FilenameUtils;
 
 import com.github.maven_nar.cpptasks.CCTask;
 import com.github.maven_nar.cpptasks.CUtil;
 import com.github.maven_nar.cpptasks.CompilerDef;
+import com.github.maven_nar.cpptasks.CompilerWorkerPool;
 import com.github.maven_nar.cpptasks.OptimizationEnum;
 import com.github.maven_nar.cpptasks.ProcessorDef;
 import com.github.maven_nar.cpptasks.ProcessorParam;
@@ -81,6 +84,17 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
     this.env = env;
   }
 
+  /**
+   * Adds the arguments writing the debug information of an object to a
+   * separate file next to it.
+   *
+   * @return extension of that file, null if the compiler can not split the
+   *         debug information
+   */
+  protected String addSplitDebug(final Vector<String> args) {
+    return null;
+  }
+
   abstract protected void addImpliedArgs(Vector<String> args, boolean debug, boolean multithreaded, boolean exceptions,
       LinkType linkType, Boolean rtti, OptimizationEnum optimization);
 
@@ -277,10 +291,25 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
     }
   }
 
+  //
+  // processors are shared between tasks, which may run concurrently, so
+  // the settings of a task go on a copy owned by its configuration
+  //
   @Override
   protected CompilerConfiguration createConfiguration(final CCTask task, final LinkType linkType,
       final ProcessorDef[] baseDefs, final CompilerDef specificDef, final TargetDef targetPlatform,
       final VersionInfo versionInfo) {
+    final CommandLineCompiler copy;
+    try {
+      copy = (CommandLineCompiler) clone();
+    } catch (final CloneNotSupportedException e) {
+      throw new BuildException(e);
+    }
+    return copy.configure(task, linkType, baseDefs, specificDef, targetPlatform, versionInfo);
+  }
+
+  private CompilerConfiguration configure(final CCTask task, final LinkType linkType, final ProcessorDef[] baseDefs,
+      final CompilerDef specificDef, final TargetDef targetPlatform, final VersionInfo versionInfo) {
 
     this.prefix = specificDef.getCompilerPrefix();
     this.objDir = task.getObjdir();
@@ -330,6 +359,10 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
       final OptimizationEnum optimization = specificDef.getOptimization(defaultProviders, 1);
       this.addImpliedArgs(args, debug, multithreaded, exceptions, linkType, rtti, optimization);
     }
+    String splitDebugExtension = null;
+    if (specificDef.isSplitDebug() && specificDef.getDebug(baseDefs, 0)) {
+      splitDebugExtension = addSplitDebug(args);
+    }
 
     //
     // add all appropriate defines and undefines
@@ -432,9 +465,14 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
     
     compiler.setCommands(specificDef.getCommands());
     compiler.setDryRun(specificDef.isDryRun());
-
-    return new CommandLineCompilerConfiguration(compiler, configId, incPath, sysIncPath, envIncludePath,
-        includePathIdentifier.toString(), argArray, paramArray, rebuild, endArgs, path, specificDef.getCcache());
+    compiler.setWorkDir(specificDef.getWorkDir());
+    compiler.setGccFileAbsolutePath(specificDef.getGccFileAbsolutePath());
+
+    final CommandLineCompilerConfiguration config = new CommandLineCompilerConfiguration(compiler, configId, incPath,
+        sysIncPath, envIncludePath, includePathIdentifier.toString(), argArray, paramArray, rebuild, endArgs, path,
+        specificDef.getCcache());
+    config.setSplitDebugExtension(splitDebugExtension);
+    return config;
   }
 
   protected int getArgumentCountPerInputFile() {
@@ -574,6 +612,27 @@ public abstract class CommandLineCompiler extends AbstractCompiler {
     if(commands!=null)
       commands.add(cmdline);
     if (dryRun) return 0;
+    //
+    // workers share the environment they were started with,
+    // so compilers with an environment of their own run directly
+    //
+    final CompilerWorkerPool workers = task.getCompilerWorkers();
+    if (workers != null && !this.newEnvironment && (this.env == null || this.env.getVariablesVector().isEmpty())) {
+      task.log(Commandline.toString(cmdline), task.getCommandLogLevel());
+      final Semaphore coreBudget = task.getCoreBudget();
+      if (coreBudget != null) {
+        coreBudget.acquireUninterruptibly();
+      }
+      try {
+        return workers.run(task, workingDir, cmdline);
+      } catch (final IOException ex) {
+        throw new BuildException("Could not run " + cmdline[0] + " on a compiler worker: " + ex, task.getLocation());
+      } finally {
+        if (coreBudget != null) {
+          coreBudget.release();
+        }
+      }
+    }
     return CUtil.runCommand(task, workingDir, cmdline, this.newEnvironment, this.env);
   }
 
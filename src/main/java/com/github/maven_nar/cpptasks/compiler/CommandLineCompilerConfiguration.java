@@ -52,6 +52,7 @@ public final class CommandLineCompilerConfiguration implements CompilerConfigura
   private final/* final */boolean rebuild;
   private/* final */File[] sysIncludePath;
   private/* final */String commandPath;
+  private String splitDebugExtension;
 
   public CommandLineCompilerConfiguration(final CommandLineCompiler compiler, final String identifier,
       final File[] includePath, final File[] sysIncludePath, final File[] envIncludePath,
@@ -139,6 +140,7 @@ public final class CommandLineCompilerConfiguration implements CompilerConfigura
       this.args = base.args.clone();
     }
     this.commandPath = base.commandPath;
+    this.splitDebugExtension = base.splitDebugExtension;
   }
 
   @Override
@@ -271,6 +273,14 @@ public final class CommandLineCompilerConfiguration implements CompilerConfigura
     return this.isPrecompiledHeaderGeneration;
   }
 
+  /**
+   * Returns the extension of the file holding the debug information split
+   * from each object, null if it is kept in the object.
+   */
+  public String getSplitDebugExtension() {
+    return this.splitDebugExtension;
+  }
+
   public boolean isUseCcache() {
     return this.useCcache;
   }
@@ -285,6 +295,10 @@ public final class CommandLineCompilerConfiguration implements CompilerConfigura
     this.commandPath = commandPath;
   }
 
+  public final void setSplitDebugExtension(final String splitDebugExtension) {
+    this.splitDebugExtension = splitDebugExtension;
+  }
+
   @Override
   public String toString() {
     return this.identifier;
@@ -33,6 +33,7 @@ import com.github.maven_nar.cpptasks.LinkerDef;
 import com.github.maven_nar.cpptasks.ProcessorDef;
 import com.github.maven_nar.cpptasks.ProcessorParam;
 import com.github.maven_nar.cpptasks.TargetDef;
+import com.github.maven_nar.cpptasks.TargetInfo;
 import com.github.maven_nar.cpptasks.VersionInfo;
 import com.github.maven_nar.cpptasks.types.CommandLineArgument;
 import com.github.maven_nar.cpptasks.types.LibrarySet;
@@ -80,6 +81,11 @@ public abstract class CommandLineLinker extends AbstractLinker {
     // NB: Do nothing by default.
   }
 
+  protected void addFastLinker(final CCTask task, final String fastLinker, final String toolPath,
+      final Vector<String> args) {
+    // NB: Do nothing by default.
+  }
+
   protected void addFixed(final CCTask task, final Boolean fixed, final Vector<String> args) {
     // NB: Do nothing by default.
   }
@@ -128,10 +134,25 @@ public abstract class CommandLineLinker extends AbstractLinker {
     // NB: Do nothing by default.
   }
 
+  //
+  // processors are shared between tasks, which may run concurrently, so
+  // the settings of a task go on a copy owned by its configuration
+  //
   @Override
   protected LinkerConfiguration createConfiguration(final CCTask task, final LinkType linkType,
       final ProcessorDef[] baseDefs, final LinkerDef specificDef, final TargetDef targetPlatform,
       final VersionInfo versionInfo) {
+    final CommandLineLinker copy;
+    try {
+      copy = (CommandLineLinker) clone();
+    } catch (final CloneNotSupportedException e) {
+      throw new BuildException(e);
+    }
+    return copy.configure(task, linkType, baseDefs, specificDef, targetPlatform, versionInfo);
+  }
+
+  private LinkerConfiguration configure(final CCTask task, final LinkType linkType, final ProcessorDef[] baseDefs,
+      final LinkerDef specificDef, final TargetDef targetPlatform, final VersionInfo versionInfo) {
 
     final Vector<String> preargs = new Vector<>();
     final Vector<String> midargs = new Vector<>();
@@ -190,6 +211,7 @@ public abstract class CommandLineLinker extends AbstractLinker {
     addIncremental(task, specificDef.getIncremental(defaultProviders, 1), preargs);
     addFixed(task, specificDef.getFixed(defaultProviders, 1), preargs);
     addMap(task, specificDef.getMap(defaultProviders, 1), preargs);
+    addFastLinker(task, specificDef.getFastLinker(), specificDef.getToolPath(), preargs);
     addBase(task, specificDef.getBase(defaultProviders, 1), preargs);
     addStack(task, specificDef.getStack(defaultProviders, 1), preargs);
     addEntry(task, specificDef.getEntry(defaultProviders, 1), preargs);
@@ -209,6 +231,12 @@ public abstract class CommandLineLinker extends AbstractLinker {
         buf.append(argenum.nextElement());
       }
     }
+    if (specificDef.isThinArchive()) {
+      buf.append(" thin");
+    }
+    if (specificDef.isDebugPackage()) {
+      buf.append(" dwp");
+    }
     final String configId = buf.toString();
 
     final String[][] options = new String[][] {
@@ -240,8 +268,11 @@ public abstract class CommandLineLinker extends AbstractLinker {
     setDryRun(specificDef.isDryRun());
 
     // task.log("libnames:"+libnames.length, Project.MSG_VERBOSE);
-    return new CommandLineLinkerConfiguration(this, configId, options, paramArray, rebuild, map, debug, libnames,
-        startupObject, toolPath);
+    final CommandLineLinkerConfiguration config = new CommandLineLinkerConfiguration(this, configId, options,
+        paramArray, rebuild, map, debug, libnames, startupObject, toolPath);
+    config.setThinArchive(specificDef.isThinArchive());
+    config.setDebugPackage(specificDef.isDebugPackage());
+    return config;
   }
 
   /**
@@ -267,6 +298,13 @@ public abstract class CommandLineLinker extends AbstractLinker {
     }
   }
 
+  /**
+   * Returns the prefix of the linker command, null if none.
+   */
+  protected final String getPrefix() {
+    return this.prefix;
+  }
+
   protected abstract String getCommandFileSwitch(String commandFile);
 
   public String getCommandWithPath(final CommandLineLinkerConfiguration config) {
@@ -308,6 +346,13 @@ public abstract class CommandLineLinker extends AbstractLinker {
 
   protected abstract int getMaximumCommandLength();
 
+  /**
+   * Returns true if the command is run through libtool.
+   */
+  protected final boolean isLibtool() {
+    return this.isLibtool;
+  }
+
   @Override
   public String[] getOutputFileNames(final String baseName, final VersionInfo versionInfo) {
     return new String[] {
@@ -327,10 +372,30 @@ public abstract class CommandLineLinker extends AbstractLinker {
 
   protected abstract String[] getOutputFileSwitch(String outputFile);
 
+  /**
+   * Returns the output file switch for a configuration, by default the same
+   * for all configurations.
+   */
+  protected String[] getOutputFileSwitch(final CCTask task, final String outputFile,
+      final CommandLineLinkerConfiguration config) {
+    return getOutputFileSwitch(task, outputFile);
+  }
+
   protected String getStartupObject(final LinkType linkType) {
     return null;
   }
 
+  /**
+   * Links a target, by default with all its sources.
+   */
+  public void link(final CCTask task, final TargetInfo linkTarget, final CommandLineLinkerConfiguration config)
+      throws BuildException {
+    //
+    // AllSourcePath's include any syslibsets
+    //
+    link(task, linkTarget.getOutput(), linkTarget.getAllSourcePaths(), config);
+  }
+
   /**
    * Performs a link using a command line linker
    *
@@ -395,7 +460,7 @@ public abstract class CommandLineLinker extends AbstractLinker {
 
     final String[] preargs = config.getPreArguments();
     final String[] endargs = config.getEndArguments();
-    final String outputSwitch[] = getOutputFileSwitch(task, outputFile);
+    final String outputSwitch[] = getOutputFileSwitch(task, outputFile, config);
     int allArgsCount = preargs.length + 1 + outputSwitch.length + sourceFiles.length + endargs.length;
     if (this.isLibtool) {
       allArgsCount++;
@@ -43,6 +43,8 @@ public final class CommandLineLinkerConfiguration implements LinkerConfiguration
   private/* final */String commandPath;
   private final boolean debug;
   private final String startupObject;
+  private boolean thinArchive;
+  private boolean debugPackage;
 
   public CommandLineLinkerConfiguration(final CommandLineLinker linker, final String identifier, final String[][] args,
       final ProcessorParam[] params, final boolean rebuild, final boolean map, final boolean debug,
@@ -155,17 +157,36 @@ public final class CommandLineLinkerConfiguration implements LinkerConfiguration
 
   @Override
   public void link(final CCTask task, final TargetInfo linkTarget) throws BuildException {
-    //
-    // AllSourcePath's include any syslibsets
-    //
-    final String[] sourcePaths = linkTarget.getAllSourcePaths();
-    this.linker.link(task, linkTarget.getOutput(), sourcePaths, this);
+    this.linker.link(task, linkTarget, this);
+  }
+
+  /**
+   * Returns true if the split debug information of the objects should be
+   * packaged next to the output.
+   */
+  public boolean isDebugPackage() {
+    return this.debugPackage;
+  }
+
+  /**
+   * Returns true if an ar librarian should create a thin archive.
+   */
+  public boolean isThinArchive() {
+    return this.thinArchive;
   }
 
   public final void setCommandPath(final String commandPath) {
     this.commandPath = commandPath;
   }
 
+  public final void setDebugPackage(final boolean debugPackage) {
+    this.debugPackage = debugPackage;
+  }
+
+  public final void setThinArchive(final boolean thinArchive) {
+    this.thinArchive = thinArchive;
+  }
+
   @Override
   public String toString() {
     return this.identifier;
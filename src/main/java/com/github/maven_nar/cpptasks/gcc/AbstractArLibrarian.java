@@ -20,10 +20,21 @@
 package com.github.maven_nar.cpptasks.gcc;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.tools.ant.BuildException;
 
 import com.github.maven_nar.cpptasks.CCTask;
+import com.github.maven_nar.cpptasks.SourceHistory;
+import com.github.maven_nar.cpptasks.TargetHistory;
+import com.github.maven_nar.cpptasks.TargetInfo;
 import com.github.maven_nar.cpptasks.VersionInfo;
 import com.github.maven_nar.cpptasks.compiler.CommandLineLinker;
 import com.github.maven_nar.cpptasks.compiler.CommandLineLinkerConfiguration;
@@ -82,11 +93,30 @@ public abstract class AbstractArLibrarian extends CommandLineLinker {
     return GccProcessor.getOutputFileSwitch("rvs", outputFile);
   }
 
+  @Override
+  protected String[] getOutputFileSwitch(final CCTask task, final String outputFile,
+      final CommandLineLinkerConfiguration config) {
+    if (config.isThinArchive()) {
+      // the T modifier makes GNU ar create a thin archive
+      return GccProcessor.getOutputFileSwitch("rvsT", outputFile);
+    }
+    return super.getOutputFileSwitch(task, outputFile, config);
+  }
+
   @Override
   public boolean isCaseSensitive() {
     return true;
   }
 
+  @Override
+  public void link(final CCTask task, final TargetInfo linkTarget, final CommandLineLinkerConfiguration config)
+      throws BuildException {
+    if (task.isIncrementalArchive() && updateArchive(task, linkTarget, config)) {
+      return;
+    }
+    super.link(task, linkTarget, config);
+  }
+
   @Override
   public void link(final CCTask task, final File outputFile, final String[] sourceFiles,
       final CommandLineLinkerConfiguration config) throws BuildException {
@@ -101,4 +131,92 @@ public abstract class AbstractArLibrarian extends CommandLineLinker {
     //
     super.link(task, outputFile, sourceFiles, config);
   }
+
+  private void runAr(final CCTask task, final File outputFile, final String key, final List<String> members,
+      final CommandLineLinkerConfiguration config) throws BuildException {
+    final List<String> args = new ArrayList<>();
+    args.add(getCommandWithPath(config));
+    Collections.addAll(args, config.getPreArguments());
+    args.add(key);
+    args.add(outputFile.getName());
+    args.addAll(members);
+    final int retval = runCommand(task, outputFile.getParentFile(), args.toArray(new String[args.size()]));
+    if (retval != 0) {
+      throw new BuildException(getCommandWithPath(config) + " failed with return code " + retval, task.getLocation());
+    }
+  }
+
+  /**
+   * Updates an existing archive with the members that changed since its last
+   * link, as recorded in the link history: changed and added objects are
+   * replaced or added, removed ones deleted, and the symbol index is
+   * updated once at the end.
+   *
+   * @return false if the archive has to be created from scratch
+   */
+  private boolean updateArchive(final CCTask task, final TargetInfo linkTarget,
+      final CommandLineLinkerConfiguration config) throws BuildException {
+    final File outputFile = linkTarget.getOutput();
+    final String[] sourceFiles = linkTarget.getAllSourcePaths();
+    final TargetHistory previous = linkTarget.getPreviousHistory();
+    //
+    // members of thin archives are named by path, and an archive
+    // changed since the last link may hold anything
+    //
+    if (previous == null || config.isThinArchive() || isLibtool() || !outputFile.exists()
+        || outputFile.lastModified() != previous.getOutputLastModified()) {
+      return false;
+    }
+    final File outputDir = outputFile.getParentFile();
+
+    //
+    // members are named by the base name of their object,
+    // names must be unique to be replaced or deleted
+    //
+    final Map<String, SourceHistory> previousMembers = new HashMap<>();
+    for (final SourceHistory source : previous.getSources()) {
+      if (previousMembers.put(new File(source.getRelativePath()).getName(), source) != null) {
+        return false;
+      }
+    }
+    final Set<String> names = new HashSet<>();
+    final List<String> changed = new ArrayList<>();
+    final StringBuffer buf = new StringBuffer();
+    for (final String sourceFile : sourceFiles) {
+      final File file = new File(sourceFile);
+      if (!names.add(file.getName())) {
+        return false;
+      }
+      final SourceHistory source = previousMembers.remove(file.getName());
+      boolean same = source != null && source.getLastModified() == file.lastModified();
+      if (same) {
+        try {
+          same = source.getAbsolutePath(outputDir).equals(file.getCanonicalPath());
+        } catch (final IOException ex) {
+          same = false;
+        }
+      }
+      if (!same) {
+        changed.add(prepareFilename(buf, outputDir.getPath(), sourceFile));
+      }
+    }
+    final List<String> removed = new ArrayList<>(previousMembers.keySet());
+    Collections.sort(removed);
+
+    task.log("Updating " + outputFile.getName() + ": " + changed.size() + " member(s) replaced or added, "
+        + removed.size() + " removed");
+    if (!removed.isEmpty()) {
+      runAr(task, outputFile, "dS", removed, config);
+    }
+    if (!changed.isEmpty()) {
+      runAr(task, outputFile, "rS", changed, config);
+    }
+    if (removed.isEmpty() && changed.isEmpty()) {
+      // the archive is up to date, its history is updated all the same
+      linkTarget.keepOutput();
+    } else {
+      runAr(task, outputFile, "s", Collections.<String> emptyList(), config);
+    }
+    return true;
+  }
 }
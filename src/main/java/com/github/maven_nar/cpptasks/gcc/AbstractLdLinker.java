@@ -20,11 +20,19 @@
 package com.github.maven_nar.cpptasks.gcc;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 
 import com.github.maven_nar.cpptasks.CCTask;
 import com.github.maven_nar.cpptasks.CUtil;
 import com.github.maven_nar.cpptasks.VersionInfo;
+import com.github.maven_nar.cpptasks.compiler.CaptureStreamHandler;
 import com.github.maven_nar.cpptasks.compiler.CommandLineLinker;
 import com.github.maven_nar.cpptasks.compiler.CommandLineLinkerConfiguration;
 import com.github.maven_nar.cpptasks.compiler.LinkType;
@@ -37,6 +45,75 @@ import com.github.maven_nar.cpptasks.types.LibraryTypeEnum;
  * @author Curt Arnold
  */
 public abstract class AbstractLdLinker extends CommandLineLinker {
+  /**
+   * Faster linkers in order of preference with the text identifying them in
+   * their version output.
+   */
+  private static final String[][] FAST_LINKERS = new String[][] {
+      new String[] {
+          "mold", "mold "
+      }, new String[] {
+          "lld", "LLD "
+      }, new String[] {
+          "gold", "GNU gold"
+      }
+  };
+
+  /**
+   * Linkers found by command and requested linkers, an empty array if none
+   * is available.
+   */
+  private static final Map<String, String[]> fastLinkers = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the arguments selecting the first of the requested faster linkers
+   * that the compiler driver can run.
+   *
+   * @param command
+   *          compiler driver
+   * @param fastLinker
+   *          comma separated list of "mold", "lld" and "gold", or "auto" for
+   *          all of them in this order
+   * @return arguments, empty if none of the linkers is available
+   */
+  static String[] findFastLinker(final String command, final String fastLinker) {
+    final String key = command + '\n' + fastLinker;
+    String[] found = fastLinkers.get(key);
+    if (found == null) {
+      found = new String[0];
+      final String requested = "auto".equals(fastLinker) || "true".equals(fastLinker) ? "mold,lld,gold" : fastLinker;
+      search: for (final String name : requested.split(",")) {
+        for (final String[] candidate : FAST_LINKERS) {
+          if (!candidate[0].equals(name.trim())) {
+            continue;
+          }
+          //
+          // gold only uses several threads when asked,
+          // lld and mold do so by default
+          //
+          final String[] args = candidate[0].equals("gold") ? new String[] {
+              "-fuse-ld=gold", "-Wl,--threads"
+          } : new String[] {
+            "-fuse-ld=" + candidate[0]
+          };
+          final String[] cmdline = new String[args.length + 2];
+          cmdline[0] = command;
+          System.arraycopy(args, 0, cmdline, 1, args.length);
+          cmdline[args.length + 1] = "-Wl,--version";
+          final String[] output = CaptureStreamHandler.execute(cmdline).getStdout();
+          for (final String line : output != null ? output : new String[0]) {
+            if (line.startsWith(candidate[1]) || line.contains(" " + candidate[1])) {
+              found = args;
+              break search;
+            }
+          }
+        }
+      }
+      fastLinkers.put(key, found);
+    }
+    return found;
+  }
+
   private final String outputPrefix;
 
   protected AbstractLdLinker(final String command, final String identifierArg, final String[] extensions,
@@ -97,6 +174,39 @@ public abstract class AbstractLdLinker extends CommandLineLinker {
     }
   }
 
+  @Override
+  public void link(final CCTask task, final File outputFile, final String[] sourceFiles,
+      final CommandLineLinkerConfiguration config) throws BuildException {
+    super.link(task, outputFile, sourceFiles, config);
+    if (config.isDebugPackage()) {
+      createDebugPackage(task, outputFile, sourceFiles);
+    }
+  }
+
+  /**
+   * Selects a faster linker than the default one if one of those requested is
+   * available. The arguments become part of the configuration identifier, so
+   * a change of linker causes a relink.
+   */
+  @Override
+  protected void addFastLinker(final CCTask task, final String fastLinker, final String toolPath,
+      final Vector<String> args) {
+    if (fastLinker == null || fastLinker.isEmpty() || "false".equals(fastLinker)) {
+      return;
+    }
+    final String command = toolPath != null ? new File(toolPath, getCommand()).getPath() : getCommand();
+    final String[] found = findFastLinker(command, fastLinker);
+    if (found.length > 0) {
+      task.log("Linking with " + found[0].substring("-fuse-ld=".length()), Project.MSG_VERBOSE);
+    } else {
+      task.log("None of " + fastLinker + " is available to " + command + ", using the default linker",
+          Project.MSG_VERBOSE);
+    }
+    for (final String arg : found) {
+      args.addElement(arg);
+    }
+  }
+
   @Override
   protected void addIncremental(final CCTask task, final boolean incremental, final Vector<String> args) {
     if (incremental) {
@@ -376,4 +486,35 @@ public abstract class AbstractLdLinker extends CommandLineLinker {
     }
     return super.prepareArguments(task, outputDir, outputFile, finalSources, config);
   }
+
+  /**
+   * Collects the .dwo files of the objects into a debug package next to the
+   * output, named after it with a .dwp extension as expected by debuggers.
+   */
+  private void createDebugPackage(final CCTask task, final File outputFile, final String[] sourceFiles)
+      throws BuildException {
+    final List<String> cmdline = new ArrayList<>();
+    cmdline.add(getPrefix() != null ? getPrefix() + "dwp" : "dwp");
+    cmdline.add("-o");
+    cmdline.add(outputFile.getName() + ".dwp");
+    for (final String sourceFile : sourceFiles) {
+      final int dot = sourceFile.lastIndexOf('.');
+      if (dot > sourceFile.lastIndexOf(File.separatorChar)) {
+        final File dwo = new File(sourceFile.substring(0, dot) + ".dwo");
+        if (dwo.isFile()) {
+          cmdline.add(dwo.getAbsolutePath());
+        }
+      }
+    }
+    if (cmdline.size() == 3) {
+      task.log("No split debug information to package for " + outputFile.getName(), Project.MSG_VERBOSE);
+      return;
+    }
+    task.log("Packaging debug information of " + outputFile.getName() + " from " + (cmdline.size() - 3)
+        + " objects", Project.MSG_VERBOSE);
+    final int retval = runCommand(task, outputFile.getParentFile(), cmdline.toArray(new String[cmdline.size()]));
+    if (retval != 0) {
+      throw new BuildException(cmdline.get(0) + " failed with return code " + retval, task.getLocation());
+    }
+  }
 }
@@ -114,6 +114,15 @@ public final class GccCCompiler extends GccCompatibleCCompiler {
     this.isPICMeaningful = !System.getProperty("os.name").contains("Windows");
   }
 
+  /**
+   * Writes the debug information into a .dwo file next to the object.
+   */
+  @Override
+  protected String addSplitDebug(final Vector<String> args) {
+    args.addElement("-gsplit-dwarf");
+    return ".dwo";
+  }
+
   @Override
   public void addImpliedArgs(final Vector<String> args, final boolean debug, final boolean multithreaded,
       final boolean exceptions, final LinkType linkType, final Boolean rtti, final OptimizationEnum optimization) {
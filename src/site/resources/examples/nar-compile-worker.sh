@@ -0,0 +1,42 @@
+#!/bin/sh
+#
+# Example worker for the compilerWorker option of the NAR plugin.
+#
+# Reads requests on the standard input and runs each command line,
+# answering with its output and exit value:
+#
+#   request:  DIR <working directory>  (optional)
+#             ARG <argument>        (one per argument)
+#             RUN
+#   response: OUT <line>            (any number)
+#             EXIT <exit value>
+#
+# This example still starts the compiler for every request, so it is no
+# faster than running the compiler directly. Wrappers for toolchains with
+# a compile server, or with expensive set up of their own, answer the same
+# requests without doing so.
+#
+out=$(mktemp) || exit 1
+trap 'rm -f "$out"' EXIT
+dir=.
+set --
+while IFS= read -r line; do
+  case "$line" in
+    "DIR "*)
+      dir=${line#DIR }
+      ;;
+    "ARG "*)
+      set -- "$@" "${line#ARG }"
+      ;;
+    RUN)
+      (cd "$dir" && exec "$@") >"$out" 2>&1 </dev/null
+      code=$?
+      while IFS= read -r output || [ -n "$output" ]; do
+        printf 'OUT %s\n' "$output"
+      done <"$out"
+      printf 'EXIT %d\n' "$code"
+      dir=.
+      set --
+      ;;
+  esac
+done
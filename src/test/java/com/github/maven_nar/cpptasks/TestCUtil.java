@@ -21,6 +21,8 @@ package com.github.maven_nar.cpptasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Semaphore;
 
 import junit.framework.TestCase;
 
@@ -32,6 +34,42 @@ public class TestCUtil extends TestCase {
     super(name);
   }
 
+  /**
+   * Checks that concurrent commands of tasks sharing a core budget of one
+   * do not overlap.
+   */
+  public void testCoreBudget() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final File dir = Files.createTempDirectory("budget").toFile();
+    final Semaphore coreBudget = new Semaphore(1);
+    final int[] exitValues = new int[4];
+    final Thread[] threads = new Thread[exitValues.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      final CCTask task = new CCTask();
+      task.setCoreBudget(coreBudget);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          exitValues[index] = CUtil.runCommand(task, dir, new String[] {
+              "sh", "-c", "mkdir running || exit 3; sleep 0.1; rmdir running"
+          }, false, null);
+        }
+      };
+      threads[i].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    dir.delete();
+    for (final int exitValue : exitValues) {
+      assertEquals(0, exitValue);
+    }
+    assertEquals(1, coreBudget.availablePermits());
+  }
+
   public void testGetPathFromEnvironment() {
     final File[] files = CUtil.getPathFromEnvironment("LIB", ";");
     assertNotNull(files);
@@ -25,6 +25,7 @@ import java.io.IOException;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 
+import com.github.maven_nar.cpptasks.compiler.CommandLineCompiler;
 import com.github.maven_nar.cpptasks.compiler.CommandLineCompilerConfiguration;
 import com.github.maven_nar.cpptasks.compiler.Compiler;
 import com.github.maven_nar.cpptasks.compiler.LinkType;
@@ -323,6 +324,28 @@ public final class TestCompilerDef extends TestProcessorDef {
     assertEquals(1, includePaths.length);
   }
 
+  /**
+   * Tests that the settings of a configuration stay on a compiler of its
+   * own, rather than on the shared instance.
+   */
+  public void testConfigurationSettings() {
+    final CompilerDef dryRunDef = (CompilerDef) create();
+    dryRunDef.setProject(new Project());
+    dryRunDef.setClassname("com.github.maven_nar.cpptasks.gcc.GccCCompiler");
+    dryRunDef.setDryRun(true);
+    final CompilerDef compilerDef = (CompilerDef) create();
+    compilerDef.setProject(new Project());
+    compilerDef.setClassname("com.github.maven_nar.cpptasks.gcc.GccCCompiler");
+    final CommandLineCompiler dryRunCompiler = (CommandLineCompiler) ((CommandLineCompilerConfiguration) getConfiguration(
+        dryRunDef)).getCompiler();
+    final CommandLineCompiler compiler = (CommandLineCompiler) ((CommandLineCompilerConfiguration) getConfiguration(
+        compilerDef)).getCompiler();
+    assertNotSame(GccCCompiler.getInstance(), dryRunCompiler);
+    assertTrue(dryRunCompiler.isDryRun());
+    assertFalse(compiler.isDryRun());
+    assertFalse(GccCCompiler.getInstance().isDryRun());
+  }
+
   /**
    * Tests that setting classname to the Gcc compiler is effective.
    */
@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for CompilerDiagnostics.
+ */
+public class TestCompilerDiagnostics extends TestCase {
+  public TestCompilerDiagnostics(final String name) {
+    super(name);
+  }
+
+  public void testParse() {
+    final CompilerDiagnostics diagnostics = new CompilerDiagnostics();
+    CompilerDiagnostics.Diagnostic diagnostic = diagnostics.parse("src/main/c/a.c:12:5: warning: unused variable 'x'");
+    assertNotNull(diagnostic);
+    assertEquals("src/main/c/a.c", diagnostic.getFile());
+    assertEquals(12, diagnostic.getLine());
+    assertEquals(5, diagnostic.getColumn());
+    assertEquals("warning", diagnostic.getSeverity());
+    assertEquals("unused variable 'x'", diagnostic.getMessage());
+
+    diagnostic = diagnostics.parse("C:\\src\\b.c:3: fatal error: b.h: No such file or directory");
+    assertNotNull(diagnostic);
+    assertEquals("C:\\src\\b.c", diagnostic.getFile());
+    assertEquals(3, diagnostic.getLine());
+    assertEquals(0, diagnostic.getColumn());
+    assertEquals("error", diagnostic.getSeverity());
+
+    assertNotNull(diagnostics.parse("a.c:1:1: note: declared here"));
+    assertNull(diagnostics.parse("In file included from a.c:1:"));
+    assertNull(diagnostics.parse("a.c:(.text+0x5): undefined reference to `f'"));
+    // positions out of range are plain output
+    assertNull(diagnostics.parse("foo:99999999999: error: x"));
+    assertNull(diagnostics.parse("a.c:1:99999999999: warning: x"));
+
+    assertEquals(1, diagnostics.getErrorCount());
+    assertEquals(1, diagnostics.getWarningCount());
+    assertEquals(1, diagnostics.getNoteCount());
+    assertEquals(3, diagnostics.getDiagnostics().size());
+  }
+
+  public void testWriteSummary() throws Exception {
+    final CompilerDiagnostics diagnostics = new CompilerDiagnostics();
+    diagnostics.parse("a.c:2:3: error: expected ';' before \"}\" token");
+    final File dir = Files.createTempDirectory("diagnostics").toFile();
+    final File summary = new File(dir, "diagnostics.json");
+    try {
+      diagnostics.writeSummary(summary);
+      final String json = new String(Files.readAllBytes(summary.toPath()), StandardCharsets.UTF_8);
+      assertTrue(json.contains("\"errors\": 1"));
+      assertTrue(json.contains("\"warnings\": 0"));
+      assertTrue(json.contains("{\"file\": \"a.c\", \"line\": 2, \"column\": 3, \"severity\": \"error\", "
+          + "\"message\": \"expected ';' before \\\"}\\\" token\"}"));
+      assertEquals(1, dir.list().length);
+    } finally {
+      summary.delete();
+      dir.delete();
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for CompilerWorkerPool, using the reference worker and a fake
+ * compiler.
+ */
+public class TestCompilerWorkerPool extends TestCase {
+  /**
+   * Fake compiler: "fakecc src -o obj" copies src to obj and reports a
+   * warning, a source containing "error" fails.
+   */
+  private static final String FAKE_COMPILER = "#!/bin/sh\n" + "src=$1\n" + "obj=$3\n"
+      + "if grep -q error \"$src\"; then echo \"$src:1:1: error: bad source\"; exit 1; fi\n"
+      + "echo \"$src:2:3: warning: fake warning\"\n" + "cp \"$src\" \"$obj\"\n";
+
+  private File dir;
+
+  public TestCompilerWorkerPool(final String name) {
+    super(name);
+  }
+
+  private String[] getWorkerCommand() throws Exception {
+    final File worker = new File("src/site/resources/examples/nar-compile-worker.sh");
+    return new String[] {
+        "sh", worker.getPath()
+    };
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    this.dir = Files.createTempDirectory("workers").toFile();
+    Files.write(new File(this.dir, "fakecc").toPath(), FAKE_COMPILER.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (final File file : this.dir.listFiles()) {
+      file.delete();
+    }
+    this.dir.delete();
+  }
+
+  /**
+   * Checks that concurrent compile jobs reuse at most one worker each and
+   * that the objects, exit values and diagnostics come back.
+   */
+  public void testConcurrentCompiles() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final int threadCount = 4;
+    final int sourceCount = 40;
+    for (int i = 0; i < sourceCount; i++) {
+      final String content = i % 10 == 9 ? "error" : "source" + i;
+      Files.write(new File(this.dir, "s" + i + ".c").toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+    final CCTask task = new CCTask();
+    final CompilerWorkerPool pool = new CompilerWorkerPool(getWorkerCommand());
+    final List<Throwable> failures = new ArrayList<>();
+    final int[] exitValues = new int[sourceCount];
+    final Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      final int first = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = first; i < sourceCount; i += threadCount) {
+              exitValues[i] = pool.run(task, TestCompilerWorkerPool.this.dir, new String[] {
+                  "sh", "fakecc", "s" + i + ".c", "-o", "s" + i + ".o"
+              });
+            }
+          } catch (final Throwable ex) {
+            synchronized (failures) {
+              failures.add(ex);
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(new ArrayList<Throwable>(), failures);
+    assertTrue(pool.getWorkerCount() >= 1 && pool.getWorkerCount() <= threadCount);
+    for (int i = 0; i < sourceCount; i++) {
+      final File object = new File(this.dir, "s" + i + ".o");
+      if (i % 10 == 9) {
+        assertEquals(1, exitValues[i]);
+        assertFalse(object.exists());
+      } else {
+        assertEquals(0, exitValues[i]);
+        assertEquals("source" + i, new String(Files.readAllBytes(object.toPath()), StandardCharsets.UTF_8));
+      }
+    }
+    assertEquals(4, task.getDiagnostics().getErrorCount());
+    assertEquals(36, task.getDiagnostics().getWarningCount());
+    pool.close();
+    assertEquals(0, pool.getWorkerCount());
+  }
+
+  /**
+   * Checks that a worker exiting without a response fails the command and is
+   * not reused.
+   */
+  public void testWorkerExit() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final CompilerWorkerPool pool = new CompilerWorkerPool(new String[] {
+        "sh", "-c", "read line; exit 0"
+    });
+    try {
+      pool.run(new CCTask(), this.dir, new String[] {
+          "true"
+      });
+      fail("expected IOException");
+    } catch (final IOException ex) {
+      // expected
+    }
+    assertEquals(0, pool.getWorkerCount());
+  }
+
+  /**
+   * Checks that a command without working directory runs in that of the
+   * worker.
+   */
+  public void testNoWorkDir() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final File source = new File(this.dir, "a.c");
+    Files.write(source.toPath(), "source".getBytes(StandardCharsets.UTF_8));
+    final CompilerWorkerPool pool = new CompilerWorkerPool(getWorkerCommand());
+    try {
+      assertEquals(0, pool.run(new CCTask(), null, new String[] {
+          "sh", new File(this.dir, "fakecc").getPath(), source.getPath(), "-o", new File(this.dir, "a.o").getPath()
+      }));
+      assertTrue(new File(this.dir, "a.o").isFile());
+    } finally {
+      pool.close();
+    }
+  }
+
+  /**
+   * Checks that a worker stays resident: its set up runs once, however many
+   * commands it answers, and the commands it serves itself start nothing.
+   */
+  public void testResidentWorker() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    //
+    // a worker with expensive set up, compiling in process
+    //
+    final File started = new File(this.dir, "started");
+    final String worker = "echo started >> '" + started.getPath() + "'\n"
+        + "while IFS= read -r line; do\n"
+        + "  case \"$line\" in\n"
+        + "    \"ARG \"*) set -- \"$@\" \"${line#ARG }\" ;;\n"
+        + "    RUN) read -r content < \"$2\"; printf '%s\\n' \"$content\" > \"$4\";"
+        + " printf 'EXIT 0\\n'; set -- ;;\n"
+        + "  esac\n"
+        + "done\n";
+    final File script = new File(this.dir, "worker.sh");
+    Files.write(script.toPath(), worker.getBytes(StandardCharsets.UTF_8));
+
+    final CCTask task = new CCTask();
+    final CompilerWorkerPool pool = new CompilerWorkerPool(new String[] {
+        "sh", script.getPath()
+    });
+    try {
+      for (int i = 0; i < 10; i++) {
+        final File source = new File(this.dir, "r" + i + ".c");
+        Files.write(source.toPath(), ("source" + i).getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, pool.run(task, this.dir, new String[] {
+            "cc", source.getPath(), "-o", new File(this.dir, "r" + i + ".o").getPath()
+        }));
+        assertEquals("source" + i + "\n",
+            new String(Files.readAllBytes(new File(this.dir, "r" + i + ".o").toPath()), StandardCharsets.UTF_8));
+      }
+      assertEquals(1, pool.getWorkerCount());
+      assertEquals("started\n", new String(Files.readAllBytes(started.toPath()), StandardCharsets.UTF_8));
+    } finally {
+      pool.close();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for ContentHash
+ */
+public class TestContentHash extends TestCase {
+  private static long hash(final String content) throws IOException {
+    final File file = File.createTempFile("TestContentHash", ".tmp");
+    try {
+      Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+      return ContentHash.hash(file);
+    } finally {
+      file.delete();
+    }
+  }
+
+  public TestContentHash(final String name) {
+    super(name);
+  }
+
+  /**
+   * Checks against published XXH64 values, covering both the short input and
+   * the striped path.
+   */
+  public void testKnownValues() throws IOException {
+    assertEquals(0xEF46DB3751D8E999L, hash(""));
+    assertEquals(0x44BC2CF5AD770999L, hash("abc"));
+    assertEquals(0xFBCEA83C8A378BF1L, hash("Nobody inspects the spammish repetition"));
+  }
+
+  /**
+   * Checks that hashes survive formatting and parsing, including those with
+   * the high bit set.
+   */
+  public void testParse() {
+    final long[] values = {
+        0, 1, 0xEF46DB3751D8E999L, 0x44BC2CF5AD770999L, -1
+    };
+    for (final long value : values) {
+      assertEquals(value, ContentHash.parse(ContentHash.toString(value)));
+    }
+  }
+}
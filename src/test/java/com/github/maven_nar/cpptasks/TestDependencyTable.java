@@ -21,11 +21,19 @@ package com.github.maven_nar.cpptasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.xml.sax.SAXException;
 
+import com.github.maven_nar.cpptasks.compiler.CommandLineCompilerConfiguration;
+import com.github.maven_nar.cpptasks.compiler.CompilerConfiguration;
+import com.github.maven_nar.cpptasks.gcc.GccCCompiler;
+
 /**
  * DependencyTable tests
  *
@@ -73,4 +81,174 @@ public class TestDependencyTable extends TestXMLConsumer {
       deleteTmpFile("dependencies.xml");
     }
   }
+
+  /**
+   * Checks that an entry for a touched but unchanged file is kept, with its
+   * original timestamp, only when content hashes are enabled.
+   */
+  public void testTouchedContentHash() throws IOException, ParserConfigurationException, SAXException {
+    final File baseDir = Files.createTempDirectory("TestDependencyTable").toFile();
+    final File header = new File(baseDir, "foo.h");
+    final File dependenciesFile = new File(baseDir, "dependencies.xml");
+    try {
+      Files.write(header.toPath(), "int foo();\n".getBytes(StandardCharsets.US_ASCII));
+      final long hash = ContentHash.hash(header);
+      final long recorded = header.lastModified() - 10000;
+      Files.write(dependenciesFile.toPath(),
+          ("<dependencies><includePath signature=\"sig\"><source file=\"foo.h\" lastModified=\""
+              + Long.toHexString(recorded) + "\" hash=\"" + ContentHash.toString(hash)
+              + "\"/></includePath></dependencies>").getBytes(StandardCharsets.UTF_8));
+
+      final DependencyTable plain = new DependencyTable(baseDir);
+      plain.load();
+      assertNull(plain.getDependencyInfo("foo.h", "sig"));
+
+      final DependencyTable hashed = new DependencyTable(baseDir);
+      hashed.setContentHash(true);
+      hashed.load();
+      final DependencyInfo info = hashed.getDependencyInfo("foo.h", "sig");
+      assertNotNull(info);
+      assertEquals(recorded, info.getSourceLastModified());
+      assertEquals(header.lastModified(), info.getFileLastModified());
+
+      Files.write(header.toPath(), "int bar();\n".getBytes(StandardCharsets.US_ASCII));
+      header.setLastModified(recorded + 20000);
+      final DependencyTable changed = new DependencyTable(baseDir);
+      changed.setContentHash(true);
+      changed.load();
+      assertNull(changed.getDependencyInfo("foo.h", "sig"));
+    } finally {
+      header.delete();
+      dependenciesFile.delete();
+      baseDir.delete();
+    }
+  }
+
+  private static DependencyTable load(final File baseDir) throws IOException, ParserConfigurationException,
+      SAXException {
+    final DependencyTable table = new DependencyTable(baseDir);
+    table.load();
+    return table;
+  }
+
+  /**
+   * Checks that changes are appended to the journal, read back on load and
+   * folded into dependencies.xml when the journal is damaged.
+   */
+  public void testJournal() throws IOException, ParserConfigurationException, SAXException {
+    final File baseDir = Files.createTempDirectory("TestDependencyTable").toFile();
+    final File dependenciesFile = new File(baseDir, "dependencies.xml");
+    final File journalFile = new File(baseDir, "dependencies.journal");
+    final String[] names = {
+        "a.c", "b.c", "c.c", "x.h"
+    };
+    final CCTask task = new CCTask();
+    final CompilerConfiguration config = new CommandLineCompilerConfiguration(GccCCompiler.getInstance(), "dummy",
+        new File[0], new File[0], new File[0], "", new String[0], new ProcessorParam[0], false, new String[0]);
+    final String sig = config.getIncludePathIdentifier();
+    try {
+      for (final String name : names) {
+        Files.write(new File(baseDir, name).toPath(), "#include \"x.h\"\n".getBytes(StandardCharsets.US_ASCII));
+      }
+      DependencyTable table = load(baseDir);
+      table.parseIncludes(task, config, new File(baseDir, "a.c"));
+      table.commit(task);
+      assertTrue(dependenciesFile.exists());
+      assertFalse(journalFile.exists());
+      final byte[] snapshot = Files.readAllBytes(dependenciesFile.toPath());
+
+      table = load(baseDir);
+      table.parseIncludes(task, config, new File(baseDir, "b.c"));
+      table.commit(task);
+      assertTrue(journalFile.exists());
+      assertTrue(Arrays.equals(snapshot, Files.readAllBytes(dependenciesFile.toPath())));
+
+      table = load(baseDir);
+      assertEquals(Arrays.asList("x.h"),
+          Arrays.asList(table.getDependencyInfo("a.c", sig).getIncludes()));
+      assertNotNull(table.getDependencyInfo("b.c", sig));
+
+      //
+      // a record cut short by an interrupted build
+      //
+      Files.write(journalFile.toPath(), ("<includePath signature=\"" + sig + "\"><source file=\"c.c\"")
+          .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      table = load(baseDir);
+      assertNotNull(table.getDependencyInfo("a.c", sig));
+      assertNotNull(table.getDependencyInfo("b.c", sig));
+      assertNull(table.getDependencyInfo("c.c", sig));
+      table.parseIncludes(task, config, new File(baseDir, "c.c"));
+      table.commit(task);
+      assertFalse(journalFile.exists());
+
+      //
+      // a journal for an older generation is ignored
+      //
+      Files.write(journalFile.toPath(), ("<journal generation=\"1\"/><includePath signature=\"" + sig
+          + "\"><source file=\"x.h\" lastModified=\"" + Long.toHexString(new File(baseDir, "x.h").lastModified())
+          + "\"/></includePath>").getBytes(StandardCharsets.UTF_8));
+      table = load(baseDir);
+      assertNotNull(table.getDependencyInfo("a.c", sig));
+      assertNotNull(table.getDependencyInfo("b.c", sig));
+      assertNotNull(table.getDependencyInfo("c.c", sig));
+      assertNull(table.getDependencyInfo("x.h", sig));
+    } finally {
+      for (final String name : names) {
+        new File(baseDir, name).delete();
+      }
+      dependenciesFile.delete();
+      journalFile.delete();
+      baseDir.delete();
+    }
+  }
+
+  /**
+   * Checks that the binary store is read back and converted to and from
+   * dependencies.xml.
+   */
+  public void testBinaryStore() throws IOException, ParserConfigurationException, SAXException {
+    final File baseDir = Files.createTempDirectory("TestDependencyTable").toFile();
+    final File dependenciesFile = new File(baseDir, "dependencies.xml");
+    final File binaryFile = new File(baseDir, "dependencies.bin");
+    final File source = new File(baseDir, "a.c");
+    final File header = new File(baseDir, "x.h");
+    final CCTask task = new CCTask();
+    final CompilerConfiguration config = new CommandLineCompilerConfiguration(GccCCompiler.getInstance(), "dummy",
+        new File[0], new File[0], new File[0], "", new String[0], new ProcessorParam[0], false, new String[0]);
+    final String sig = config.getIncludePathIdentifier();
+    try {
+      Files.write(source.toPath(), "#include \"x.h\"\n".getBytes(StandardCharsets.US_ASCII));
+      Files.write(header.toPath(), new byte[0]);
+      DependencyTable table = new DependencyTable(baseDir);
+      table.setBinaryStore(true);
+      table.load();
+      table.parseIncludes(task, config, source);
+      table.commit(task);
+      assertTrue(binaryFile.exists());
+      assertFalse(dependenciesFile.exists());
+
+      table = new DependencyTable(baseDir);
+      table.setBinaryStore(true);
+      table.load();
+      final DependencyInfo info = table.getDependencyInfo("a.c", sig);
+      assertEquals(Arrays.asList("x.h"), Arrays.asList(info.getIncludes()));
+      assertEquals(source.lastModified(), info.getSourceLastModified());
+
+      //
+      // the binary store is converted by the first commit
+      // without it, even if nothing changed
+      //
+      table = load(baseDir);
+      table.commit(task);
+      assertTrue(dependenciesFile.exists());
+      table = load(baseDir);
+      assertEquals(Arrays.asList("x.h"), Arrays.asList(table.getDependencyInfo("a.c", sig).getIncludes()));
+    } finally {
+      source.delete();
+      header.delete();
+      dependenciesFile.delete();
+      binaryFile.delete();
+      baseDir.delete();
+    }
+  }
 }
@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.cpptasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for ProcessOutputPump.
+ */
+public class TestProcessOutputPump extends TestCase {
+  private static final class Lines implements ProcessOutputPump.LineHandler {
+    private final List<String> lines = new ArrayList<>();
+
+    @Override
+    public void line(final String line) {
+      this.lines.add(line);
+    }
+  }
+
+  public TestProcessOutputPump(final String name) {
+    super(name);
+  }
+
+  /**
+   * Checks that all output of concurrent processes is delivered in order, per
+   * stream, before their handles complete.
+   */
+  public void testConcurrentProcesses() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final int processCount = 8;
+    final int lineCount = 2000;
+    final Lines[] outs = new Lines[processCount];
+    final Lines[] errs = new Lines[processCount];
+    final ProcessOutputPump.Handle[] handles = new ProcessOutputPump.Handle[processCount];
+    for (int p = 0; p < processCount; p++) {
+      final Process process = new ProcessBuilder("sh", "-c", "i=0; while [ $i -lt " + lineCount
+          + " ]; do echo out$i; echo err$i 1>&2; i=$((i+1)); done; printf partial; exit " + p).start();
+      outs[p] = new Lines();
+      errs[p] = new Lines();
+      handles[p] = ProcessOutputPump.pump(process, outs[p], errs[p]);
+    }
+    for (int p = 0; p < processCount; p++) {
+      assertEquals(p, handles[p].waitFor());
+      assertEquals(lineCount + 1, outs[p].lines.size());
+      assertEquals(lineCount, errs[p].lines.size());
+      for (int i = 0; i < lineCount; i++) {
+        assertEquals("out" + i, outs[p].lines.get(i));
+        assertEquals("err" + i, errs[p].lines.get(i));
+      }
+      assertEquals("partial", outs[p].lines.get(lineCount));
+    }
+  }
+
+  /**
+   * Checks that a throwing line handler neither stops the output of a noisy
+   * process from being drained nor changes its exit value.
+   */
+  public void testThrowingHandler() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final int lineCount = 20000;
+    final Process process = new ProcessBuilder("sh", "-c", "i=0; while [ $i -lt " + lineCount
+        + " ]; do echo out$i; echo err$i 1>&2; i=$((i+1)); done; exit 3").start();
+    final Lines errs = new Lines();
+    final ProcessOutputPump.Handle handle = ProcessOutputPump.pump(process, new ProcessOutputPump.LineHandler() {
+      @Override
+      public void line(final String line) {
+        throw new IllegalStateException(line);
+      }
+    }, errs);
+    assertEquals(3, handle.waitFor());
+    assertEquals(lineCount, errs.lines.size());
+    assertEquals("err" + (lineCount - 1), errs.lines.get(lineCount - 1));
+  }
+}
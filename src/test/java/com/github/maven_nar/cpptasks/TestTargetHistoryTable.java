@@ -22,8 +22,11 @@ package com.github.maven_nar.cpptasks;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 
+import com.github.maven_nar.cpptasks.compiler.CommandLineCompilerConfiguration;
 import com.github.maven_nar.cpptasks.compiler.ProcessorConfiguration;
+import com.github.maven_nar.cpptasks.gcc.GccCCompiler;
 
 /**
  * Tests for TargetHistoryTable
@@ -158,4 +161,231 @@ public class TestTargetHistoryTable extends TestXMLConsumer {
 
     }
   }
+
+  /**
+   * Tests writing history.bin and converting it back to history.xml.
+   *
+   * @throws IOException
+   */
+  public void testBinaryStore() throws IOException {
+    final File outputDir = Files.createTempDirectory("TestTargetHistoryTable").toFile();
+    final File historyFile = new File(outputDir, "history.xml");
+    final File binaryFile = new File(outputDir, "history.bin");
+    final File compiledFile = new File(outputDir, "dummy.o");
+    try {
+      final TargetHistoryTable table = new TargetHistoryTable(null, outputDir, true);
+      new FileOutputStream(compiledFile).close();
+      table.update(new MockProcessorConfiguration(), new String[] {
+        "dummy.o"
+      }, null);
+      table.commit();
+      assertTrue("history.bin was not created", binaryFile.exists());
+      //
+      // history.xml is only the empty history
+      // created by the constructor
+      //
+      historyFile.setLastModified(binaryFile.lastModified() - 10000);
+
+      final TargetHistoryTable binary = new TargetHistoryTable(null, outputDir, true);
+      final TargetHistory history = binary.get("Mock Configuration", "dummy.o");
+      assertNotNull(history);
+      assertEquals(1, history.getSources().length);
+
+      final TargetHistoryTable xml = new TargetHistoryTable(null, outputDir, false);
+      assertNotNull(xml.get("Mock Configuration", "dummy.o"));
+      xml.commit();
+      assertTrue(new String(Files.readAllBytes(historyFile.toPath()), "UTF-8").contains("dummy.o"));
+    } finally {
+      compiledFile.delete();
+      historyFile.delete();
+      binaryFile.delete();
+      outputDir.delete();
+    }
+  }
+
+  /**
+   * Tests that a link is only redone for objects whose content changed.
+   *
+   * @throws IOException
+   */
+  public void testLinkContentHash() throws IOException {
+    final File outputDir = Files.createTempDirectory("TestTargetHistoryTable").toFile();
+    final File object = new File(outputDir, "a.o");
+    final File output = new File(outputDir, "liba.a");
+    try {
+      Files.write(object.toPath(), "object".getBytes("UTF-8"));
+      //
+      // link histories are looked up by the string form
+      // of the configuration
+      //
+      final ProcessorConfiguration config = new MockProcessorConfiguration() {
+        @Override
+        public String toString() {
+          return getIdentifier();
+        }
+      };
+      final TargetHistoryTable table = new TargetHistoryTable(null, outputDir);
+      table.setContentHash(true);
+      new FileOutputStream(output).close();
+      table.update(new TargetInfo(config, new File[] {
+        object
+      }, null, output, true));
+
+      //
+      // recompiled to the same content
+      //
+      object.setLastModified(object.lastModified() + 10000);
+      TargetInfo target = new TargetInfo(config, new File[] {
+        object
+      }, null, output, false);
+      table.markForRebuild(target);
+      assertFalse(target.getRebuild());
+
+      //
+      // recompiled to a different content
+      //
+      Files.write(object.toPath(), "changed".getBytes("UTF-8"));
+      object.setLastModified(object.lastModified() + 20000);
+      target = new TargetInfo(config, new File[] {
+        object
+      }, null, output, false);
+      table.markForRebuild(target);
+      assertTrue(target.getRebuild());
+    } finally {
+      object.delete();
+      output.delete();
+      new File(outputDir, "history.xml").delete();
+      outputDir.delete();
+    }
+  }
+
+  /**
+   * Tests that the history of an output kept as up to date is updated,
+   * although it predates the link step.
+   *
+   * @throws IOException
+   */
+  public void testKeptOutput() throws IOException {
+    final File outputDir = Files.createTempDirectory("TestTargetHistoryTable").toFile();
+    final File object = new File(outputDir, "a.o");
+    final File output = new File(outputDir, "liba.a");
+    try {
+      Files.write(object.toPath(), "object".getBytes("UTF-8"));
+      new FileOutputStream(output).close();
+      output.setLastModified(1000000);
+      final ProcessorConfiguration config = new MockProcessorConfiguration();
+      final TargetHistoryTable table = new TargetHistoryTable(null, outputDir);
+      final TargetInfo target = new TargetInfo(config, new File[] {
+        object
+      }, null, output, true);
+      table.update(target);
+      assertNull(table.get(config.getIdentifier(), output.getName()));
+
+      target.keepOutput();
+      table.update(target);
+      assertEquals(1000000, table.get(config.getIdentifier(), output.getName()).getOutputLastModified());
+    } finally {
+      object.delete();
+      output.delete();
+      outputDir.delete();
+    }
+  }
+
+  /**
+   * Tests that an object is compiled again if its split debug information is
+   * missing.
+   *
+   * @throws IOException
+   */
+  public void testSplitDebug() throws IOException {
+    final File outputDir = Files.createTempDirectory("TestTargetHistoryTable").toFile();
+    final File source = new File(outputDir, "a.c");
+    final CommandLineCompilerConfiguration config = new CommandLineCompilerConfiguration(GccCCompiler.getInstance(),
+        "dummy", new File[0], new File[0], new File[0], "", new String[0], new ProcessorParam[0], false,
+        new String[0]);
+    config.setSplitDebugExtension(".dwo");
+    final String objectName = config.getOutputFileNames(source.getPath(), null)[0];
+    final File object = new File(outputDir, objectName);
+    final File dwo = new File(outputDir, objectName.substring(0, objectName.length() - 2) + ".dwo");
+    try {
+      new FileOutputStream(source).close();
+      final TargetHistoryTable table = new TargetHistoryTable(null, outputDir);
+      new FileOutputStream(object).close();
+      new FileOutputStream(dwo).close();
+      table.update(config, new String[] {
+        source.getPath()
+      }, null);
+      table.commit();
+      assertNotNull(table.get("dummy", dwo.getName()));
+      TargetInfo target = new TargetInfo(config, new File[] {
+        source
+      }, null, object, false);
+      table.markForRebuild(target);
+      assertFalse(target.getRebuild());
+
+      dwo.delete();
+      target = new TargetInfo(config, new File[] {
+        source
+      }, null, object, false);
+      new TargetHistoryTable(null, outputDir).markForRebuild(target);
+      assertTrue(target.getRebuild());
+    } finally {
+      source.delete();
+      object.delete();
+      dwo.delete();
+      new File(outputDir, "history.xml").delete();
+      outputDir.delete();
+    }
+  }
+
+  /**
+   * Tests updates from several threads while the table is committed in the
+   * background.
+   *
+   * @throws Exception
+   */
+  public void testBackgroundCommit() throws Exception {
+    final File outputDir = Files.createTempDirectory("TestTargetHistoryTable").toFile();
+    final File historyFile = new File(outputDir, "history.xml");
+    final int threadCount = 4;
+    final int filesPerThread = 50;
+    try {
+      final TargetHistoryTable table = new TargetHistoryTable(null, outputDir);
+      for (int i = 0; i < threadCount * filesPerThread; i++) {
+        new FileOutputStream(new File(outputDir, "f" + i + ".o")).close();
+      }
+      table.startBackgroundCommit(1);
+      final Thread[] threads = new Thread[threadCount];
+      for (int t = 0; t < threadCount; t++) {
+        final int first = t * filesPerThread;
+        threads[t] = new Thread() {
+          @Override
+          public void run() {
+            for (int i = first; i < first + filesPerThread; i++) {
+              table.update(new MockProcessorConfiguration(), new String[] {
+                "f" + i + ".o"
+              }, null);
+            }
+          }
+        };
+        threads[t].start();
+      }
+      for (final Thread thread : threads) {
+        thread.join();
+      }
+      table.stopBackgroundCommit();
+      table.commit();
+
+      final TargetHistoryTable reloaded = new TargetHistoryTable(null, outputDir);
+      for (int i = 0; i < threadCount * filesPerThread; i++) {
+        assertNotNull("f" + i + ".o", reloaded.get("Mock Configuration", "f" + i + ".o"));
+      }
+    } finally {
+      for (int i = 0; i < threadCount * filesPerThread; i++) {
+        new File(outputDir, "f" + i + ".o").delete();
+      }
+      historyFile.delete();
+      outputDir.delete();
+    }
+  }
 }
@@ -19,7 +19,21 @@
  */
 package com.github.maven_nar.cpptasks.gcc;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.maven_nar.cpptasks.CCTask;
+import com.github.maven_nar.cpptasks.ProcessorParam;
+import com.github.maven_nar.cpptasks.SourceHistory;
+import com.github.maven_nar.cpptasks.TargetHistory;
+import com.github.maven_nar.cpptasks.TargetInfo;
+import com.github.maven_nar.cpptasks.compiler.LinkType;
+import com.github.maven_nar.cpptasks.compiler.Linker;
 import com.github.maven_nar.cpptasks.compiler.AbstractProcessor;
+import com.github.maven_nar.cpptasks.compiler.CommandLineLinkerConfiguration;
 import com.github.maven_nar.cpptasks.compiler.TestAbstractLinker;
 
 /**
@@ -28,6 +42,39 @@ import com.github.maven_nar.cpptasks.compiler.TestAbstractLinker;
  * @author CurtA
  */
 public class TestAbstractArLibrarian extends TestAbstractLinker {
+  /**
+   * Librarian recording its commands instead of running them.
+   */
+  private static final class RecordingLibrarian extends AbstractArLibrarian {
+    private final List<String> commands = new ArrayList<>();
+
+    private RecordingLibrarian() {
+      super("ar", "V", new String[] {
+        ".o"
+      }, new String[0], "lib", ".a", false, null);
+    }
+
+    @Override
+    public Linker getLinker(final LinkType type) {
+      return null;
+    }
+
+    @Override
+    protected int runCommand(final CCTask task, final File workingDir, final String[] cmdline) {
+      final List<String> args = new ArrayList<>(Arrays.asList(cmdline));
+      args.remove(0);
+      final StringBuilder command = new StringBuilder();
+      for (final String arg : args) {
+        if (command.length() > 0) {
+          command.append(' ');
+        }
+        command.append(arg.startsWith(workingDir.getPath()) ? new File(arg).getName() : arg);
+      }
+      this.commands.add(command.toString());
+      return 0;
+    }
+  }
+
   /**
    * Constructor
    * 
@@ -90,4 +137,96 @@ public class TestAbstractArLibrarian extends TestAbstractLinker {
     final String[] outputFiles = GccLibrarian.getInstance().getOutputFileNames("x", null);
     assertEquals("libx.a", outputFiles[0]);
   }
+
+  /**
+   * Tests the T modifier for thin archives
+   */
+  public void testThinArchive() {
+    final AbstractArLibrarian librarian = GccLibrarian.getInstance();
+    final CommandLineLinkerConfiguration config = new CommandLineLinkerConfiguration(librarian, "ar", new String[][] {
+        new String[] {
+          "-D"
+        }, new String[0]
+    }, new ProcessorParam[0], false, false, false, null, null);
+    final CCTask task = new CCTask();
+    String[] outputSwitch = librarian.getOutputFileSwitch(task, "libx.a", config);
+    assertEquals("rvs", outputSwitch[0]);
+    config.setThinArchive(true);
+    outputSwitch = librarian.getOutputFileSwitch(task, "libx.a", config);
+    assertEquals("rvsT", outputSwitch[0]);
+    assertEquals("libx.a", outputSwitch[1]);
+  }
+
+  public void testIncrementalArchive() throws IOException {
+    final File dir = File.createTempFile("incremental", "");
+    dir.delete();
+    dir.mkdir();
+    try {
+      final File a = new File(dir, "a.o");
+      final File b = new File(dir, "b.o");
+      final File c = new File(dir, "c.o");
+      final File d = new File(dir, "d.o");
+      final File lib = new File(dir, "libx.a");
+      for (final File file : new File[] {
+          a, b, c, d, lib
+      }) {
+        file.createNewFile();
+        file.setLastModified(1000000);
+      }
+      final RecordingLibrarian librarian = new RecordingLibrarian();
+      final CommandLineLinkerConfiguration config = new CommandLineLinkerConfiguration(librarian, "ar",
+          new String[][] {
+              new String[0], new String[0]
+          }, new ProcessorParam[0], false, false, false, null, null);
+      final CCTask task = new CCTask();
+      task.setIncrementalArchive(true);
+
+      //
+      // b.o changed, c.o was removed and d.o added
+      //
+      TargetInfo target = new TargetInfo(config, new File[] {
+          a, b, d
+      }, null, lib, true);
+      target.setPreviousHistory(new TargetHistory("ar", "libx.a", lib.lastModified(), new SourceHistory[] {
+          new SourceHistory("a.o", 1000000), new SourceHistory("b.o", 999000), new SourceHistory("c.o", 1000000)
+      }));
+      librarian.link(task, target, config);
+      assertEquals(Arrays.asList("dS libx.a c.o", "rS libx.a b.o d.o", "s libx.a"), librarian.commands);
+      assertFalse(target.isOutputKept());
+
+      //
+      // nothing changed, the archive is kept as it is
+      //
+      librarian.commands.clear();
+      target = new TargetInfo(config, new File[] {
+        a
+      }, null, lib, true);
+      target.setPreviousHistory(new TargetHistory("ar", "libx.a", lib.lastModified(), new SourceHistory[] {
+        new SourceHistory("a.o", 1000000)
+      }));
+      librarian.link(task, target, config);
+      assertTrue(librarian.commands.isEmpty());
+      assertEquals(1000000, lib.lastModified());
+      assertTrue(target.isOutputKept());
+
+      //
+      // the archive changed since the last link, so it is created again
+      //
+      librarian.commands.clear();
+      target = new TargetInfo(config, new File[] {
+        a
+      }, null, lib, true);
+      target.setPreviousHistory(new TargetHistory("ar", "libx.a", 999000, new SourceHistory[] {
+        new SourceHistory("a.o", 1000000)
+      }));
+      librarian.link(task, target, config);
+      assertEquals(1, librarian.commands.size());
+      assertEquals("rvs libx.a a.o", librarian.commands.get(0));
+    } finally {
+      for (final File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
 }
@@ -20,6 +20,9 @@
 package com.github.maven_nar.cpptasks.gcc;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Vector;
 
 import junit.framework.TestCase;
@@ -295,4 +298,29 @@ public class TestAbstractLdLinker extends TestCase {
     assertEquals("cart", rc[1]);
     assertEquals("dart", rc[2]);
   }
+
+  /**
+   * Checks the selection of a faster linker with a compiler driver knowing
+   * lld and gold only.
+   */
+  public void testFindFastLinker() throws IOException {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final File driver = File.createTempFile("fake-gcc", ".sh");
+    try {
+      Files.write(driver.toPath(), ("#!/bin/sh\n" + "case \"$1\" in\n"
+          + "  -fuse-ld=lld) echo \"LLD 17.0.6 (compatible with GNU linkers)\" ;;\n"
+          + "  -fuse-ld=gold) echo \"GNU gold (GNU Binutils 2.40) 1.16\" ;;\n"
+          + "  *) echo \"cannot find ld\" >&2; exit 1 ;;\n" + "esac\n").getBytes("UTF-8"));
+      driver.setExecutable(true);
+      final String command = driver.getPath();
+      assertEquals(Arrays.asList("-fuse-ld=lld"), Arrays.asList(AbstractLdLinker.findFastLinker(command, "auto")));
+      assertEquals(Arrays.asList("-fuse-ld=gold", "-Wl,--threads"),
+          Arrays.asList(AbstractLdLinker.findFastLinker(command, "mold, gold")));
+      assertEquals(0, AbstractLdLinker.findFastLinker(command, "mold").length);
+    } finally {
+      driver.delete();
+    }
+  }
 }
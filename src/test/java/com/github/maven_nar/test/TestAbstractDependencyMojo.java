@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.test;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+
+import com.github.maven_nar.AOL;
+import com.github.maven_nar.AbstractDependencyMojo;
+import com.github.maven_nar.AbstractNarMojo;
+import com.github.maven_nar.AttachedNarArtifact;
+import com.github.maven_nar.Library;
+import com.github.maven_nar.NarArtifact;
+import com.github.maven_nar.NarInfo;
+import com.github.maven_nar.NarTestUnpackMojo;
+
+/**
+ * Tests for the attached nars AbstractDependencyMojo resolves.
+ */
+public class TestAbstractDependencyMojo extends TestCase {
+  private static final class UnpackMojo extends NarTestUnpackMojo {
+    private List<String> getExcludes(final List<AttachedNarArtifact> dependencies) {
+      return Arrays.asList(getUnpackExcludes(dependencies));
+    }
+  }
+
+  private static void set(final Object mojo, final String name, final Object value) throws Exception {
+    final Field field = AbstractNarMojo.class.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(mojo, value);
+  }
+
+  private static AbstractDependencyMojo createMojo(final String packaging) throws Exception {
+    final MavenProject project = new MavenProject();
+    project.setPackaging(packaging);
+    final AbstractDependencyMojo mojo = new UnpackMojo();
+    set(mojo, "mavenProject", project);
+    set(mojo, "aolId", new AOL("amd64-Linux-gpp"));
+    return mojo;
+  }
+
+  private static NarArtifact createDependency(final String binding, final String... types) throws Exception {
+    final NarInfo narInfo = new NarInfo("g", "a", "1.0", new SystemStreamLog());
+    narInfo.setBinding(null, binding);
+    narInfo.setNar(null, "noarch", "g:a:nar:noarch");
+    for (final String type : types) {
+      narInfo.setNar(null, type, "g:a:nar:${aol}-" + type);
+    }
+    final DefaultArtifact artifact = new DefaultArtifact("g", "a", "1.0", "compile", "nar", null,
+        new DefaultArtifactHandler("nar"));
+    artifact.setFile(new File("repository/g/a/1.0/a-1.0.nar"));
+    return new NarArtifact(artifact, narInfo);
+  }
+
+  private static List<String> getClassifiers(final AbstractDependencyMojo mojo, final NarArtifact dependency)
+      throws Exception {
+    final List<String> classifiers = new ArrayList<>();
+    for (final AttachedNarArtifact artifact : mojo.getAllAttachedNarArtifacts(
+        Collections.singletonList(dependency), null)) {
+      classifiers.add(artifact.getClassifier());
+    }
+    return classifiers;
+  }
+
+  public void testSharedAndJniForJarProject() throws Exception {
+    // a jar project loads the libraries of its dependencies, whatever their
+    // binding
+    final NarArtifact dependency = createDependency(Library.SHARED, Library.SHARED, Library.JNI, Library.STATIC);
+    final List<String> classifiers = getClassifiers(createMojo("jar"), dependency);
+    assertTrue(classifiers.toString(), classifiers.contains("amd64-Linux-gpp-" + Library.SHARED));
+    assertTrue(classifiers.toString(), classifiers.contains("amd64-Linux-gpp-" + Library.JNI));
+    assertFalse(classifiers.toString(), classifiers.contains("amd64-Linux-gpp-" + Library.STATIC));
+    assertTrue(classifiers.toString(), classifiers.contains("noarch"));
+
+    // types the dependency does not ship are skipped
+    final NarArtifact staticOnly = createDependency(Library.STATIC, Library.STATIC);
+    assertEquals(2, getClassifiers(createMojo("jar"), staticOnly).size());
+  }
+
+  public void testBindingOnlyForNarProject() throws Exception {
+    final NarArtifact dependency = createDependency(Library.SHARED, Library.SHARED, Library.JNI, Library.STATIC);
+    final List<String> classifiers = getClassifiers(createMojo("nar"), dependency);
+    assertEquals(classifiers.toString(), 2, classifiers.size());
+    assertTrue(classifiers.toString(), classifiers.contains("amd64-Linux-gpp-" + Library.SHARED));
+  }
+
+  private static List<AttachedNarArtifact> createNars(final String... classifiers) throws Exception {
+    final List<AttachedNarArtifact> nars = new ArrayList<>();
+    for (final String classifier : classifiers) {
+      nars.add(new AttachedNarArtifact("g", "a", "1.0", "compile", "nar", classifier, false, new File(
+          "repository/g/a/1.0/a-1.0.nar")));
+    }
+    return nars;
+  }
+
+  public void testUnpackExcludesFollowBindings() throws Exception {
+    final UnpackMojo nar = (UnpackMojo) createMojo("nar");
+    List<String> excludes = nar.getExcludes(createNars("noarch", "amd64-Linux-gpp-shared",
+        "amd64-Linux-gpp-shared-debug"));
+    assertTrue(excludes.toString(), excludes.contains("lib/*/static/**"));
+    assertFalse(excludes.toString(), excludes.contains("lib/*/shared/**"));
+    assertTrue(excludes.toString(), excludes.contains("bin/**"));
+    assertFalse(excludes.toString(), excludes.contains("include/**"));
+
+    excludes = nar.getExcludes(createNars("noarch", "amd64-Linux-gpp-static", "amd64-Linux-gpp-executable"));
+    assertFalse(excludes.toString(), excludes.contains("lib/*/static/**"));
+    assertTrue(excludes.toString(), excludes.contains("lib/*/shared/**"));
+    assertTrue(excludes.toString(), excludes.contains("lib/*/jni/**"));
+    assertFalse(excludes.toString(), excludes.contains("bin/**"));
+
+    // nothing is compiled against the dependencies of a jar project
+    excludes = ((UnpackMojo) createMojo("jar")).getExcludes(createNars("noarch", "amd64-Linux-gpp-static",
+        "amd64-Linux-gpp-jni"));
+    assertTrue(excludes.toString(), excludes.contains("lib/*/static/**"));
+    assertFalse(excludes.toString(), excludes.contains("lib/*/jni/**"));
+    assertTrue(excludes.toString(), excludes.contains("include/**"));
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.IOUtil;
+
+import com.github.maven_nar.DebugInfo;
+
+/**
+ * Tests for DebugInfo, using gcc and objcopy when available.
+ */
+public class TestDebugInfo extends TestCase {
+  private File dir;
+
+  private static String run(final File workDir, final String... command) throws IOException, InterruptedException {
+    final Process process = new ProcessBuilder(command).directory(workDir).redirectErrorStream(true).start();
+    final String output = new String(IOUtil.toByteArray(process.getInputStream()), StandardCharsets.UTF_8);
+    if (process.waitFor() != 0) {
+      throw new IOException(command[0] + " failed: " + output);
+    }
+    return output;
+  }
+
+  private static void delete(final File file) {
+    final File[] files = file.listFiles();
+    if (files != null && !Files.isSymbolicLink(file.toPath())) {
+      for (final File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private boolean hasToolchain() {
+    if (File.separatorChar == '\\') {
+      return false;
+    }
+    try {
+      run(this.dir, "gcc", "--version");
+      run(this.dir, "objcopy", "--version");
+      return true;
+    } catch (final Exception e) {
+      return false;
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    this.dir = Files.createTempDirectory("debug").toFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(this.dir);
+  }
+
+  public void testSplit() throws Exception {
+    if (!hasToolchain()) {
+      return;
+    }
+    final File lib = new File(this.dir, "nar/lib/shared");
+    lib.mkdirs();
+    Files.write(new File(lib, "a.c").toPath(), "int f(void) { return 42; }\n".getBytes(StandardCharsets.UTF_8));
+    run(lib, "gcc", "-g", "-shared", "-fPIC", "a.c", "-o", "liba.so.1");
+    Files.createSymbolicLink(new File(lib, "liba.so").toPath(), new File("liba.so.1").toPath());
+    final File source = new File(lib, "a.c");
+    final File binary = new File(lib, "liba.so.1");
+    assertTrue(DebugInfo.hasDebugSections(binary));
+    assertFalse(DebugInfo.hasDebugSections(source));
+
+    final File stripped = new File(this.dir, "stripped");
+    final File debug = new File(this.dir, "debug");
+    assertEquals(1,
+        DebugInfo.split(new File(this.dir, "nar"), stripped, debug, "objcopy", new SystemStreamLog()));
+
+    // the build output is left untouched
+    assertTrue(DebugInfo.hasDebugSections(binary));
+
+    final File strippedBinary = new File(stripped, "lib/shared/liba.so.1");
+    final File debugFile = new File(debug, "lib/shared/liba.so.1.debug");
+    assertFalse(DebugInfo.hasDebugSections(strippedBinary));
+    assertTrue(strippedBinary.canExecute());
+    assertTrue(DebugInfo.hasDebugSections(debugFile));
+    assertTrue(new File(stripped, "lib/shared/a.c").isFile());
+    assertTrue(Files.isSymbolicLink(new File(stripped, "lib/shared/liba.so").toPath()));
+    assertFalse(new File(debug, "lib/shared/a.c").exists());
+    assertTrue(run(this.dir, "objcopy", "--dump-section", ".gnu_debuglink=" + new File(this.dir, "link").getPath(),
+        strippedBinary.getPath(), new File(this.dir, "scratch").getPath()).isEmpty());
+    assertTrue(new String(Files.readAllBytes(new File(this.dir, "link").toPath()), StandardCharsets.US_ASCII)
+        .startsWith("liba.so.1.debug\0"));
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import junit.framework.TestCase;
+
+import com.github.maven_nar.DirectorySync;
+
+/**
+ * Tests for DirectorySync.
+ */
+public class TestDirectorySync extends TestCase {
+  private File dir;
+
+  private static void delete(final File file) {
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (final File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static String read(final File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  private static File write(final File file, final String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    this.dir = Files.createTempDirectory("sync").toFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(this.dir);
+  }
+
+  public final void testSync() throws Exception {
+    final File src = new File(this.dir, "src");
+    final File dst = new File(this.dir, "dst");
+    write(new File(src, "a.h"), "a");
+    final File b = write(new File(src, "sub/b.h"), "b");
+    write(new File(src, "sub/b.h~"), "backup");
+    write(new File(src, "CVS/Entries"), "cvs");
+    write(new File(src, "lib/c.a"), "c");
+
+    DirectorySync sync = new DirectorySync(src, dst);
+    sync.setExcludes("**/*~");
+    DirectorySync.Result result = sync.sync();
+    assertEquals(3, result.getCopied());
+    assertEquals(0, result.getSkipped());
+    assertEquals("b", read(new File(dst, "sub/b.h")));
+    assertFalse(new File(dst, "sub/b.h~").exists());
+    assertFalse(new File(dst, "CVS").exists());
+    assertEquals(b.lastModified(), new File(dst, "sub/b.h").lastModified());
+
+    // nothing changed
+    result = sync.sync();
+    assertEquals(0, result.getCopied());
+    assertEquals(3, result.getSkipped());
+
+    // a changed file is copied again
+    write(b, "bb");
+    result = sync.sync();
+    assertEquals(1, result.getCopied());
+    assertEquals(2, result.getSkipped());
+    assertEquals("bb", read(new File(dst, "sub/b.h")));
+
+    // same size and content, only touched
+    Files.setLastModifiedTime(b.toPath(), FileTime.fromMillis(b.lastModified() + 10000));
+    sync.setCompareContent(true);
+    result = sync.sync();
+    assertEquals(0, result.getCopied());
+    assertEquals(3, result.getSkipped());
+    assertEquals(b.lastModified(), new File(dst, "sub/b.h").lastModified());
+
+    // only the included files
+    sync = new DirectorySync(src, new File(this.dir, "libs"));
+    sync.setIncludes("**/*.a");
+    result = sync.sync();
+    assertEquals(1, result.getCopied());
+    assertTrue(new File(this.dir, "libs/lib/c.a").isFile());
+    assertFalse(new File(this.dir, "libs/a.h").exists());
+  }
+
+  public final void testHardLinks() throws Exception {
+    final File src = new File(this.dir, "src");
+    final File dst = new File(this.dir, "dst");
+    final File a = write(new File(src, "a.h"), "a");
+    write(new File(src, "sub/b.h"), "b");
+
+    final DirectorySync sync = new DirectorySync(src, dst);
+    sync.setHardLinks(true);
+    sync.setThreads(1);
+    DirectorySync.Result result = sync.sync();
+    assertEquals(2, result.getLinked() + result.getCopied());
+    if (result.getLinked() == 0) {
+      // no hard links on this file system
+      return;
+    }
+    assertEquals(2, result.getLinked());
+    assertTrue(Files.isSameFile(a.toPath(), new File(dst, "a.h").toPath()));
+
+    result = sync.sync();
+    assertEquals(2, result.getSkipped());
+  }
+
+  public final void testMissingSource() throws Exception {
+    try {
+      new DirectorySync(new File(this.dir, "missing"), new File(this.dir, "dst")).sync();
+      fail("Missing source directory accepted");
+    } catch (final IOException e) {
+      // expected
+    }
+  }
+}
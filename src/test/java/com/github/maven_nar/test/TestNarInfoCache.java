@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+
+import com.github.maven_nar.NarInfoCache;
+
+/**
+ * Tests for NarInfoCache.
+ */
+public class TestNarInfoCache extends TestCase {
+  private static final String ENTRY = "META-INF/nar/g/a/nar.properties";
+
+  private File dir;
+
+  private static void writeNar(final File nar, final String entry, final String content) throws Exception {
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(nar))) {
+      out.putNextEntry(new ZipEntry(entry));
+      out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+      out.closeEntry();
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    this.dir = Files.createTempDirectory("narinfo").toFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    final File[] files = this.dir.listFiles();
+    for (int i = 0; files != null && i < files.length; i++) {
+      files[i].delete();
+    }
+    this.dir.delete();
+  }
+
+  public void testGetProperties() throws Exception {
+    final NarInfoCache cache = new NarInfoCache();
+    final File nar = new File(this.dir, "a.nar");
+    writeNar(nar, ENTRY, "libs.binding=shared\n");
+    final Properties properties = cache.getProperties(nar, ENTRY);
+    assertEquals("shared", properties.getProperty("libs.binding"));
+    assertSame(properties, cache.getProperties(nar, ENTRY));
+
+    // installed again during the build
+    writeNar(nar, ENTRY, "libs.binding=static\n");
+    nar.setLastModified(nar.lastModified() + 2000);
+    assertEquals("static", cache.getProperties(nar, ENTRY).getProperty("libs.binding"));
+
+    final File other = new File(this.dir, "other.nar");
+    writeNar(other, "META-INF/nar/g/other/nar.properties", "");
+    assertNull(cache.getProperties(other, ENTRY));
+    final File corrupt = new File(this.dir, "corrupt.nar");
+    Files.write(corrupt.toPath(), "corrupt".getBytes(StandardCharsets.US_ASCII));
+    assertNull(cache.getProperties(corrupt, ENTRY));
+  }
+
+  public void testSessionScope() {
+    final DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+    assertSame(NarInfoCache.get(session), NarInfoCache.get(session));
+    assertNotSame(NarInfoCache.get(session), NarInfoCache.get(new DefaultRepositorySystemSession()));
+    assertNotSame(NarInfoCache.get(null), NarInfoCache.get(null));
+  }
+}
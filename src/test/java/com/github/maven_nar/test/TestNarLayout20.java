@@ -29,12 +29,14 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 
+import com.github.maven_nar.AOL;
 import com.github.maven_nar.AbstractNarLayout;
 import com.github.maven_nar.Library;
 import com.github.maven_nar.NarFileLayout;
 import com.github.maven_nar.NarFileLayout10;
 import com.github.maven_nar.NarLayout;
 import com.github.maven_nar.NarLayout20;
+import com.github.maven_nar.NarUnpackStore;
 
 /**
  * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
@@ -108,4 +110,20 @@ public class TestNarLayout20 extends TestCase {
     Assert.assertEquals(new File(this.baseDir, this.fileLayout.getLibDirectory(this.aol, this.type)),
         this.layout.getLibDirectory(this.baseDir, null, null, this.aol, this.type));
   }
+
+  public final void testRejectsNarLayout21Options() throws Exception {
+    try {
+      this.layout.attachNars(this.baseDir, null, null, null, false, "objcopy");
+      fail("separate debug nars were accepted");
+    } catch (final MojoExecutionException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("NarLayout21"));
+    }
+    try {
+      this.layout.unpackNar(this.baseDir, null, new File("a-1.0-noarch.nar"), "MacOSX", "g++", new AOL(this.aol),
+          true, new NarUnpackStore(new File(this.baseDir, "store"), false, this.log), null);
+      fail("the unpack store was accepted");
+    } catch (final MojoExecutionException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("NarLayout21"));
+    }
+  }
 }
@@ -20,6 +20,14 @@
 package com.github.maven_nar.test;
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.Assert;
 import junit.framework.TestCase;
@@ -28,6 +36,10 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.manager.ArchiverManager;
 
 import com.github.maven_nar.AbstractNarLayout;
 import com.github.maven_nar.Library;
@@ -41,6 +53,64 @@ import com.github.maven_nar.NarLayout21;
  * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
  */
 public class TestNarLayout21 extends TestCase {
+  /**
+   * An archiver manager whose archivers record the nars they create and
+   * write a stand-in nar file.
+   */
+  private static ArchiverManager createArchiverManager(final List<String> archived) {
+    return (ArchiverManager) Proxy.newProxyInstance(TestNarLayout21.class.getClassLoader(), new Class<?>[] {
+      ArchiverManager.class
+    }, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        final File[] destFile = new File[1];
+        return Proxy.newProxyInstance(TestNarLayout21.class.getClassLoader(), new Class<?>[] {
+          Archiver.class
+        }, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getName().equals("setDestFile")) {
+              destFile[0] = (File) args[0];
+            } else if (method.getName().equals("createArchive")) {
+              Files.write(destFile[0].toPath(), "nar".getBytes(StandardCharsets.UTF_8));
+              archived.add(destFile[0].getName());
+            }
+            return null;
+          }
+        });
+      }
+    });
+  }
+
+  private static MavenProjectHelper createProjectHelper(final List<String> attached) {
+    return (MavenProjectHelper) Proxy.newProxyInstance(TestNarLayout21.class.getClassLoader(), new Class<?>[] {
+      MavenProjectHelper.class
+    }, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (method.getName().equals("attachArtifact")) {
+          attached.add((String) args[2]);
+        }
+        return null;
+      }
+    });
+  }
+
+  private static void delete(final File file) {
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (final File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static void write(final File file, final String content) throws Exception {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
   private NarFileLayout fileLayout;
 
   private Log log;
@@ -119,4 +189,109 @@ public class TestNarLayout21 extends TestCase {
         + File.separator + this.fileLayout.getLibDirectory(this.aol, this.type)),
         this.layout.getLibDirectory(this.baseDir, this.artifactId, this.version, this.aol, this.type));
   }
+
+  public final void testGetNarUnpackDirectory() {
+    final String name = this.artifactId + "-" + this.version + "-" + this.aol + "-" + this.type;
+    Assert.assertEquals(new File(this.baseDir, name),
+        this.layout.getNarUnpackDirectory(this.baseDir, new File(name + ".nar")));
+    // debug nars share the directory of their binaries
+    Assert.assertEquals(new File(this.baseDir, name),
+        this.layout.getNarUnpackDirectory(this.baseDir, new File(name + "-debug.nar")));
+  }
+
+  public final void testIncrementalPackaging() throws Exception {
+    final File target = Files.createTempDirectory("package").toFile();
+    try {
+      final MavenProject project = new MavenProject();
+      project.setArtifactId("a");
+      project.setVersion("1.0");
+      project.getBuild().setDirectory(target.getPath());
+      project.getBuild().setFinalName("a-1.0");
+      final File narDir = new File(target, "nar");
+      write(new File(narDir, "a-1.0-noarch/include/a.h"), "header");
+      final File lib = new File(narDir, "a-1.0-amd64-Linux-gpp-shared/lib/amd64-Linux-gpp/shared/liba.so");
+      write(lib, "library");
+
+      final List<String> archived = new ArrayList<>();
+      final List<String> attached = new ArrayList<>();
+      this.layout.attachNars(narDir, createArchiverManager(archived), createProjectHelper(attached), project, true,
+          null);
+      assertEquals(2, archived.size());
+      assertEquals(2, attached.size());
+
+      // unchanged, and rewritten with the same content
+      archived.clear();
+      attached.clear();
+      write(lib, "library");
+      assertTrue(lib.setLastModified(lib.lastModified() + 10000));
+      this.layout.attachNars(narDir, createArchiverManager(archived), createProjectHelper(attached), project, true,
+          null);
+      assertTrue(archived.isEmpty());
+      assertEquals(2, attached.size());
+
+      // only the changed nar is archived again
+      write(lib, "library 2");
+      this.layout.attachNars(narDir, createArchiverManager(archived), createProjectHelper(attached), project, true,
+          null);
+      assertEquals(1, archived.size());
+      assertEquals("a-1.0-amd64-Linux-gpp-shared.nar", archived.get(0));
+
+      // as is a nar modified after its manifest
+      archived.clear();
+      final File nar = new File(target, "a-1.0-noarch.nar");
+      assertTrue(nar.setLastModified(nar.lastModified() + 10000));
+      this.layout.attachNars(narDir, createArchiverManager(archived), createProjectHelper(attached), project, true,
+          null);
+      assertEquals(1, archived.size());
+      assertEquals("a-1.0-noarch.nar", archived.get(0));
+
+      // and all of them without incremental packaging
+      archived.clear();
+      this.layout.attachNars(narDir, createArchiverManager(archived), createProjectHelper(attached), project, false,
+          null);
+      assertEquals(2, archived.size());
+    } finally {
+      delete(target);
+    }
+  }
+
+  public final void testIncrementalPackagingPermissions() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final File target = Files.createTempDirectory("package").toFile();
+    try {
+      final MavenProject project = new MavenProject();
+      project.setArtifactId("a");
+      project.setVersion("1.0");
+      project.getBuild().setDirectory(target.getPath());
+      project.getBuild().setFinalName("a-1.0");
+      final File narDir = new File(target, "nar");
+      final File tool = new File(narDir, "a-1.0-amd64-Linux-gpp-executable/bin/amd64-Linux-gpp/a");
+      write(tool, "tool");
+      Files.setPosixFilePermissions(tool.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+      final long lastModified = tool.lastModified();
+
+      final List<String> archived = new ArrayList<>();
+      final List<String> attached = new ArrayList<>();
+      this.layout.attachNars(narDir, createArchiverManager(archived), createProjectHelper(attached), project, true,
+          null);
+      assertEquals(1, archived.size());
+
+      // a file made executable keeps its content and modification time
+      archived.clear();
+      Files.setPosixFilePermissions(tool.toPath(), PosixFilePermissions.fromString("rwxr-xr-x"));
+      assertEquals(lastModified, tool.lastModified());
+      this.layout.attachNars(narDir, createArchiverManager(archived), createProjectHelper(attached), project, true,
+          null);
+      assertEquals(1, archived.size());
+
+      archived.clear();
+      this.layout.attachNars(narDir, createArchiverManager(archived), createProjectHelper(attached), project, true,
+          null);
+      assertTrue(archived.isEmpty());
+    } finally {
+      delete(target);
+    }
+  }
 }
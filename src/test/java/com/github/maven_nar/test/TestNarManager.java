@@ -0,0 +1,453 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.UnArchiver;
+import org.codehaus.plexus.archiver.manager.ArchiverManager;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+
+import com.github.maven_nar.AOL;
+import com.github.maven_nar.AttachedNarArtifact;
+import com.github.maven_nar.NarLayout21;
+import com.github.maven_nar.NarManager;
+import com.github.maven_nar.NarUnpackStore;
+
+/**
+ * Tests the concurrent resolution of attached nars against a file based
+ * stand-in for a remote repository and their concurrent unpacking.
+ */
+public class TestNarManager extends TestCase {
+  private File dir;
+
+  private static void delete(final File file) {
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (final File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static File createNar(final File dir, final String name, final String... entries) throws Exception {
+    final File nar = new File(dir, name + ".nar");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(nar))) {
+      for (final String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(name.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+    return nar;
+  }
+
+  /**
+   * Returns an archiver manager whose unarchivers extract zip files slowly,
+   * recording the order in which the files were extracted and the largest
+   * number of concurrent extractions.
+   */
+  private static ArchiverManager createArchiverManager(final List<String> extracted, final AtomicInteger maxRunning) {
+    final AtomicInteger running = new AtomicInteger();
+    return (ArchiverManager) Proxy.newProxyInstance(TestNarManager.class.getClassLoader(), new Class<?>[] {
+      ArchiverManager.class
+    }, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        final File[] files = new File[2];
+        final FileSelector[][] selectors = new FileSelector[1][];
+        return Proxy.newProxyInstance(TestNarManager.class.getClassLoader(), new Class<?>[] {
+          UnArchiver.class
+        }, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getName().equals("setSourceFile")) {
+              files[0] = (File) args[0];
+            } else if (method.getName().equals("setDestDirectory")) {
+              files[1] = (File) args[0];
+            } else if (method.getName().equals("setFileSelectors")) {
+              selectors[0] = (FileSelector[]) args[0];
+            } else if (method.getName().equals("extract")) {
+              final int count = running.incrementAndGet();
+              synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), count));
+              }
+              try {
+                Thread.sleep(100);
+                extract(files[0], files[1], selectors[0]);
+                synchronized (extracted) {
+                  extracted.add(files[0].getName());
+                }
+              } finally {
+                running.decrementAndGet();
+              }
+            }
+            return null;
+          }
+        });
+      }
+    });
+  }
+
+  private static void extract(final File zip, final File dir, final FileSelector[] selectors) throws Exception {
+    try (ZipInputStream in = new ZipInputStream(new FileInputStream(zip))) {
+      ZipEntry entry = in.getNextEntry();
+      if (entry == null) {
+        throw new ArchiverException("Corrupt " + zip);
+      }
+      for (; entry != null; entry = in.getNextEntry()) {
+        if (!isSelected(entry.getName(), selectors)) {
+          continue;
+        }
+        final File file = new File(dir, entry.getName());
+        file.getParentFile().mkdirs();
+        Files.copy(in, file.toPath());
+      }
+    }
+  }
+
+  private static boolean isSelected(final String name, final FileSelector[] selectors) throws Exception {
+    final FileInfo info = (FileInfo) Proxy.newProxyInstance(TestNarManager.class.getClassLoader(), new Class<?>[] {
+      FileInfo.class
+    }, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (method.getName().equals("getName")) {
+          return name;
+        }
+        return method.getName().equals("isFile") || method.getName().equals("isExisting");
+      }
+    });
+    for (int i = 0; selectors != null && i < selectors.length; i++) {
+      if (!selectors[i].isSelected(info)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    this.dir = Files.createTempDirectory("resolve").toFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(this.dir);
+  }
+
+  public void testResolveAll() throws Exception {
+    final File remote = new File(this.dir, "remote");
+    final File local = new File(this.dir, "local");
+    remote.mkdirs();
+    local.mkdirs();
+    final List<Artifact> artifacts = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      final Artifact artifact = new AttachedNarArtifact("g", "a" + i, "1.0", "compile", "nar",
+          "amd64-Linux-gpp-shared", false, new File(local, "a" + i + ".jar"));
+      artifacts.add(artifact);
+      // the second and the sixth nar are missing
+      if (i != 1 && i != 5) {
+        Files.write(new File(remote, artifact.getFile().getName()).toPath(),
+            artifact.getArtifactId().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final ArtifactResolver resolver = (ArtifactResolver) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] {
+          ArtifactResolver.class
+        }, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final Artifact artifact = (Artifact) args[0];
+            final int count = running.incrementAndGet();
+            synchronized (maxRunning) {
+              maxRunning.set(Math.max(maxRunning.get(), count));
+            }
+            try {
+              // the first missing nar fails last
+              Thread.sleep(artifact.getArtifactId().equals("a1") ? 400 : 100);
+              final File source = new File(remote, artifact.getFile().getName());
+              if (!source.exists()) {
+                throw new ArtifactNotFoundException("not in the stand-in repository", artifact);
+              }
+              Files.copy(source.toPath(), artifact.getFile().toPath());
+              return null;
+            } finally {
+              running.decrementAndGet();
+            }
+          }
+        });
+
+    final Map<Artifact, Exception> failures = NarManager.resolveAll(artifacts,
+        Collections.emptyList(), resolver, null, 3, new SystemStreamLog());
+
+    assertTrue(maxRunning.get() > 1);
+    assertTrue(maxRunning.get() <= 3);
+    final List<Artifact> failed = new ArrayList<>(failures.keySet());
+    assertEquals(2, failed.size());
+    assertSame(artifacts.get(1), failed.get(0));
+    assertSame(artifacts.get(5), failed.get(1));
+    assertTrue(failures.get(artifacts.get(1)) instanceof ArtifactNotFoundException);
+    for (int i = 0; i < artifacts.size(); i++) {
+      assertEquals(i != 1 && i != 5, artifacts.get(i).getFile().isFile());
+    }
+  }
+
+  public void testUnpackAll() throws Exception {
+    final File repository = new File(this.dir, "repository");
+    final File unpack = new File(this.dir, "unpack");
+    repository.mkdirs();
+    final List<File> files = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      files.add(createNar(repository, "a" + i + "-1.0-amd64-Linux-gpp-shared", "lib/liba" + i + ".so"));
+    }
+    // unpacked on top of the first nar
+    files.add(createNar(repository, "a0-1.0-amd64-Linux-gpp-shared-debug", "lib/liba0.so.debug"));
+
+    final List<String> extracted = new ArrayList<>();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    NarManager.unpackAll(files, new NarLayout21(new SystemStreamLog()), unpack,
+        createArchiverManager(extracted, maxRunning), "Linux", "g++", new AOL("amd64-Linux-gpp"), true, null, null,
+        4, new SystemStreamLog());
+
+    assertTrue(maxRunning.get() > 1);
+    assertEquals(5, extracted.size());
+    assertTrue(extracted.indexOf("a0-1.0-amd64-Linux-gpp-shared.nar") < extracted
+        .indexOf("a0-1.0-amd64-Linux-gpp-shared-debug.nar"));
+    for (int i = 0; i < 4; i++) {
+      assertTrue(new File(unpack, "a" + i + "-1.0-amd64-Linux-gpp-shared/lib/liba" + i + ".so").isFile());
+    }
+    assertTrue(new File(unpack, "a0-1.0-amd64-Linux-gpp-shared/lib/liba0.so.debug").isFile());
+
+    // unpacked nars are skipped
+    extracted.clear();
+    NarManager.unpackAll(files, new NarLayout21(new SystemStreamLog()), unpack,
+        createArchiverManager(extracted, maxRunning), "Linux", "g++", new AOL("amd64-Linux-gpp"), true, null, null,
+        4, new SystemStreamLog());
+    assertTrue(extracted.isEmpty());
+  }
+
+  public void testUnpackAllReportsFirstFailure() throws Exception {
+    final File repository = new File(this.dir, "repository");
+    repository.mkdirs();
+    final List<File> files = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      files.add(createNar(repository, "a" + i + "-1.0-amd64-Linux-gpp-shared", "lib/liba" + i + ".so"));
+    }
+    Files.write(files.get(1).toPath(), "corrupt".getBytes(StandardCharsets.UTF_8));
+    Files.write(files.get(3).toPath(), "corrupt".getBytes(StandardCharsets.UTF_8));
+    try {
+      NarManager.unpackAll(files, new NarLayout21(new SystemStreamLog()), new File(this.dir, "unpack"),
+          createArchiverManager(new ArrayList<String>(), new AtomicInteger()), "Linux", "g++",
+          new AOL("amd64-Linux-gpp"), true, null, null, 4, new SystemStreamLog());
+      fail("corrupt nars were unpacked");
+    } catch (final MojoExecutionException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(files.get(1).getName()));
+    }
+  }
+
+  public void testUnpackMarker() throws Exception {
+    final File repository = new File(this.dir, "repository");
+    final File unpack = new File(this.dir, "unpack");
+    repository.mkdirs();
+    final File nar = createNar(repository, "a-1.0-amd64-Linux-gpp-shared", "lib/liba.so");
+    final File dir = new File(unpack, "a-1.0-amd64-Linux-gpp-shared");
+    final NarLayout21 layout = new NarLayout21(new SystemStreamLog());
+    final List<String> extracted = new ArrayList<>();
+    final ArchiverManager archiverManager = createArchiverManager(extracted, new AtomicInteger());
+    final AOL aol = new AOL("amd64-Linux-gpp");
+
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, true, null, null);
+    assertEquals(1, extracted.size());
+
+    // downloaded again with the same content
+    nar.setLastModified(System.currentTimeMillis() + 10000);
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, true, null, null);
+    assertEquals(1, extracted.size());
+
+    // the recorded checksum is used while the size and modification time
+    // of the nar are unchanged, its content is not read again
+    final byte[] content = Files.readAllBytes(nar.toPath());
+    final long modified = nar.lastModified();
+    Files.write(nar.toPath(), new byte[content.length]);
+    nar.setLastModified(modified);
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, true, null, null);
+    assertEquals(1, extracted.size());
+    Files.write(nar.toPath(), content);
+    nar.setLastModified(modified);
+
+    // other settings
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, false, null, null);
+    assertEquals(2, extracted.size());
+
+    // a partial unpack leaves no marker and is started again from scratch
+    new File(unpack, "." + nar.getName() + ".unpacked").delete();
+    Files.write(new File(dir, "stale").toPath(), new byte[0]);
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, false, null, null);
+    assertEquals(3, extracted.size());
+    assertFalse(new File(dir, "stale").exists());
+
+    // a checksum from the repository is used as it is, unless the nar is
+    // newer
+    final File sha1 = new File(nar.getPath() + ".sha1");
+    Files.write(sha1.toPath(),
+        "0123456789abcdef0123456789abcdef01234567  a.nar\n".getBytes(StandardCharsets.US_ASCII));
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, false, null, null);
+    assertEquals(3, extracted.size());
+    sha1.setLastModified(nar.lastModified());
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, false, null, null);
+    assertEquals(4, extracted.size());
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, false, null, null);
+    assertEquals(4, extracted.size());
+  }
+
+  public void testUnpackStore() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final File repository = new File(this.dir, "repository");
+    final File storeDir = new File(this.dir, "store");
+    repository.mkdirs();
+    final List<File> files = new ArrayList<>();
+    files.add(createNar(repository, "a-1.0-amd64-Linux-gpp-shared", "lib/liba.so"));
+    final List<String> extracted = new ArrayList<>();
+    final ArchiverManager archiverManager = createArchiverManager(extracted, new AtomicInteger());
+    final AOL aol = new AOL("amd64-Linux-gpp");
+    final SystemStreamLog log = new SystemStreamLog();
+
+    // two modules share one unpacked nar
+    final NarLayout21 layout = new NarLayout21(log);
+    final NarUnpackStore symlinks = new NarUnpackStore(storeDir, false, log);
+    final File module1 = new File(this.dir, "module1/target/nar");
+    final File module2 = new File(this.dir, "module2/target/nar");
+    NarManager.unpackAll(files, layout, module1, archiverManager, "Linux", "g++", aol, true, symlinks, null, 2,
+        log);
+    NarManager.unpackAll(files, layout, module2, archiverManager, "Linux", "g++", aol, true, symlinks, null, 2,
+        log);
+    assertEquals(1, extracted.size());
+    final File view1 = new File(module1, "a-1.0-amd64-Linux-gpp-shared");
+    final File view2 = new File(module2, "a-1.0-amd64-Linux-gpp-shared");
+    assertTrue(Files.isSymbolicLink(view1.toPath()));
+    assertTrue(Files.isSameFile(new File(view1, "lib/liba.so").toPath(), new File(view2, "lib/liba.so").toPath()));
+
+    // switching to hard links keeps the unpacked nar
+    final NarUnpackStore hardLinks = new NarUnpackStore(storeDir, true, log);
+    NarManager.unpackAll(files, layout, module1, archiverManager, "Linux", "g++", aol, true, hardLinks, null, 2,
+        log);
+    assertEquals(1, extracted.size());
+    assertFalse(Files.isSymbolicLink(view1.toPath()));
+    assertTrue(Files.isSameFile(new File(view1, "lib/liba.so").toPath(), new File(view2, "lib/liba.so").toPath()));
+
+    // debug information is unpacked next to the view, not into the store
+    files.add(createNar(repository, "a-1.0-amd64-Linux-gpp-shared-debug", "lib/liba.so.debug"));
+    NarManager.unpackAll(files, layout, module2, archiverManager, "Linux", "g++", aol, true, hardLinks, null, 2,
+        log);
+    assertEquals(2, extracted.size());
+    assertFalse(Files.isSymbolicLink(view2.toPath()));
+    assertTrue(new File(view2, "lib/liba.so.debug").isFile());
+    assertFalse(new File(view1, "lib/liba.so.debug").exists());
+  }
+
+  public void testLazyUnpack() throws Exception {
+    final File repository = new File(this.dir, "repository");
+    final File unpack = new File(this.dir, "unpack");
+    repository.mkdirs();
+    final File nar = createNar(repository, "a-1.0-amd64-Linux-gpp-executable", "bin/amd64-Linux-gpp/a",
+        "META-INF/nar/g/a/nar.properties");
+    final File dir = new File(unpack, "a-1.0-amd64-Linux-gpp-executable");
+    final NarLayout21 layout = new NarLayout21(new SystemStreamLog());
+    final List<String> extracted = new ArrayList<>();
+    final ArchiverManager archiverManager = createArchiverManager(extracted, new AtomicInteger());
+    final AOL aol = new AOL("amd64-Linux-gpp");
+
+    final String[] excludes = new String[] {
+      "bin/**"
+    };
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, true, null, excludes);
+    assertTrue(new File(dir, "META-INF/nar/g/a/nar.properties").isFile());
+    assertFalse(new File(dir, "bin/amd64-Linux-gpp/a").exists());
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, true, null, excludes);
+    assertEquals(1, extracted.size());
+
+    // a goal needing everything unpacks the rest, once
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, true, null, null);
+    assertEquals(2, extracted.size());
+    assertTrue(new File(dir, "bin/amd64-Linux-gpp/a").isFile());
+    layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, true, null, null);
+    assertEquals(2, extracted.size());
+  }
+
+  public void testLazyUnpackRuntimeOnly() throws Exception {
+    final File repository = new File(this.dir, "repository");
+    final File unpack = new File(this.dir, "unpack");
+    repository.mkdirs();
+    final File noarch = createNar(repository, "a-1.0-noarch", "include/a.h", "META-INF/nar/g/a/nar.properties");
+    final File shared = createNar(repository, "a-1.0-amd64-Linux-gpp-shared", "lib/amd64-Linux-gpp/shared/liba.so",
+        "lib/amd64-Linux-gpp/shared/liba.so.dwp");
+    final File statik = createNar(repository, "a-1.0-amd64-Linux-gpp-static", "lib/amd64-Linux-gpp/static/liba.a");
+    final NarLayout21 layout = new NarLayout21(new SystemStreamLog());
+    final List<String> extracted = new ArrayList<>();
+    final ArchiverManager archiverManager = createArchiverManager(extracted, new AtomicInteger());
+    final AOL aol = new AOL("amd64-Linux-gpp");
+
+    // what a project not of nar packaging leaves packed
+    final String[] excludes = new String[] {
+      "bin/**", "**/*.dwp", "include/**", "lib/*/static/**"
+    };
+    for (final File nar : Arrays.asList(noarch, shared, statik)) {
+      layout.unpackNar(unpack, archiverManager, nar, "Linux", "g++", aol, true, null, excludes);
+    }
+    assertTrue(new File(unpack, "a-1.0-noarch/META-INF/nar/g/a/nar.properties").isFile());
+    assertFalse(new File(unpack, "a-1.0-noarch/include/a.h").exists());
+    assertTrue(new File(unpack, "a-1.0-amd64-Linux-gpp-shared/lib/amd64-Linux-gpp/shared/liba.so").isFile());
+    assertFalse(new File(unpack, "a-1.0-amd64-Linux-gpp-shared/lib/amd64-Linux-gpp/shared/liba.so.dwp").exists());
+    assertFalse(new File(unpack, "a-1.0-amd64-Linux-gpp-static/lib/amd64-Linux-gpp/static/liba.a").exists());
+    assertEquals(3, extracted.size());
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import com.github.maven_nar.NarUtil;
+
+/**
+ * Tests for the file processing done by NarUtil when unpacking nars.
+ */
+public class TestNarUtil extends TestCase {
+  private File dir;
+
+  private final Log log = new SystemStreamLog();
+
+  private static String header(final String name, final long date, final long size) {
+    return String.format("%-16s%-12d%-6s%-6s%-8s%-10d`\n", name, date, "0", "0", "644", size);
+  }
+
+  private static void delete(final File file) {
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (final File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private File write(final String name, final String content) throws IOException {
+    final File file = new File(this.dir, name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    return file;
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    this.dir = Files.createTempDirectory("narutil").toFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(this.dir);
+  }
+
+  public final void testHasSymbolIndex() throws Exception {
+    final File gnu = write("gnu.a", "!<arch>\n" + header("/", 0, 4) + "\0\0\0\0" + header("a.o/", 0, 2) + "xx");
+    assertTrue(NarUtil.hasSymbolIndex(gnu));
+
+    final File gnu64 = write("gnu64.a", "!<arch>\n" + header("/SYM64/", 0, 8) + "\0\0\0\0\0\0\0\0");
+    assertTrue(NarUtil.hasSymbolIndex(gnu64));
+
+    final File none = write("none.a", "!<arch>\n" + header("a.o/", 0, 2) + "xx");
+    assertFalse(NarUtil.hasSymbolIndex(none));
+
+    final File text = write("text.a", "not an archive at all, but long enough to hold a header of an archive member");
+    assertFalse(NarUtil.hasSymbolIndex(text));
+
+    // BSD table of contents, valid while not older than the archive
+    final long now = System.currentTimeMillis() / 1000;
+    final File bsd = write("bsd.a", "!<arch>\n" + header("#1/20", now, 28) + "__.SYMDEF SORTED\0\0\0\0\0\0\0\0\0\0\0\0");
+    assertTrue(bsd.setLastModified(now * 1000));
+    assertTrue(NarUtil.hasSymbolIndex(bsd));
+    assertTrue(bsd.setLastModified((now + 60) * 1000));
+    assertFalse(NarUtil.hasSymbolIndex(bsd));
+  }
+
+  public final void testMakeExecutable() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final File sub = new File(this.dir, "bin");
+    assertTrue(sub.mkdir());
+    final File tool = new File(sub, "tool");
+    Files.write(tool.toPath(), new byte[0]);
+    Files.setPosixFilePermissions(tool.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+
+    NarUtil.makeExecutable(this.dir, this.log);
+
+    final Set<PosixFilePermission> perms = Files.getPosixFilePermissions(tool.toPath());
+    assertEquals("rwxr-x---", PosixFilePermissions.toString(perms));
+  }
+
+  public final void testMakeExecutableBreaksHardLinks() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    final File source = write("source", "#!/bin/sh\n");
+    Files.setPosixFilePermissions(source.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+    final File linked = new File(this.dir, "linked");
+    Files.createLink(linked.toPath(), source.toPath());
+
+    NarUtil.makeExecutable(linked, this.log);
+
+    assertEquals("rwxr-x---", PosixFilePermissions.toString(Files.getPosixFilePermissions(linked.toPath())));
+    assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(source.toPath())));
+    assertFalse(Files.isSameFile(source.toPath(), linked.toPath()));
+    assertEquals("#!/bin/sh\n", new String(Files.readAllBytes(linked.toPath()), StandardCharsets.US_ASCII));
+    assertEquals(2, this.dir.list().length);
+  }
+
+  public final void testMakeLink() throws Exception {
+    if (File.separatorChar == '\\') {
+      return;
+    }
+    write("libfoo.so.1.2", "");
+    write("libbar.so", "");
+
+    NarUtil.makeLink(this.dir, this.log);
+
+    final File link = new File(this.dir, "libfoo.so");
+    assertTrue(Files.isSymbolicLink(link.toPath()));
+    assertEquals("libfoo.so.1.2", Files.readSymbolicLink(link.toPath()).toString());
+    assertFalse(Files.isSymbolicLink(new File(this.dir, "libbar.so").toPath()));
+
+    // again, with the link in place
+    NarUtil.makeLink(this.dir, this.log);
+    assertTrue(Files.isSymbolicLink(link.toPath()));
+  }
+
+  public final void testRunRanlibSkipsIndexedArchives() throws Exception {
+    // ranlib would reject these, so it must not be run
+    write("a.a", "!<arch>\n" + header("/", 0, 4) + "\0\0\0\0" + header("bogus.o/", 0, 5) + "xxxxx\n");
+    write("b.a", "!<arch>\n" + header("/SYM64/", 0, 8) + "\0\0\0\0\0\0\0\0");
+
+    NarUtil.runRanlib(this.dir, this.log);
+  }
+
+  public final void testRunTasksReportsFirstFailure() throws Exception {
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final int index = i;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          if (index == 1) {
+            // fails last
+            Thread.sleep(200);
+            throw new IOException("task 1");
+          } else if (index == 3) {
+            throw new MojoFailureException("task 3");
+          }
+          return null;
+        }
+      });
+    }
+
+    final List<Throwable> failures = NarUtil.runTasks(tasks, 4);
+    assertEquals(4, failures.size());
+    assertNull(failures.get(0));
+    assertEquals("task 1", failures.get(1).getMessage());
+    assertNull(failures.get(2));
+    assertEquals("task 3", failures.get(3).getMessage());
+
+    try {
+      NarUtil.runTasks(tasks, 4, "cannot run tasks");
+      fail("failures were not reported");
+    } catch (final MojoExecutionException e) {
+      assertEquals("NAR: cannot run tasks", e.getMessage());
+      assertEquals("task 1", e.getCause().getMessage());
+    }
+  }
+
+  public final void testRunTasksOnCallingThread() throws Exception {
+    final List<Thread> threads = new ArrayList<>();
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          threads.add(Thread.currentThread());
+          return null;
+        }
+      });
+    }
+    NarUtil.runTasks(tasks, 1, "cannot run tasks");
+    assertEquals(Collections.nCopies(3, Thread.currentThread()), threads);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * Native ARchive plugin for Maven
+ * %%
+ * Copyright (C) 2002 - 2014 NAR Maven Plugin developers.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.maven_nar.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.IOUtil;
+
+import com.github.maven_nar.ThinArchive;
+
+/**
+ * Tests for ThinArchive, using gcc and GNU ar when available.
+ */
+public class TestThinArchive extends TestCase {
+  private File dir;
+
+  private static String run(final File workDir, final String... command) throws IOException, InterruptedException {
+    final Process process = new ProcessBuilder(command).directory(workDir).redirectErrorStream(true).start();
+    final String output = new String(readFully(process), StandardCharsets.UTF_8);
+    if (process.waitFor() != 0) {
+      throw new IOException(command[0] + " failed: " + output);
+    }
+    return output;
+  }
+
+  private static byte[] readFully(final Process process) throws IOException {
+    return IOUtil.toByteArray(process.getInputStream());
+  }
+
+  private static void delete(final File file) {
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (final File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private boolean hasToolchain() {
+    try {
+      run(this.dir, "gcc", "--version");
+      return run(this.dir, "ar", "--version").startsWith("GNU ar");
+    } catch (final Exception e) {
+      return false;
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    this.dir = Files.createTempDirectory("thin").toFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(this.dir);
+  }
+
+  public void testMaterialize() throws Exception {
+    if (!hasToolchain()) {
+      return;
+    }
+    final File obj = new File(this.dir, "obj");
+    final File lib = new File(this.dir, "lib");
+    obj.mkdirs();
+    lib.mkdirs();
+    // an odd sized object and names needing the long name table
+    Files.write(new File(obj, "a_rather_long_object_name.c").toPath(),
+        "int f(void) { return 20; }\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(obj, "b.c").toPath(), "int g(void) { return 22; }\n".getBytes(StandardCharsets.UTF_8));
+    run(obj, "gcc", "-c", "a_rather_long_object_name.c", "b.c");
+    run(lib, "ar", "rcsT", "libx.a", "../obj/a_rather_long_object_name.o", "../obj/b.o");
+    final File archive = new File(lib, "libx.a");
+    assertTrue(ThinArchive.isThin(archive));
+
+    // the build output is left as it is, the copy holds a full archive
+    final File full = new File(this.dir, "full");
+    assertEquals(0, ThinArchive.materializeAll(obj, new File(this.dir, "none")));
+    assertFalse(new File(this.dir, "none").exists());
+    assertEquals(1, ThinArchive.materializeAll(lib, full));
+    assertTrue(ThinArchive.isThin(archive));
+    final File fullArchive = new File(full, "libx.a");
+    assertFalse(ThinArchive.isThin(fullArchive));
+    assertEquals(archive.lastModified(), fullArchive.lastModified());
+    assertEquals("a_rather_long_object_name.o\nb.o\n", run(full, "ar", "t", "libx.a"));
+
+    // the objects are no longer needed and the symbol index is valid
+    delete(obj);
+    Files.write(new File(full, "main.c").toPath(),
+        "int f(void); int g(void);\nint main(void) { return f() + g() == 42 ? 0 : 1; }\n"
+            .getBytes(StandardCharsets.UTF_8));
+    run(full, "gcc", "main.c", "libx.a", "-o", "main");
+    run(full, new File(full, "main").getPath());
+  }
+
+  private static String header(final String name, final long size) {
+    return String.format("%-16s%-12d%-6s%-6s%-8s%-10d`\n", name, 0, "0", "0", "644", size);
+  }
+
+  public void testCorruptNames() throws Exception {
+    for (final String name : new String[] {
+        "/x", "/99"
+    }) {
+      final File archive = new File(this.dir, "libcorrupt.a");
+      Files.write(archive.toPath(), ("!<thin>\n" + header("//", 6) + "ab.o/\n" + header(name, 2))
+          .getBytes(StandardCharsets.US_ASCII));
+      try {
+        ThinArchive.materialize(archive);
+        fail("corrupt member name " + name + " was accepted");
+      } catch (final IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt archive header at 74 "));
+      }
+    }
+  }
+}